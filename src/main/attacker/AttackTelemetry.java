@@ -0,0 +1,236 @@
+package main.attacker;
+
+import main.attacker.sat.SolverStatistics;
+import main.helpers.utilities.Protocol;
+import org.logicng.datastructures.Tristate;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Per-iteration metrics of attacks - wall time of solving, oracle queries and encoding, counters of SAT solver,
+ * size of formula and used heap. Records are appended to a file as JSON Lines or as CSV, if the name of file ends
+ * with ".csv". Telemetry is off by default. Disabled telemetry ignores the records, so the attacks pay only
+ * for a few calls of System.nanoTime() per iteration.
+ */
+public class AttackTelemetry {
+
+    private static final AttackTelemetry DISABLED = new AttackTelemetry(null, false, "", "");
+    private static final String[] COLUMNS = {
+            "attack", "circuit", "iteration", "phase", "result", "solve_ms", "oracle_ms", "encode_ms",
+            "conflicts", "decisions", "propagations", "variables", "clauses", "heap_bytes"
+    };
+
+    private Writer writer;
+    private final boolean csv;
+    private final String attack;
+    private final String circuit;
+
+    private AttackTelemetry(Writer writer, boolean csv, String attack, String circuit) {
+        this.writer = writer;
+        this.csv = csv;
+        this.attack = attack;
+        this.circuit = circuit;
+    }
+
+    /**
+     * Returns telemetry, which ignores all records.
+     */
+    public static AttackTelemetry disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Opens the telemetry file for appending. CSV header is written only into empty file.
+     * @param file telemetry file, null for disabled telemetry
+     * @param attack name of attack (e.g. "sat")
+     * @param circuit name of attacked circuit
+     * @return telemetry writing into the file or disabled telemetry, if the file cannot be opened
+     */
+    public static AttackTelemetry open(File file, String attack, String circuit) {
+        if (file == null)
+            return DISABLED;
+
+        boolean csv = file.getName().toLowerCase(Locale.ROOT).endsWith(".csv");
+        boolean empty = !file.isFile() || file.length() == 0;
+        try {
+            File directory = file.getAbsoluteFile().getParentFile();
+            if (directory != null && !directory.isDirectory())
+                directory.mkdirs();
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+            if (csv && empty)
+                writer.write(String.join(",", COLUMNS) + "\n");
+            return new AttackTelemetry(writer, csv, attack, circuit);
+        } catch (IOException e) {
+            Protocol.printWarningMessage("Unable to open telemetry file " + file.getName() + ": " + e.getMessage());
+            return DISABLED;
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.writer != null;
+    }
+
+    /**
+     * Creates an empty record of iteration.
+     * @param iteration number of iteration
+     * @param phase phase of attack (e.g. "dip" for search of distinguishing input, "key" for key extraction)
+     */
+    public Iteration newIteration(int iteration, String phase) {
+        return new Iteration(iteration, phase);
+    }
+
+    /**
+     * Writes the record. Every record is flushed, so the metrics of interrupted attack are not lost.
+     */
+    public void record(Iteration iteration) {
+        if (this.writer == null)
+            return;
+
+        Runtime runtime = Runtime.getRuntime();
+        Object[] values = {
+                this.attack, this.circuit, iteration.iteration, iteration.phase, iteration.result,
+                milliseconds(iteration.solveNanos), milliseconds(iteration.oracleNanos), milliseconds(iteration.encodeNanos),
+                counter(iteration.conflicts), counter(iteration.decisions), counter(iteration.propagations),
+                counter(iteration.variables), counter(iteration.clauses), runtime.totalMemory() - runtime.freeMemory()
+        };
+        try {
+            this.writer.write(this.csv ? formatCsv(values) : formatJson(values));
+            this.writer.flush();
+        } catch (IOException e) {
+            Protocol.printWarningMessage("Unable to write telemetry: " + e.getMessage() + ", telemetry is disabled.");
+            close();
+        }
+    }
+
+    public void close() {
+        if (this.writer == null)
+            return;
+        try {
+            this.writer.close();
+        } catch (IOException ignored) {
+        }
+        this.writer = null;
+    }
+
+    private static String formatJson(Object[] values) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append('"').append(COLUMNS[i]).append("\":");
+            if (values[i] instanceof String)
+                sb.append('"').append(((String) values[i]).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            else
+                sb.append(values[i] == null ? "null" : values[i]);
+        }
+        return sb.append("}\n").toString();
+    }
+
+    private static String formatCsv(Object[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            if (values[i] instanceof String && ((String) values[i]).matches(".*[,\"\\s].*"))
+                sb.append('"').append(((String) values[i]).replace("\"", "\"\"")).append('"');
+            else if (values[i] != null)
+                sb.append(values[i]);
+        }
+        return sb.append('\n').toString();
+    }
+
+    private static Object milliseconds(long nanos) {
+        return new MillisecondValue(nanos);
+    }
+
+    private static Object counter(long value) {
+        return value < 0 ? null : value;
+    }
+
+    /**
+     * Time in milliseconds printed with fixed precision regardless of locale.
+     */
+    private static final class MillisecondValue {
+        private final long nanos;
+
+        MillisecondValue(long nanos) {
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.3f", this.nanos / 1e6);
+        }
+    }
+
+    /**
+     * Metrics of single iteration. Times and counters of more solver calls in the same iteration are summed up,
+     * size of formula is taken from the last call.
+     */
+    public static class Iteration {
+        private final int iteration;
+        private final String phase;
+        private String result;
+        private long solveNanos;
+        private long oracleNanos;
+        private long encodeNanos;
+        private long conflicts;
+        private long decisions;
+        private long propagations;
+        private long variables;
+        private long clauses;
+
+        private Iteration(int iteration, String phase) {
+            this.iteration = iteration;
+            this.phase = phase;
+            this.result = null;
+            this.conflicts = -1;
+            this.decisions = -1;
+            this.propagations = -1;
+            this.variables = -1;
+            this.clauses = -1;
+        }
+
+        /**
+         * Adds a call of SAT solver.
+         * @param nanos wall time of the call
+         * @param result result of the call, the last one is recorded
+         * @param statistics statistics of the call, null if not available
+         */
+        public Iteration addSolve(long nanos, Tristate result, SolverStatistics statistics) {
+            this.solveNanos += nanos;
+            this.result = result.name();
+            if (statistics != null) {
+                this.conflicts = sum(this.conflicts, statistics.getConflicts());
+                this.decisions = sum(this.decisions, statistics.getDecisions());
+                this.propagations = sum(this.propagations, statistics.getPropagations());
+                this.variables = statistics.getVariables();
+                this.clauses = statistics.getClauses();
+            }
+            return this;
+        }
+
+        public Iteration addOracle(long nanos) {
+            this.oracleNanos += nanos;
+            return this;
+        }
+
+        public Iteration addEncoding(long nanos) {
+            this.encodeNanos += nanos;
+            return this;
+        }
+
+        private static long sum(long total, long value) {
+            if (value < 0)
+                return total;
+            return total < 0 ? value : total + value;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package main.attacker;
 
+import main.attacker.sat.SATConfig;
 import main.attacker.sat.SatAttackWrapper;
 import main.attacker.sig.SigAttackWrapper;
 import main.attacker.sps.KeySetType;
@@ -17,9 +18,19 @@ public class CircuitAttacker {
      * @param debugMode true for detail information (intended for development purposes)
      */
     public static void performSATAttack(LogicCircuit circuit, boolean printKeyInfo, boolean debugMode) {
-        SatAttackWrapper attacker = new SatAttackWrapper(circuit);
+        performSATAttack(circuit, SATConfig.createSATConfig().setDebugMode(debugMode), printKeyInfo);
+    }
+
+    /**
+     * Wrapper method for SAT Attack with user-defined configuration.
+     * @param circuit instance of plain (activated) LogicCircuit
+     * @param config configuration of SAT attack
+     * @param printKeyInfo true for comparing estimated key with the real one
+     */
+    public static void performSATAttack(LogicCircuit circuit, SATConfig config, boolean printKeyInfo) {
+        SatAttackWrapper attacker = new SatAttackWrapper(circuit, config);
         try {
-            attacker.performSATAttack(debugMode);
+            attacker.performSATAttack(false);
             if (printKeyInfo)
                 attacker.printKeyStats();
         } catch (IllegalStateException | IllegalArgumentException e) {
@@ -34,7 +45,16 @@ public class CircuitAttacker {
      * @param debugMode true for detail information (intended for development purposes)
      */
     public static void performSigAttack(LogicCircuit locked, boolean printKeyInfo, boolean debugMode) {
-        SigAttackWrapper attacker = new SigAttackWrapper(locked);
+        performSigAttack(new SigAttackWrapper(locked), printKeyInfo, debugMode);
+    }
+
+    /**
+     * Wrapper method for Sig attack configured by user (e.g. with telemetry or limits of solving).
+     * @param attacker instance of Sig attack on circuit locked with AntiSAT
+     * @param printKeyInfo true for evaluate estimation correctness of key
+     * @param debugMode true for detail information (intended for development purposes)
+     */
+    public static void performSigAttack(SigAttackWrapper attacker, boolean printKeyInfo, boolean debugMode) {
         try {
             attacker.performSigAttack(printKeyInfo, debugMode);
         } catch (IllegalStateException e) {
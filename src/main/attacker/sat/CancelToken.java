@@ -0,0 +1,22 @@
+package main.attacker.sat;
+
+/**
+ * Token for cooperative cancellation of SAT solving. The token is cancelled from other thread, solvers check it
+ * on every conflict and return UNDEF. Cancelled token stays cancelled.
+ */
+public class CancelToken {
+
+    private volatile boolean cancelled;
+
+    public CancelToken() {
+        this.cancelled = false;
+    }
+
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+}
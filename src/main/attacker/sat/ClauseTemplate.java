@@ -0,0 +1,117 @@
+package main.attacker.sat;
+
+import main.circuit.LogicCircuit;
+import org.logicng.collections.LNGIntVector;
+import org.logicng.formulas.FType;
+import org.logicng.formulas.Formula;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.util.*;
+
+/**
+ * CNF of logic circuit stored as a template of integer clauses. Copies of the circuit are emitted straight
+ * into the SAT solver - key variables of the copy are mapped to existing solver variables and every other
+ * variable gets a fresh (unnamed) solver variable. No formulas and no variable names are created for a copy.
+ * Literal of template variable v is encoded as 2v for positive and 2v + 1 for negative phase.
+ */
+public class ClauseTemplate {
+
+    private final String[] variableNames;
+    private final Map<String, Integer> variableIndex;
+    private final boolean[] keyVariable;
+    private final int[] clauseStart;
+    private final int[] literals;
+
+    /**
+     * Creates the template from the CNF of logic circuit.
+     * @param circuit logic circuit with computed CNF
+     */
+    public ClauseTemplate(LogicCircuit circuit) {
+        Formula CNF = circuit.getCNF();
+
+        List<Variable> variables = new ArrayList<>(CNF.variables());
+        this.variableNames = new String[variables.size()];
+        this.variableIndex = new HashMap<>();
+        this.keyVariable = new boolean[variables.size()];
+        for (int v = 0; v < variables.size(); v++) {
+            this.variableNames[v] = variables.get(v).name();
+            this.variableIndex.put(this.variableNames[v], v);
+            this.keyVariable[v] = circuit.isKeyVariable(variables.get(v));
+        }
+
+        List<Formula> clauses = new ArrayList<>();
+        if (CNF.type() == FType.AND)
+            CNF.forEach(clauses::add);
+        else
+            clauses.add(CNF);
+
+        int literalCount = 0;
+        for (Formula clause : clauses)
+            literalCount += clause.literals().size();
+
+        this.clauseStart = new int[clauses.size() + 1];
+        this.literals = new int[literalCount];
+        int position = 0;
+        for (int c = 0; c < clauses.size(); c++) {
+            this.clauseStart[c] = position;
+            for (Literal literal : clauses.get(c).literals())
+                this.literals[position++] = 2 * this.variableIndex.get(literal.name()) + (literal.phase() ? 0 : 1);
+        }
+        this.clauseStart[clauses.size()] = position;
+    }
+
+    /**
+     * Finds the solver variables of keys with specific suffix (e.g. "_A" for k0_A, k1_A ...).
+     * Keys unknown to the solver are created as new named variables.
+     * @return mapping of template variables to solver variables, -1 for every non-key variable
+     */
+    public int[] mapKeyVariables(SatSolverWrapper solver, String suffix) {
+        int[] mapping = new int[this.variableNames.length];
+        for (int v = 0; v < mapping.length; v++)
+            mapping[v] = this.keyVariable[v] ? solver.getOrAddVariable(this.variableNames[v] + suffix) : -1;
+        return mapping;
+    }
+
+    /**
+     * Emits a copy of the circuit into the solver.
+     * @param solver target SAT solver
+     * @param fixedVariables solver variables for template variables, which should be shared with the rest
+     *                       of formula (e.g. keys), -1 for variables which should be fresh in the copy
+     * @return mapping of template variables to solver variables of the emitted copy
+     */
+    public int[] emitCopy(SatSolverWrapper solver, int[] fixedVariables) {
+        int[] mapping = new int[this.variableNames.length];
+        for (int v = 0; v < mapping.length; v++)
+            mapping[v] = fixedVariables[v] != -1 ? fixedVariables[v] : solver.newVariable();
+
+        LNGIntVector clause = new LNGIntVector();
+        for (int c = 0; c + 1 < this.clauseStart.length; c++) {
+            clause.clear();
+            for (int i = this.clauseStart[c]; i < this.clauseStart[c + 1]; i++) {
+                int literal = this.literals[i];
+                clause.push(SatSolverWrapper.literal(mapping[literal >> 1], (literal & 1) == 0));
+            }
+            solver.addClause(clause);
+        }
+        return mapping;
+    }
+
+    /* Getters */
+
+    /**
+     * Returns the template variable of circuit variable with specific name or -1 if the CNF does not contain it.
+     */
+    public int getVariable(String name) {
+        Integer index = this.variableIndex.get(name);
+        return index == null ? -1 : index;
+    }
+
+    public int getVariableCount() {
+        return this.variableNames.length;
+    }
+
+    public int getClauseCount() {
+        return this.clauseStart.length - 1;
+    }
+}
@@ -0,0 +1,94 @@
+package main.attacker.sat;
+
+import main.circuit.LogicCircuit;
+import main.circuit.components.Gate;
+import main.circuit.components.Netlist;
+import main.helpers.FormulaFactoryWrapper;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+
+import java.util.*;
+
+/**
+ * Creates cubes for cube-and-conquer solving of SAT attack. The search is split on the key inputs with
+ * the largest fan-out - fixing such a key input simplifies the biggest part of the circuit copies, so the cubes
+ * are the most independent.
+ */
+public class CubeGenerator {
+
+    private CubeGenerator() {
+    }
+
+    /**
+     * Selects the key inputs with the largest transitive fan-out cone in the netlist. Circuits without
+     * netlist (e.g. cyclic ones) are ranked by the direct fan-out of key inputs in the gate list.
+     * @param count number of selected key inputs
+     * @return names of key inputs ordered from the largest fan-out
+     */
+    public static List<String> selectKeyInputs(LogicCircuit circuit, int count) {
+        List<String> keyNames = circuit.getSortedKeyInputNames();
+        Map<String, Integer> fanOut = new HashMap<>();
+        Netlist netlist = circuit.getNetlist();
+        if (netlist != null) {
+            for (int k = 0; k < netlist.getKeyCount(); k++)
+                fanOut.put(keyNames.get(k), coneSize(netlist, netlist.getKeySignal(k)));
+        } else {
+            for (Gate g : circuit.getGates()) {
+                for (String input : g.getInputs())
+                    fanOut.merge(input, 1, Integer::sum);
+            }
+        }
+
+        List<String> selected = new ArrayList<>(keyNames);
+        selected.sort(Comparator.comparing((String name) -> fanOut.getOrDefault(name, 0)).reversed());
+        return selected.subList(0, Math.min(count, selected.size()));
+    }
+
+    /**
+     * Counts the gates in the transitive fan-out of signal.
+     */
+    private static int coneSize(Netlist netlist, int signal) {
+        boolean[] visited = new boolean[netlist.getGateCount()];
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(signal);
+        int size = 0;
+        while (!stack.isEmpty()) {
+            int s = stack.pop();
+            for (int f = netlist.getFanOutStart(s); f < netlist.getFanOutEnd(s); f++) {
+                int g = netlist.getFanOut()[f];
+                if (!visited[g]) {
+                    visited[g] = true;
+                    size++;
+                    stack.push(netlist.getGateSignal(g));
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Creates every combination of phases of the key inputs in every copy of key.
+     * @param keyNames names of key inputs (see selectKeyInputs())
+     * @param suffixes suffixes of key copies (e.g. "_A", "_B")
+     * @return 2^(keys * copies) cubes, each cube is a list of literals
+     */
+    public static List<List<Literal>> createCubes(List<String> keyNames, String... suffixes) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        List<String> variables = new ArrayList<>();
+        for (String keyName : keyNames) {
+            for (String suffix : suffixes)
+                variables.add(keyName + suffix);
+        }
+        if (variables.size() > 30)
+            throw new IllegalArgumentException("Too many cube variables (" + variables.size() + ").");
+
+        List<List<Literal>> cubes = new ArrayList<>();
+        for (int bits = 0; bits < 1 << variables.size(); bits++) {
+            List<Literal> cube = new ArrayList<>(variables.size());
+            for (int v = 0; v < variables.size(); v++)
+                cube.add(ff.literal(variables.get(v), (bits & (1 << v)) != 0));
+            cubes.add(cube);
+        }
+        return cubes;
+    }
+}
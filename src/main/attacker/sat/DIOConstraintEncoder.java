@@ -0,0 +1,242 @@
+package main.attacker.sat;
+
+import main.circuit.components.GateType;
+import main.circuit.components.Netlist;
+import org.logicng.collections.LNGIntVector;
+import org.logicng.datastructures.Assignment;
+import org.logicng.formulas.Literal;
+
+import java.util.Arrays;
+
+/**
+ * Encodes a copy of logic circuit constrained by a DIO pair. Inputs of the copy are constants, so they are
+ * propagated through the netlist first (keys are unknown) and only the gates which still depend on key
+ * bits and drive a key-dependent output are encoded into the solver. Gates with a single unknown input
+ * are replaced by that input (or its negation), so they don't need a new variable either.
+ */
+public class DIOConstraintEncoder {
+
+    private static final byte FALSE = 0;
+    private static final byte TRUE = 1;
+    private static final byte UNKNOWN = 2;
+
+    private final Netlist netlist;
+
+    private final byte[] values;
+    private final int[] literals;
+    private final boolean[] needed;
+    private final LNGIntVector clause;
+    private final LNGIntVector unknown;
+
+    private long emittedClauses;
+    private long emittedCopies;
+
+    public DIOConstraintEncoder(Netlist netlist) {
+        this.netlist = netlist;
+        this.values = new byte[netlist.getSignalCount()];
+        this.literals = new int[netlist.getSignalCount()];
+        this.needed = new boolean[netlist.getSignalCount()];
+        this.clause = new LNGIntVector();
+        this.unknown = new LNGIntVector();
+        this.emittedClauses = 0;
+        this.emittedCopies = 0;
+    }
+
+    /**
+     * Emits the key-dependent residue of the circuit copy constrained by the DIO pair into the solver.
+     * @param solver target SAT solver
+     * @param keyVariables solver variable of every key input (in the order of sorted key names)
+     * @param input distinguishing input, inputs missing in the assignment are considered to be zero
+     * @param output output of oracle for the distinguishing input
+     */
+    public void emit(SatSolverWrapper solver, int[] keyVariables, Assignment input, Assignment output) {
+        Arrays.fill(this.values, 0, this.netlist.getInputCount(), FALSE);
+        for (Literal l : input.literals()) {
+            int signal = this.netlist.getSignalIndex(l.name());
+            if (signal != -1 && signal < this.netlist.getInputCount())
+                this.values[signal] = l.phase() ? TRUE : FALSE;
+        }
+        for (int k = 0; k < this.netlist.getKeyCount(); k++) {
+            int signal = this.netlist.getKeySignal(k);
+            this.values[signal] = UNKNOWN;
+            this.literals[signal] = SatSolverWrapper.literal(keyVariables[k], true);
+        }
+
+        propagateConstants();
+
+        // only the logic driving key-dependent outputs constrains the keys
+        Arrays.fill(this.needed, false);
+        for (Literal l : output.literals()) {
+            int signal = this.netlist.getSignalIndex(l.name());
+            if (signal != -1 && this.values[signal] == UNKNOWN)
+                this.needed[signal] = true;
+        }
+        markNeededGates();
+
+        for (int g = 0; g < this.netlist.getGateCount(); g++) {
+            if (this.needed[this.netlist.getGateSignal(g)])
+                encodeGate(solver, g);
+        }
+
+        for (Literal l : output.literals()) {
+            int signal = this.netlist.getSignalIndex(l.name());
+            if (signal == -1)
+                continue;
+            if (this.values[signal] == UNKNOWN)
+                addClause(solver, l.phase() ? this.literals[signal] : this.literals[signal] ^ 1);
+            else if (this.values[signal] != (l.phase() ? TRUE : FALSE))
+                addClause(solver);      // key-independent output differs from oracle, no key is correct
+        }
+        this.emittedCopies++;
+    }
+
+    /**
+     * Computes the ternary value of every gate. Gate is constant if its inputs are constant or if any of them
+     * has a controlling value.
+     */
+    private void propagateConstants() {
+        int[] fanIn = this.netlist.getFanIn();
+
+        for (int g = 0; g < this.netlist.getGateCount(); g++) {
+            GateType type = this.netlist.getGateType(g);
+            int start = this.netlist.getFanInStart(g);
+            int end = this.netlist.getFanInEnd(g);
+            byte value;
+
+            switch (type) {
+                case AND:
+                case NAND:
+                case OR:
+                case NOR: {
+                    byte controlling = (type == GateType.AND || type == GateType.NAND) ? FALSE : TRUE;
+                    boolean unknown = false;
+                    value = (byte) (1 - controlling);
+                    for (int i = start; i < end; i++) {
+                        byte inputValue = this.values[fanIn[i]];
+                        if (inputValue == controlling) {
+                            value = controlling;
+                            unknown = false;
+                            break;
+                        }
+                        if (inputValue == UNKNOWN)
+                            unknown = true;
+                    }
+                    if (unknown)
+                        value = UNKNOWN;
+                    break;
+                }
+                case XOR:
+                case XNOR:
+                case NOT:
+                case BUF: {
+                    value = FALSE;
+                    for (int i = start; i < end && value != UNKNOWN; i++) {
+                        byte inputValue = this.values[fanIn[i]];
+                        value = inputValue == UNKNOWN ? UNKNOWN : (byte) (value ^ inputValue);
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unable to encode gate of type " + type + ".");
+            }
+
+            if (value != UNKNOWN && type.isNeg())
+                value ^= 1;
+            this.values[this.netlist.getGateSignal(g)] = value;
+        }
+    }
+
+    /**
+     * Marks the unknown gates in the fan-in cone of needed signals (in reverse topological order).
+     */
+    private void markNeededGates() {
+        int[] fanIn = this.netlist.getFanIn();
+        for (int g = this.netlist.getGateCount() - 1; g >= 0; g--) {
+            if (!this.needed[this.netlist.getGateSignal(g)])
+                continue;
+            for (int i = this.netlist.getFanInStart(g); i < this.netlist.getFanInEnd(g); i++) {
+                if (this.values[fanIn[i]] == UNKNOWN)
+                    this.needed[fanIn[i]] = true;
+            }
+        }
+    }
+
+    /**
+     * Encodes an unknown gate over its unknown inputs, constant inputs are left out.
+     */
+    private void encodeGate(SatSolverWrapper solver, int g) {
+        int[] fanIn = this.netlist.getFanIn();
+        GateType type = this.netlist.getGateType(g);
+        int output = this.netlist.getGateSignal(g);
+
+        // unknown inputs and the parity of constant inputs (for XOR gates)
+        LNGIntVector unknown = this.unknown;
+        unknown.clear();
+        int parity = type.isNeg() ? 1 : 0;
+        for (int i = this.netlist.getFanInStart(g); i < this.netlist.getFanInEnd(g); i++) {
+            if (this.values[fanIn[i]] == UNKNOWN)
+                unknown.push(this.literals[fanIn[i]]);
+            else
+                parity ^= this.values[fanIn[i]];
+        }
+
+        switch (type) {
+            case AND:
+            case NAND:
+            case OR:
+            case NOR: {
+                int negation = type.isNeg() ? 1 : 0;
+                if (unknown.size() == 1) {
+                    this.literals[output] = unknown.get(0) ^ negation;
+                    return;
+                }
+                // OR is encoded as the AND of negated inputs with negated output
+                int flip = (type == GateType.AND || type == GateType.NAND) ? 0 : 1;
+                int y = SatSolverWrapper.literal(solver.newVariable(), true);
+                for (int i = 0; i < unknown.size(); i++)
+                    addClause(solver, y ^ 1, unknown.get(i) ^ flip);
+                this.clause.clear();
+                this.clause.push(y);
+                for (int i = 0; i < unknown.size(); i++)
+                    this.clause.push(unknown.get(i) ^ flip ^ 1);
+                solver.addClause(this.clause);
+                this.emittedClauses++;
+                this.literals[output] = y ^ flip ^ negation;
+                return;
+            }
+            default: {
+                // XOR, XNOR, NOT and BUF - chain of two-input XORs
+                int result = unknown.get(0);
+                for (int i = 1; i < unknown.size(); i++) {
+                    int a = result;
+                    int b = unknown.get(i);
+                    int y = SatSolverWrapper.literal(solver.newVariable(), true);
+                    addClause(solver, y ^ 1, a, b);
+                    addClause(solver, y ^ 1, a ^ 1, b ^ 1);
+                    addClause(solver, y, a ^ 1, b);
+                    addClause(solver, y, a, b ^ 1);
+                    result = y;
+                }
+                this.literals[output] = result ^ parity;
+            }
+        }
+    }
+
+    private void addClause(SatSolverWrapper solver, int... clauseLiterals) {
+        this.clause.clear();
+        for (int literal : clauseLiterals)
+            this.clause.push(literal);
+        solver.addClause(this.clause);
+        this.emittedClauses++;
+    }
+
+    /* Getters */
+
+    public long getEmittedClauses() {
+        return this.emittedClauses;
+    }
+
+    public long getEmittedCopies() {
+        return this.emittedCopies;
+    }
+}
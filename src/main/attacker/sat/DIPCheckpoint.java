@@ -0,0 +1,170 @@
+package main.attacker.sat;
+
+import main.circuit.LogicCircuit;
+import main.helpers.FormulaFactoryWrapper;
+import main.helpers.utilities.Protocol;
+import org.logicng.datastructures.Assignment;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Binary log of distinguishing input-output pairs found by SAT attack. Every pair is appended as soon as
+ * the oracle answers, so an interrupted attack can be resumed from the pairs found so far without calling
+ * the oracle again. Header identifies the circuit (structure fingerprint and hash of correct key), every record
+ * consists of packed input bits (in the order of sorted input names) and packed output bits (in the order of
+ * sorted output names).
+ */
+public class DIPCheckpoint {
+
+    private static final int MAGIC = 0x44495031;    // "DIP1"
+
+    private final File file;
+    private final List<String> inputNames;
+    private final List<String> outputNames;
+    private final String fingerprint;
+    private final int keyHash;
+    private final int inputWords;
+    private final int outputWords;
+
+    private final List<long[]> records;
+    private boolean appendable;
+    private boolean closed;
+
+    public DIPCheckpoint(LogicCircuit circuit, File file) {
+        this.file = file;
+        this.inputNames = circuit.getSortedInputNames();
+        this.outputNames = new ArrayList<>(circuit.getOutputNames());
+        Collections.sort(this.outputNames);
+        this.fingerprint = circuit.getStructureFingerprint();
+        this.keyHash = Arrays.hashCode(circuit.getCorrectKey());
+        this.inputWords = (this.inputNames.size() + 63) >>> 6;
+        this.outputWords = (this.outputNames.size() + 63) >>> 6;
+        this.records = new ArrayList<>();
+        this.appendable = false;
+        this.closed = false;
+    }
+
+    /**
+     * Reads the pairs logged by previous attack on the same circuit. Checkpoint of a different circuit is ignored
+     * and overwritten by the first new pair, incomplete last record (interrupted write) is dropped.
+     * @return distinguishing inputs and oracle outputs in the order they were found
+     */
+    public List<Assignment[]> load() {
+        this.records.clear();
+        this.appendable = false;
+        List<Assignment[]> pairs = new ArrayList<>();
+        if (!this.file.isFile())
+            return pairs;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)))) {
+            if (!readHeader(in)) {
+                Protocol.printWarningMessage("Checkpoint " + this.file.getName() + " does not match the circuit, it will be overwritten.");
+                return pairs;
+            }
+            this.appendable = readRecords(in);
+        } catch (IOException e) {
+            Protocol.printWarningMessage("Unable to read checkpoint " + this.file.getName() + ": " + e.getMessage());
+            this.records.clear();
+            return pairs;
+        }
+
+        for (long[] record : this.records)
+            pairs.add(new Assignment[]{ unpack(record, 0, this.inputNames), unpack(record, this.inputWords, this.outputNames) });
+        return pairs;
+    }
+
+    /**
+     * Appends the pair to checkpoint. The file is opened only for the write, so nothing is lost when the attack
+     * is killed between two rounds. New checkpoint starts with the header and the pairs already loaded.
+     */
+    public void append(Assignment input, Assignment output) {
+        if (this.closed)
+            return;
+        long[] record = new long[this.inputWords + this.outputWords];
+        pack(input, this.inputNames, record, 0);
+        pack(output, this.outputNames, record, this.inputWords);
+
+        File directory = this.file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory())
+            directory.mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, this.appendable)))) {
+            if (!this.appendable) {
+                out.writeInt(MAGIC);
+                out.writeUTF(this.fingerprint);
+                out.writeInt(this.keyHash);
+                out.writeInt(this.inputNames.size());
+                out.writeInt(this.outputNames.size());
+                for (long[] loaded : this.records)
+                    writeRecord(out, loaded);
+                this.appendable = true;
+            }
+            writeRecord(out, record);
+            this.records.add(record);
+        } catch (IOException e) {
+            Protocol.printWarningMessage("Unable to write checkpoint " + this.file.getName() + ": " + e.getMessage()
+                    + ", attack continues without it.");
+            this.closed = true;
+        }
+    }
+
+    private boolean readHeader(DataInputStream in) throws IOException {
+        return in.readInt() == MAGIC
+                && in.readUTF().equals(this.fingerprint)
+                && in.readInt() == this.keyHash
+                && in.readInt() == this.inputNames.size()
+                && in.readInt() == this.outputNames.size();
+    }
+
+    /**
+     * @return false if the last record is incomplete
+     */
+    private boolean readRecords(DataInputStream in) throws IOException {
+        while (true) {
+            long[] record = new long[this.inputWords + this.outputWords];
+            int words = 0;
+            try {
+                for (; words < record.length; words++)
+                    record[words] = in.readLong();
+            } catch (EOFException e) {
+                return words == 0 && in.available() == 0;
+            }
+            this.records.add(record);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, long[] record) throws IOException {
+        for (long word : record)
+            out.writeLong(word);
+    }
+
+    private static void pack(Assignment assignment, List<String> names, long[] record, int offset) {
+        Map<String, Boolean> values = new HashMap<>();
+        for (Literal l : assignment.literals())
+            values.put(l.name(), l.phase());
+        for (int i = 0; i < names.size(); i++) {
+            if (values.getOrDefault(names.get(i), false))
+                record[offset + (i >>> 6)] |= 1L << i;
+        }
+    }
+
+    private static Assignment unpack(long[] record, int offset, List<String> names) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Assignment assignment = new Assignment();
+        for (int i = 0; i < names.size(); i++)
+            assignment.addLiteral(ff.literal(names.get(i), (record[offset + (i >>> 6)] & (1L << i)) != 0));
+        return assignment;
+    }
+
+    /* Getters */
+
+    public File getFile() {
+        return this.file;
+    }
+
+    public int getSize() {
+        return this.records.size();
+    }
+}
@@ -0,0 +1,426 @@
+package main.attacker.sat;
+
+import main.helpers.FormulaFactoryWrapper;
+import org.logicng.collections.LNGIntVector;
+import org.logicng.datastructures.Assignment;
+import org.logicng.datastructures.Tristate;
+import org.logicng.formulas.Equivalence;
+import org.logicng.formulas.FType;
+import org.logicng.formulas.Formula;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Implication;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Not;
+import org.logicng.formulas.Variable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SAT solver backend running an external solver binary (e.g. kissat, cadical, minisat in competition mode).
+ * Every call of solve() starts a new process, streams the whole formula in DIMACS format to its standard
+ * input and parses the result in SAT competition format ("s SATISFIABLE", "v 1 -2 ... 0") from its standard
+ * output. Exit codes 10 and 20 are accepted, if the solver does not print the status line; any other exit without
+ * the status line is reported as an error together with the error output of solver.
+ * The formula is kept in memory between calls, so the backend can be used incrementally, but the external
+ * solver starts from scratch every time. Assumptions are passed as unit clauses of a single run.
+ * Statistics are read from comment lines in the style of kissat and CaDiCaL ("c conflicts: 1234 ...").
+ * Only the deadline and the cancel token of budget are enforced (the process is killed), the conflict limit
+ * would have to be passed by solver-specific arguments.
+ */
+public class ExternalSatSolver implements SatSolverWrapper {
+
+    private static final int EXIT_SATISFIABLE = 10;
+    private static final int EXIT_UNSATISFIABLE = 20;
+    private static final long WATCHDOG_PERIOD = 20;
+    private static final int ERROR_OUTPUT_LIMIT = 4096;
+    private static final Pattern STATISTICS_LINE = Pattern.compile("^c\\s+(conflicts|decisions|propagations)\\s*:\\s*(\\d+)");
+
+    private final List<String> command;
+    private final FormulaFactory ff;
+
+    private final Map<String, Integer> variableIndex;
+    private final List<String> variableNames;
+    private final List<int[]> clauses;
+    private int trueVariable;
+
+    private boolean[] values;
+    private Tristate result;
+    private long[] counters;
+    private SolveBudget budget;
+
+    /**
+     * @param command executable of the solver with its arguments, solver has to read DIMACS from standard input
+     */
+    public ExternalSatSolver(List<String> command) {
+        if (command == null || command.isEmpty())
+            throw new IllegalArgumentException("Command of external SAT solver is missing.");
+        this.command = new ArrayList<>(command);
+        this.ff = FormulaFactoryWrapper.getFormulaFactory();
+        this.variableIndex = new HashMap<>();
+        this.variableNames = new ArrayList<>();
+        this.clauses = new ArrayList<>();
+        this.trueVariable = -1;
+        this.values = null;
+        this.result = Tristate.UNDEF;
+        this.counters = new long[]{ -1, -1, -1 };
+        this.budget = SolveBudget.unlimited();
+    }
+
+    /**
+     * Encodes the formula into clauses. Conjunctions and clauses on the top level are added directly,
+     * nested subformulas get a new unnamed variable (Tseitin transformation).
+     */
+    @Override
+    public void addFormula(Formula f) {
+        switch (f.type()) {
+            case TRUE:
+                return;
+            case AND:
+                for (Formula operand : f)
+                    addFormula(operand);
+                return;
+            case OR: {
+                LNGIntVector clause = new LNGIntVector();
+                for (Formula operand : f)
+                    clause.push(encode(operand));
+                addClause(clause);
+                return;
+            }
+            default:
+                addClause(new LNGIntVector(new int[]{ encode(f) }));
+        }
+    }
+
+    /**
+     * Returns the literal, which is equivalent with the formula.
+     */
+    private int encode(Formula f) {
+        switch (f.type()) {
+            case TRUE:
+                return SatSolverWrapper.literal(getTrueVariable(), true);
+            case FALSE:
+                return SatSolverWrapper.literal(getTrueVariable(), false);
+            case LITERAL: {
+                Literal l = (Literal) f;
+                return SatSolverWrapper.literal(getOrAddVariable(l.name()), l.phase());
+            }
+            case NOT:
+                return encode(((Not) f).operand()) ^ 1;
+            case AND:
+            case OR: {
+                // OR is encoded as the AND of negated operands with negated output
+                int flip = f.type() == FType.AND ? 0 : 1;
+                LNGIntVector operands = new LNGIntVector();
+                for (Formula operand : f)
+                    operands.push(encode(operand) ^ flip);
+                int y = SatSolverWrapper.literal(newVariable(), true);
+                LNGIntVector clause = new LNGIntVector();
+                clause.push(y);
+                for (int i = 0; i < operands.size(); i++) {
+                    addClause(new LNGIntVector(new int[]{ y ^ 1, operands.get(i) }));
+                    clause.push(operands.get(i) ^ 1);
+                }
+                addClause(clause);
+                return y ^ flip;
+            }
+            case IMPL: {
+                Implication implication = (Implication) f;
+                return encode(this.ff.or(this.ff.not(implication.left()), implication.right()));
+            }
+            case EQUIV: {
+                Equivalence equivalence = (Equivalence) f;
+                int a = encode(equivalence.left());
+                int b = encode(equivalence.right());
+                int y = SatSolverWrapper.literal(newVariable(), true);
+                addClause(new LNGIntVector(new int[]{ y ^ 1, a ^ 1, b }));
+                addClause(new LNGIntVector(new int[]{ y ^ 1, a, b ^ 1 }));
+                addClause(new LNGIntVector(new int[]{ y, a, b }));
+                addClause(new LNGIntVector(new int[]{ y, a ^ 1, b ^ 1 }));
+                return y;
+            }
+            default:
+                throw new IllegalArgumentException("Formula of type " + f.type() + " is not supported by external SAT solver.");
+        }
+    }
+
+    private int getTrueVariable() {
+        if (this.trueVariable == -1) {
+            this.trueVariable = newVariable();
+            addUnitClause(this.trueVariable, true);
+        }
+        return this.trueVariable;
+    }
+
+    @Override
+    public Tristate solve() {
+        return solve(Collections.emptyList());
+    }
+
+    @Override
+    public Tristate solve(Collection<Literal> assumptions) {
+        List<int[]> units = new ArrayList<>();
+        for (Literal l : assumptions)
+            units.add(new int[]{ SatSolverWrapper.literal(getOrAddVariable(l.name()), l.phase()) });
+
+        this.values = null;
+        this.result = Tristate.UNDEF;
+        this.counters = new long[]{ -1, -1, -1 };
+        if (this.budget.isExpired())
+            return this.result;
+        try {
+            Process process = new ProcessBuilder(this.command).start();
+            ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+            Thread drain = drainErrorStream(process, errorOutput);
+            AtomicBoolean stopped = new AtomicBoolean(false);
+            if (!this.budget.isUnlimited())
+                startWatchdog(process, stopped);
+
+            // formula is written by separate thread, so the solver cannot block on full output pipe
+            IOException[] writeError = new IOException[1];
+            Thread writer = new Thread(() -> {
+                try (Writer out = new BufferedWriter(
+                        new OutputStreamWriter(process.getOutputStream(), StandardCharsets.US_ASCII))) {
+                    writeDimacs(out, units);
+                } catch (IOException e) {
+                    writeError[0] = e;
+                }
+            }, "dimacs-writer");
+            writer.start();
+
+            boolean[] values = new boolean[this.variableNames.size()];
+            Tristate status = Tristate.UNDEF;
+            boolean statusLine = false;
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("s ")) {
+                        status = parseStatus(line.substring(2).trim());
+                        statusLine = true;
+                    }
+                    else if (line.startsWith("v "))
+                        parseValues(line.substring(2), values);
+                    else if (line.startsWith("c "))
+                        parseStatistics(line);
+                }
+            }
+
+            int exitCode = process.waitFor();
+            writer.join();
+            drain.join();
+            if (stopped.get())
+                return this.result;
+            if (!statusLine && exitCode == EXIT_SATISFIABLE)
+                status = Tristate.TRUE;
+            else if (!statusLine && exitCode == EXIT_UNSATISFIABLE)
+                status = Tristate.FALSE;
+            else if (!statusLine && writeError[0] != null)
+                throw new IllegalStateException("Unable to pass formula to external SAT solver: "
+                        + writeError[0].getMessage() + describeErrorOutput(errorOutput));
+            else if (!statusLine)
+                throw new IllegalStateException("External SAT solver " + this.command.get(0) + " exited with code "
+                        + exitCode + " without result" + describeErrorOutput(errorOutput));
+
+            this.result = status;
+            if (status == Tristate.TRUE)
+                this.values = values;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to run external SAT solver " + this.command.get(0)
+                    + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("External SAT solver was interrupted.");
+        }
+        return this.result;
+    }
+
+    /**
+     * Reads the error output of solver, so the solver cannot block on full error pipe. Only the beginning
+     * of output (ERROR_OUTPUT_LIMIT bytes) is kept for the error message, the rest is dropped.
+     * @param errorOutput collected error output, complete after the returned thread ends
+     */
+    private static Thread drainErrorStream(Process process, ByteArrayOutputStream errorOutput) {
+        Thread drain = new Thread(() -> {
+            byte[] buffer = new byte[4096];
+            int read;
+            try (InputStream err = process.getErrorStream()) {
+                while ((read = err.read(buffer)) != -1) {
+                    synchronized (errorOutput) {
+                        errorOutput.write(buffer, 0, Math.min(read, ERROR_OUTPUT_LIMIT - errorOutput.size()));
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }, "sat-stderr");
+        drain.setDaemon(true);
+        drain.start();
+        return drain;
+    }
+
+    private static String describeErrorOutput(ByteArrayOutputStream errorOutput) {
+        String text;
+        synchronized (errorOutput) {
+            text = new String(errorOutput.toByteArray(), StandardCharsets.UTF_8).trim();
+        }
+        return text.isEmpty() ? "." : ", error output: " + text;
+    }
+
+    /**
+     * Kills the solver process, when the deadline of budget passes or its cancel token is cancelled.
+     */
+    private void startWatchdog(Process process, AtomicBoolean stopped) {
+        SolveBudget budget = this.budget;
+        Thread watchdog = new Thread(() -> {
+            try {
+                while (!process.waitFor(WATCHDOG_PERIOD, TimeUnit.MILLISECONDS)) {
+                    if (budget.isExpired()) {
+                        stopped.set(true);
+                        process.destroyForcibly();
+                        return;
+                    }
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }, "sat-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    private void writeDimacs(Writer out, List<int[]> units) throws IOException {
+        out.write("p cnf " + this.variableNames.size() + " " + (this.clauses.size() + units.size()) + "\n");
+        StringBuilder line = new StringBuilder();
+        for (List<int[]> part : Arrays.asList(this.clauses, units)) {
+            for (int[] clause : part) {
+                line.setLength(0);
+                for (int literal : clause)
+                    line.append((literal & 1) == 0 ? (literal >> 1) + 1 : -((literal >> 1) + 1)).append(' ');
+                line.append("0\n");
+                out.write(line.toString());
+            }
+        }
+    }
+
+    private static Tristate parseStatus(String status) {
+        switch (status) {
+            case "SATISFIABLE":
+                return Tristate.TRUE;
+            case "UNSATISFIABLE":
+                return Tristate.FALSE;
+            default:
+                return Tristate.UNDEF;
+        }
+    }
+
+    /**
+     * Reads the counter of conflicts, decisions or propagations from comment line.
+     */
+    private void parseStatistics(String line) {
+        Matcher matcher = STATISTICS_LINE.matcher(line);
+        if (!matcher.find())
+            return;
+        int index = Arrays.asList("conflicts", "decisions", "propagations").indexOf(matcher.group(1));
+        try {
+            this.counters[index] = Long.parseLong(matcher.group(2));
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    private static void parseValues(String line, boolean[] values) {
+        for (String token : line.trim().split("\\s+")) {
+            if (token.isEmpty())
+                continue;
+            int literal = Integer.parseInt(token);
+            int variable = Math.abs(literal) - 1;
+            if (variable >= 0 && variable < values.length)
+                values[variable] = literal > 0;
+        }
+    }
+
+    @Override
+    public void setBudget(SolveBudget budget) {
+        this.budget = budget == null ? SolveBudget.unlimited() : budget;
+    }
+
+    @Override
+    public void reset() {
+        this.variableIndex.clear();
+        this.variableNames.clear();
+        this.clauses.clear();
+        this.trueVariable = -1;
+        this.values = null;
+        this.result = Tristate.UNDEF;
+        this.counters = new long[]{ -1, -1, -1 };
+    }
+
+    @Override
+    public int newVariable() {
+        this.variableNames.add(null);
+        return this.variableNames.size() - 1;
+    }
+
+    @Override
+    public int getOrAddVariable(String name) {
+        Integer index = this.variableIndex.get(name);
+        if (index == null) {
+            index = this.variableNames.size();
+            this.variableNames.add(name);
+            this.variableIndex.put(name, index);
+        }
+        return index;
+    }
+
+    @Override
+    public void addClause(LNGIntVector clause) {
+        this.clauses.add(clause.toArray());
+    }
+
+    /* Getters */
+
+    @Override
+    public Assignment getModel() {
+        if (this.values == null)
+            return null;
+        Assignment model = new Assignment();
+        for (int v = 0; v < this.values.length; v++) {
+            if (this.variableNames.get(v) != null)
+                model.addLiteral(this.ff.literal(this.variableNames.get(v), this.values[v]));
+        }
+        return model;
+    }
+
+    @Override
+    public Assignment getModel(Collection<Variable> variablesFilter) {
+        if (this.values == null)
+            return null;
+        Assignment model = new Assignment();
+        for (Variable variable : variablesFilter) {
+            Integer index = this.variableIndex.get(variable.name());
+            if (index != null && index < this.values.length)
+                model.addLiteral(this.ff.literal(variable.name(), this.values[index]));
+        }
+        return model;
+    }
+
+    @Override
+    public SolverStatistics getStatistics() {
+        return new SolverStatistics(this.counters[0], this.counters[1], this.counters[2],
+                this.variableNames.size(), this.clauses.size());
+    }
+
+    public List<String> getCommand() {
+        return Collections.unmodifiableList(this.command);
+    }
+}
@@ -0,0 +1,337 @@
+package main.attacker.sat;
+
+import main.helpers.FormulaFactoryWrapper;
+import org.logicng.collections.LNGIntVector;
+import org.logicng.datastructures.Assignment;
+import org.logicng.datastructures.Tristate;
+import org.logicng.formulas.Formula;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+import org.logicng.handlers.ComputationHandler;
+import org.logicng.handlers.SATHandler;
+import org.logicng.solvers.MiniSat;
+import org.logicng.solvers.sat.MiniSatStyleSolver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SAT solver backend built on LogicNG solvers. The solver is fully incremental - clauses learned while solving
+ * are kept between calls. With more than one engine it works as a parallel portfolio.
+ */
+public class LogicNGSatSolver implements SatSolverWrapper {
+
+    private static final ExecutorService PORTFOLIO_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "sat-portfolio");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<MiniSat> satSolvers;
+    private MiniSat satSolver;
+    private Assignment model;
+    private Tristate result;
+    private boolean clausesAdded;
+    private long conflicts;
+    private SolveBudget budget;
+
+    public LogicNGSatSolver(){
+        this(Collections.singletonList(SolverEngine.MINISAT));
+    }
+
+    /**
+     * Creates a portfolio of solvers. Every solver gets the same formulas and clauses and all of them
+     * are solving in parallel threads. The first finished solver wins and the others are cancelled.
+     * @param engines configurations of solvers in portfolio
+     */
+    public LogicNGSatSolver(List<SolverEngine> engines){
+        if (engines.isEmpty())
+            throw new IllegalArgumentException("SAT solver portfolio cannot be empty.");
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        this.satSolvers = new ArrayList<>();
+        for (SolverEngine engine : engines)
+            this.satSolvers.add(engine.createSolver(ff));
+        this.satSolver = this.satSolvers.get(0);
+        this.model = null;
+        this.result = Tristate.UNDEF;
+        this.clausesAdded = false;
+        this.conflicts = 0;
+        this.budget = SolveBudget.unlimited();
+    }
+
+    @Override
+    public void addFormula(Formula f){
+        for (MiniSat solver : this.satSolvers)
+            solver.add(f);
+    }
+
+    @Override
+    public Tristate solve(){
+        if (this.budget.isExpired())
+            return expired();
+        if (this.satSolvers.size() > 1)
+            return solvePortfolio(Collections.emptyList());
+        // solver would return its previous result, if it doesn't know about clauses added directly
+        SolveHandler handler = new SolveHandler(null, this.budget);
+        this.result = this.clausesAdded ? satSolver.sat(handler, Collections.emptyList()) : satSolver.sat(handler);
+        this.conflicts = handler.conflicts;
+        this.clausesAdded = false;
+        this.model = null;
+        return this.result;
+    }
+
+    @Override
+    public Tristate solve(Collection<Literal> assumptions){
+        if (this.budget.isExpired())
+            return expired();
+        if (this.satSolvers.size() > 1)
+            return solvePortfolio(assumptions);
+        SolveHandler handler = new SolveHandler(null, this.budget);
+        this.result = satSolver.sat(handler, assumptions);
+        this.conflicts = handler.conflicts;
+        this.clausesAdded = false;
+        this.model = null;
+        return this.result;
+    }
+
+    /**
+     * Runs every solver of portfolio in its own thread. Solvers check the shared flag on every conflict
+     * and give up (return UNDEF), when other solver has already found the result.
+     */
+    private Tristate solvePortfolio(Collection<Literal> assumptions){
+        AtomicBoolean finished = new AtomicBoolean(false);
+        Tristate[] results = new Tristate[this.satSolvers.size()];
+        SolveHandler[] handlers = new SolveHandler[this.satSolvers.size()];
+        ExecutorCompletionService<Integer> completion = new ExecutorCompletionService<>(PORTFOLIO_EXECUTOR);
+        for (int i = 0; i < this.satSolvers.size(); i++) {
+            int index = i;
+            MiniSat solver = this.satSolvers.get(i);
+            handlers[i] = new SolveHandler(finished, this.budget);
+            completion.submit(() -> {
+                results[index] = solver.sat(handlers[index], assumptions);
+                if (results[index] != Tristate.UNDEF)
+                    finished.set(true);
+                return index;
+            });
+        }
+
+        awaitSolvers(completion, finished);
+        int winner = -1;
+        for (int i = 0; i < results.length && winner == -1; i++) {
+            if (results[i] != Tristate.UNDEF)
+                winner = i;
+        }
+
+        this.satSolver = this.satSolvers.get(winner == -1 ? 0 : winner);
+        this.result = winner == -1 ? Tristate.UNDEF : results[winner];
+        this.conflicts = handlers[winner == -1 ? 0 : winner].conflicts;
+        this.clausesAdded = false;
+        this.model = null;
+        return this.result;
+    }
+
+    /**
+     * Every solver of portfolio works as a worker of cube-and-conquer - it takes the next unsolved cube,
+     * until a satisfiable cube is found or all cubes are solved. Solvers keep their learned clauses between
+     * cubes, so later cubes are usually cheaper. Conflict budget applies to every cube separately.
+     */
+    @Override
+    public Tristate solveCubes(Collection<Literal> assumptions, List<List<Literal>> cubes){
+        if (this.budget.isExpired())
+            return expired();
+        AtomicBoolean finished = new AtomicBoolean(false);
+        AtomicBoolean undefined = new AtomicBoolean(false);
+        AtomicInteger nextCube = new AtomicInteger(0);
+        AtomicInteger winner = new AtomicInteger(-1);
+        AtomicLong conflicts = new AtomicLong(0);
+        ExecutorCompletionService<Integer> completion = new ExecutorCompletionService<>(PORTFOLIO_EXECUTOR);
+        for (int i = 0; i < this.satSolvers.size(); i++) {
+            int index = i;
+            MiniSat solver = this.satSolvers.get(i);
+            completion.submit(() -> {
+                int cube;
+                while (!finished.get() && (cube = nextCube.getAndIncrement()) < cubes.size()) {
+                    List<Literal> cubeAssumptions = new ArrayList<>(assumptions);
+                    cubeAssumptions.addAll(cubes.get(cube));
+                    SolveHandler handler = new SolveHandler(finished, this.budget);
+                    Tristate cubeResult = solver.sat(handler, cubeAssumptions);
+                    conflicts.addAndGet(handler.conflicts);
+                    if (cubeResult == Tristate.TRUE && winner.compareAndSet(-1, index)) {
+                        finished.set(true);
+                    } else if (cubeResult == Tristate.UNDEF && !finished.get()) {
+                        // undecided cube (exhausted budget), the result cannot be FALSE anymore
+                        undefined.set(true);
+                        finished.set(true);
+                    }
+                }
+                return index;
+            });
+        }
+        awaitSolvers(completion, finished);
+
+        this.satSolver = this.satSolvers.get(winner.get() == -1 ? 0 : winner.get());
+        this.result = winner.get() != -1 ? Tristate.TRUE : undefined.get() ? Tristate.UNDEF : Tristate.FALSE;
+        this.conflicts = conflicts.get();
+        this.clausesAdded = false;
+        this.model = null;
+        return this.result;
+    }
+
+    /**
+     * Waits for all solvers, so none of them is running when new clauses are added.
+     */
+    private void awaitSolvers(ExecutorCompletionService<Integer> completion, AtomicBoolean finished){
+        try {
+            for (int i = 0; i < this.satSolvers.size(); i++)
+                completion.take().get();
+        } catch (InterruptedException e) {
+            finished.set(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("SAT solving was interrupted.");
+        } catch (ExecutionException e) {
+            finished.set(true);
+            throw new IllegalStateException("SAT solver failed: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Deadline has passed before solving, the solver is not started at all.
+     */
+    private Tristate expired(){
+        this.result = Tristate.UNDEF;
+        this.conflicts = 0;
+        this.model = null;
+        return this.result;
+    }
+
+    @Override
+    public void setBudget(SolveBudget budget){
+        this.budget = budget == null ? SolveBudget.unlimited() : budget;
+    }
+
+    @Override
+    public void reset(){
+        this.model = null;
+        this.result = Tristate.UNDEF;
+        this.clausesAdded = false;
+        this.conflicts = 0;
+        for (MiniSat solver : this.satSolvers)
+            solver.reset();
+        this.satSolver = this.satSolvers.get(0);
+    }
+
+    @Override
+    public int newVariable(){
+        int index = -1;
+        for (MiniSat solver : this.satSolvers)
+            index = checkIndex(index, solver.underlyingSolver().newVar(true, true));
+        return index;
+    }
+
+    @Override
+    public int getOrAddVariable(String name){
+        int index = -1;
+        for (MiniSat satSolver : this.satSolvers) {
+            MiniSatStyleSolver solver = satSolver.underlyingSolver();
+            int solverIndex = solver.idxForName(name);
+            if (solverIndex == -1) {
+                solverIndex = solver.newVar(true, true);
+                solver.addName(name, solverIndex);
+            }
+            index = checkIndex(index, solverIndex);
+        }
+        return index;
+    }
+
+    /**
+     * Solvers of portfolio share the literals of clause-level access, so they have to number variables equally.
+     */
+    private static int checkIndex(int previous, int index){
+        if (previous != -1 && previous != index)
+            throw new IllegalStateException("Solvers of portfolio have different variable indices.");
+        return index;
+    }
+
+    @Override
+    public void addClause(LNGIntVector clause){
+        for (MiniSat solver : this.satSolvers)
+            solver.underlyingSolver().addClause(clause, null);
+        this.clausesAdded = true;
+        this.model = null;
+    }
+
+    /* Getters */
+
+    /**
+     * Returns a model - boolean value assignment for each variable. The model is created on the first
+     * request after solving, so the solver does not build it when only filtered models are needed.
+     * Not available if unnamed variables were added into the solver, use the filtered model instead.
+     */
+    @Override
+    public Assignment getModel(){
+        if (this.model == null && this.result == Tristate.TRUE)
+            this.model = satSolver.model();
+        return this.model;
+    }
+
+    @Override
+    public Assignment getModel(Collection<Variable> variablesFilter){
+        return this.satSolver.model(variablesFilter);
+    }
+
+    /**
+     * LogicNG does not count decisions and propagations, only the conflicts are reported (by the winning
+     * solver of portfolio).
+     */
+    @Override
+    public SolverStatistics getStatistics(){
+        MiniSatStyleSolver solver = this.satSolver.underlyingSolver();
+        return new SolverStatistics(this.conflicts, -1, -1, solver.nVars(), solver.clauses().size());
+    }
+
+    public int getPortfolioSize(){
+        return this.satSolvers.size();
+    }
+
+    /**
+     * Handler counting the conflicts of solver and stopping it, when the budget is exhausted. In portfolio
+     * it also cancels the solver, when other solver has finished.
+     */
+    private static class SolveHandler extends ComputationHandler implements SATHandler {
+
+        private final AtomicBoolean finished;
+        private final SolveBudget budget;
+        private long conflicts;
+
+        /**
+         * @param finished flag shared by solvers of portfolio, null for single solver
+         * @param budget limits of solving
+         */
+        SolveHandler(AtomicBoolean finished, SolveBudget budget) {
+            this.finished = finished;
+            this.budget = budget;
+            this.conflicts = 0;
+        }
+
+        @Override
+        public boolean detectedConflict() {
+            this.conflicts++;
+            this.aborted = (this.finished != null && this.finished.get()) || this.budget.isExhausted(this.conflicts);
+            return !this.aborted;
+        }
+
+        @Override
+        public void finishedSolving() {
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package main.attacker.sat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SATConfig {
+
+    protected boolean incremental;
+    protected boolean debugMode;
+    protected List<SolverEngine> solverEngines;
+    protected List<String> solverCommand;
+    protected boolean approximate;
+    protected int approximationInterval;
+    protected int approximationSamples;
+    protected double errorThreshold;
+    protected long approximationSeed;
+    protected boolean doubleDIP;
+    protected boolean symmetryBreaking;
+    protected File checkpointFile;
+    protected boolean resume;
+    protected File telemetryFile;
+    protected long conflictLimit;
+    protected long timeoutMillis;
+    protected CancelToken cancelToken;
+    protected int cubeKeys;
+
+    private SATConfig() {
+        this.incremental = false;
+        this.debugMode = false;
+        this.solverEngines = Collections.singletonList(SolverEngine.MINISAT);
+        this.solverCommand = null;
+        this.approximate = false;
+        this.approximationInterval = 10;
+        this.approximationSamples = 256;
+        this.errorThreshold = 0.01;
+        this.approximationSeed = 0;
+        this.doubleDIP = false;
+        this.symmetryBreaking = false;
+        this.checkpointFile = null;
+        this.resume = false;
+        this.telemetryFile = null;
+        this.conflictLimit = 0;
+        this.timeoutMillis = 0;
+        this.cancelToken = null;
+        this.cubeKeys = 0;
+    }
+
+    /**
+     * Creates an instance of SAT Attack configuration with default values. This and all setter methods
+     * are made by Builder design pattern.
+     * @return an instance of SAT Attack configuration
+     */
+    public static SATConfig createSATConfig() {
+        return new SATConfig();
+    }
+
+    /**
+     * Incremental attack keeps one SAT solver for all iterations and adds only the constraints of new
+     * distinguishing input. Non-incremental (classic) attack rebuilds the solver in every iteration, it is the default.
+     */
+    public SATConfig setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    public SATConfig setDebugMode(boolean debugMode) {
+        this.debugMode = debugMode;
+        return this;
+    }
+
+    /**
+     * Searches for distinguishing inputs by a portfolio of differently configured solvers running in
+     * parallel. Size 1 means a single MiniSat solver (default).
+     */
+    public SATConfig setPortfolio(int size) {
+        this.solverEngines = SolverEngine.portfolio(size);
+        return this;
+    }
+
+    public SATConfig setSolverEngines(List<SolverEngine> engines) {
+        if (engines == null || engines.isEmpty())
+            throw new IllegalArgumentException("At least one solver engine is required.");
+        this.solverEngines = new ArrayList<>(engines);
+        return this;
+    }
+
+    /**
+     * Approximate (AppSAT) attack periodically measures the error rate of current candidate key on random inputs
+     * and ends as soon as it is low enough, instead of waiting until no distinguishing input exists.
+     * Approximation is used only by the incremental attack on combinational circuits.
+     */
+    public SATConfig setApproximate(boolean approximate) {
+        this.approximate = approximate;
+        return this;
+    }
+
+    /**
+     * Enables the approximate (AppSAT) attack with specific parameters.
+     * @param interval number of iterations between two measurements of error rate
+     * @param samples number of random inputs used to measure the error rate
+     * @param errorThreshold attack ends when the error rate of candidate key is not greater than this value
+     */
+    public SATConfig setApproximation(int interval, int samples, double errorThreshold) {
+        if (interval <= 0 || samples <= 0)
+            throw new IllegalArgumentException("Interval and number of samples have to be positive.");
+        if (errorThreshold < 0 || errorThreshold >= 1)
+            throw new IllegalArgumentException("Error threshold has to be in interval [0, 1).");
+        this.approximate = true;
+        this.approximationInterval = interval;
+        this.approximationSamples = samples;
+        this.errorThreshold = errorThreshold;
+        return this;
+    }
+
+    /**
+     * Seeds the random inputs, on which the approximate attack measures the error rate. Attacks with the same
+     * seed sample the same inputs, so they end in the same round with the same key.
+     */
+    public SATConfig setApproximationSeed(long seed) {
+        this.approximationSeed = seed;
+        return this;
+    }
+
+    /**
+     * Double-DIP attack searches for inputs, which distinguish two pairs of keys at once, so each of them
+     * eliminates at least two wrong keys. Double-DIP is used only by the incremental attack.
+     */
+    public SATConfig setDoubleDIP(boolean doubleDIP) {
+        this.doubleDIP = doubleDIP;
+        return this;
+    }
+
+    /**
+     * Adds the constraint K_A < K_B (lexicographically) into the miter, so the solver does not search
+     * both of two symmetric solutions, which differ only by swapped keys.
+     */
+    public SATConfig setSymmetryBreaking(boolean symmetryBreaking) {
+        this.symmetryBreaking = symmetryBreaking;
+        return this;
+    }
+
+    /**
+     * Logs every distinguishing input with the response of oracle into a binary checkpoint file (see DIPCheckpoint).
+     * Resumed attack loads the logged pairs into the solver at once and continues with the next round,
+     * the oracle is called only for new distinguishing inputs. Checkpoint is used by the incremental
+     * and the classic attack.
+     * @param file checkpoint file, null for attack without checkpoint
+     * @param resume true to continue from the pairs already logged in the file, false to overwrite it
+     */
+    public SATConfig setCheckpoint(File file, boolean resume) {
+        this.checkpointFile = file;
+        this.resume = file != null && resume;
+        return this;
+    }
+
+    /**
+     * Writes metrics of every iteration into a telemetry file (see AttackTelemetry). Telemetry is off by default.
+     * @param file JSON Lines file, or CSV file if its name ends with ".csv", null to disable telemetry
+     */
+    public SATConfig setTelemetry(File file) {
+        this.telemetryFile = file;
+        return this;
+    }
+
+    /**
+     * Limits the number of conflicts of every solver call. Attack stopped by the limit reports the key
+     * consistent with the distinguishing inputs found so far.
+     * @param conflictLimit maximum number of conflicts, 0 for unlimited
+     */
+    public SATConfig setConflictLimit(long conflictLimit) {
+        if (conflictLimit < 0)
+            throw new IllegalArgumentException("Conflict limit cannot be negative.");
+        this.conflictLimit = conflictLimit;
+        return this;
+    }
+
+    /**
+     * Limits the wall-clock time of whole attack. Attack stopped by the deadline reports the key
+     * consistent with the distinguishing inputs found so far.
+     * @param timeoutMillis time limit in milliseconds, 0 for unlimited
+     */
+    public SATConfig setTimeout(long timeoutMillis) {
+        if (timeoutMillis < 0)
+            throw new IllegalArgumentException("Timeout cannot be negative.");
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * Sets the token, which stops the running attack from other thread in the same way as the timeout.
+     */
+    public SATConfig setCancelToken(CancelToken cancelToken) {
+        this.cancelToken = cancelToken;
+        return this;
+    }
+
+    /**
+     * Cube-and-conquer splits every search for distinguishing input into 4^cubeKeys cubes, which fix
+     * the key inputs with the largest fan-out in both copies of key (see CubeGenerator). Cubes are solved
+     * in parallel by the solvers of portfolio (see setPortfolio()), the first satisfiable cube gives
+     * the distinguishing input. A single solver solves the cubes one after another.
+     * Cube-and-conquer is used only by the incremental attack with LogicNG backend.
+     * @param cubeKeys number of key inputs used for splitting (1 - 6), 0 to disable cube-and-conquer
+     */
+    public SATConfig setCubeAndConquer(int cubeKeys) {
+        if (cubeKeys < 0 || cubeKeys > 6)
+            throw new IllegalArgumentException("Number of cube keys has to be in interval [0, 6].");
+        this.cubeKeys = cubeKeys;
+        return this;
+    }
+
+    /**
+     * Starts the budget of solver calls by the limits of configuration, the deadline is measured from now.
+     */
+    public SolveBudget startBudget() {
+        return SolveBudget.start(this.conflictLimit, this.timeoutMillis, this.cancelToken);
+    }
+
+    /**
+     * Uses an external solver binary instead of LogicNG (see ExternalSatSolver).
+     * @param command executable of the solver with its arguments, null for LogicNG backend
+     */
+    public SATConfig setExternalSolver(List<String> command) {
+        this.solverCommand = (command == null || command.isEmpty()) ? null : new ArrayList<>(command);
+        return this;
+    }
+}
@@ -1,7 +1,11 @@
 package main.attacker.sat;
 
+import main.attacker.AttackTelemetry;
 import main.helpers.FormulaFactoryWrapper;
 import main.circuit.LogicCircuit;
+import main.circuit.components.Netlist;
+import main.circuit.simulation.BatchResult;
+import main.circuit.simulation.BitMatrix;
 import main.circuit.utilities.CircuitUtilities;
 import main.helpers.utilities.Protocol;
 import org.logicng.datastructures.Assignment;
@@ -15,10 +19,21 @@ import org.logicng.formulas.Variable;
 import java.util.*;
 
 public class SatAttackWrapper {
+    private static final String ACTIVATION_VARIABLE = "SAT_activation";
+    private static final String DOUBLE_DIP_ACTIVATION_VARIABLE = "SAT_double_dip";
+    private static final int MAX_MISCLASSIFIED_CONSTRAINTS = 8;
+    private static final long PARTIAL_KEY_CONFLICT_LIMIT = 100_000;
+
     private final LogicCircuit lockedLC;
     private final FormulaFactory ff;
     private final Assignment realKey;
+    private final SATConfig SATConfiguration;
     private Assignment estimatedKey;
+    private int iterations;
+    private AttackTelemetry telemetry;
+    private SolveBudget budget;
+    private boolean complete;
+    private boolean approximate;
 
     /**
      * Constructor with arguments. Correct key should be specified by user.
@@ -29,7 +44,13 @@ public class SatAttackWrapper {
         this.ff = FormulaFactoryWrapper.getFormulaFactory();
         this.lockedLC = lockedCircuit;
         this.realKey = realKey;
+        this.SATConfiguration = SATConfig.createSATConfig();
         this.estimatedKey = new Assignment();
+        this.iterations = 0;
+        this.telemetry = AttackTelemetry.disabled();
+        this.budget = SolveBudget.unlimited();
+        this.complete = false;
+        this.approximate = false;
     }
 
     /**
@@ -38,15 +59,30 @@ public class SatAttackWrapper {
      * @param lockedCircuit instance of locked logic circuit
      */
     public SatAttackWrapper(LogicCircuit lockedCircuit) {
+        this(lockedCircuit, SATConfig.createSATConfig());
+    }
+
+    /**
+     * Constructor for user, who wants to modify Attack properties. Correct key will be parsed
+     * from the property of LogicCircuit.
+     * @param lockedCircuit instance of locked logic circuit
+     * @param config configuration of SAT attack
+     */
+    public SatAttackWrapper(LogicCircuit lockedCircuit, SATConfig config) {
         this.ff = FormulaFactoryWrapper.getFormulaFactory();
         this.lockedLC = lockedCircuit;
 
-        Assignment correctKey = new Assignment();
-        for (int i = 0; i < lockedCircuit.getCorrectKey().length; i++)
-            correctKey.addLiteral(this.ff.literal("k" + i, lockedCircuit.getCorrectKey()[i] == 1));
-
-        this.realKey = correctKey;
+        // key literals of circuit follow the sorted key names (k0, k1, k10, k11, k2, ...) like the bits of correct key
+        int[] correctKey = lockedCircuit.getCorrectKey();
+        this.realKey = (correctKey.length == lockedCircuit.getKeyInputNames().size())
+                ? new Assignment(lockedCircuit.getKeyLiterals(this.ff, correctKey)) : new Assignment();
+        this.SATConfiguration = config;
         this.estimatedKey = new Assignment();
+        this.iterations = 0;
+        this.telemetry = AttackTelemetry.disabled();
+        this.budget = SolveBudget.unlimited();
+        this.complete = false;
+        this.approximate = false;
     }
 
     /**
@@ -64,13 +100,34 @@ public class SatAttackWrapper {
         Protocol.printInfoMessage("Performing SAT attack on circuit " + this.lockedLC.getName() + ".");
         Protocol.printSection("SAT Attack");
 
-        if (debugMode) {
-            performSATAttackWithDetails();
-            return;
+        this.telemetry = AttackTelemetry.open(this.SATConfiguration.telemetryFile, "sat", this.lockedLC.getName());
+        this.budget = this.SATConfiguration.startBudget();
+        this.complete = true;
+        this.approximate = false;
+        try {
+            if (debugMode || this.SATConfiguration.debugMode)
+                performSATAttackWithDetails();
+            else if (this.SATConfiguration.incremental)
+                performIncrementalSATAttack();
+            else
+                performClassicSATAttack();
+        } finally {
+            this.telemetry.close();
         }
+    }
 
-        SatSolverWrapper satSolver = new SatSolverWrapper();
-        SatSolverWrapper keySolver = new SatSolverWrapper();
+    /**
+     * Performs SAT attack, which rebuilds the SAT solver with the whole main formula F_i in every iteration.
+     */
+    private void performClassicSATAttack() {
+        if (this.SATConfiguration.approximate || this.SATConfiguration.doubleDIP || this.SATConfiguration.cubeKeys > 0)
+            Protocol.printWarningMessage("Approximation, Double-DIP and cube-and-conquer require incremental attack, " +
+                    "performing classic attack without them.");
+        long setupStart = System.nanoTime();
+        SatSolverWrapper satSolver = SatSolverFactory.createSolver(this.SATConfiguration);
+        SatSolverWrapper keySolver = SatSolverFactory.createSolver();
+        satSolver.setBudget(this.budget);
+        keySolver.setBudget(this.budget);
 
         Formula CNF = this.lockedLC.getCNF();
 
@@ -83,26 +140,327 @@ public class SatAttackWrapper {
         }
 
         Formula F_i = CircuitUtilities.distinctCircuitsWithSameInput(this.lockedLC);
-        Formula distinctOutputs = CircuitUtilities.createDifferentOutputs(this.lockedLC);
+        Formula distinctOutputs = createMiterCondition();
+        if (isExpiredDuringSetup("building the miter"))
+            return;
+
+        List<Assignment[]> replayed = new ArrayList<>();
+        DIPCheckpoint checkpoint = openCheckpoint(replayed);
+        for (Assignment[] pair : replayed) {
+            F_i = createCurrentMainFormula(CNF, pair[0], pair[1], F_i, iteration);
+            ff.clear();
+            iteration++;
+        }
 
         satSolver.addFormula(ff.and(F_i, distinctOutputs));
+        if (replayed.isEmpty() && isExpiredDuringSetup("loading the solver"))
+            return;
+        this.telemetry.record(this.telemetry.newIteration(iteration - 1, "setup")
+                .addEncoding(System.nanoTime() - setupStart));
+
+        while (true) {
+            AttackTelemetry.Iteration metrics = this.telemetry.newIteration(iteration, "dip");
+            long start = System.nanoTime();
+            Tristate result = satSolver.solve();
+            metrics.addSolve(System.nanoTime() - start, result, satSolver.getStatistics());
+            if (result != Tristate.TRUE) {
+                this.telemetry.record(metrics);
+                this.complete = result == Tristate.FALSE;
+                break;
+            }
 
-        while (satSolver.solve() == Tristate.TRUE) {
+            start = System.nanoTime();
+            Assignment distinguishingInput = satSolver.getModel(this.lockedLC.getInputVariables(ff));
+            Assignment distinguishingOutput = this.lockedLC.evaluate(distinguishingInput.literals(),
+                    realKey.literals(), this.lockedLC.getOutputVariables(ff));
+            metrics.addOracle(System.nanoTime() - start);
 
-            F_i = createCurrentMainFormula(CNF, satSolver, F_i, iteration);
+            start = System.nanoTime();
+            if (checkpoint != null)
+                checkpoint.append(distinguishingInput, distinguishingOutput);
+
+            F_i = createCurrentMainFormula(CNF, distinguishingInput, distinguishingOutput, F_i, iteration);
             ff.clear();
 
             iteration++;
             satSolver.reset();
             satSolver.addFormula(ff.and(F_i, distinctOutputs));
             ff.clear();
+            this.telemetry.record(metrics.addEncoding(System.nanoTime() - start));
         }
+        this.iterations = iteration - 1;
+        printAttackEnd();
 
+        AttackTelemetry.Iteration metrics = this.telemetry.newIteration(iteration, "key");
+        long start = System.nanoTime();
         keySolver.addFormula(F_i);
-        keySolver.solve();
-        Assignment keyAssignment = keySolver.getModel(keyInputVariable_A);
+        metrics.addEncoding(System.nanoTime() - start);
+        reportKey(extractKey(keySolver, Collections.emptyList(), null, keyInputVariable_A, metrics));
+    }
 
-        System.out.println("\nKey solved:");
+    /**
+     * Performs SAT attack with a single SAT solver. Miter C(X, K_A, Y_A) & C(X, K_B, Y_B) is loaded
+     * only once and every iteration adds just the two circuit copies constrained by the new DIO pair,
+     * so the learned clauses are kept during the whole attack. The copies are emitted as integer clauses
+     * with the constants of DIO pair already propagated. The condition Y_A != Y_B is guarded by an activation variable -
+     * it is assumed true while searching for distinguishing inputs and false while extracting the key
+     * from the same solver.
+     * In approximate mode the candidate key is extracted every few iterations and the attack ends as soon
+     * as its error rate on random inputs is under the threshold (AppSAT).
+     * In Double-DIP mode two more copies C(X, K_C, Y_A) & C(X, K_D, Y_B) with K_A != K_C and K_B != K_D
+     * are added (guarded by second activation variable), so every distinguishing input eliminates at least two
+     * wrong keys. When no such input exists, the attack continues with the ordinary distinguishing inputs.
+     * With cube-and-conquer every solver call is split into cubes over the key inputs with the largest fan-out.
+     */
+    private void performIncrementalSATAttack() {
+        long setupStart = System.nanoTime();
+        SatSolverWrapper satSolver = SatSolverFactory.createSolver(this.SATConfiguration);
+        satSolver.setBudget(this.budget);
+
+        Collection<Variable> keyInputVariable_A = new ArrayList<>();
+        for (String keyInputName : this.lockedLC.getKeyInputNames()) {
+            keyInputVariable_A.add(ff.variable(keyInputName + "_A"));
+        }
+
+        boolean doubleDIP = this.SATConfiguration.doubleDIP;
+        Variable activation = ff.variable(ACTIVATION_VARIABLE);
+        Variable doubleDIPActivation = ff.variable(DOUBLE_DIP_ACTIVATION_VARIABLE);
+        if (doubleDIP) {
+            satSolver.addFormula(CircuitUtilities.circuitCopiesWithSameInput(this.lockedLC, "_A", "_B", "_C", "_D"));
+            satSolver.addFormula(ff.implication(doubleDIPActivation, ff.and(
+                    CircuitUtilities.createEqualOutputs(this.lockedLC, "_A", "_C"),
+                    CircuitUtilities.createEqualOutputs(this.lockedLC, "_B", "_D"),
+                    CircuitUtilities.createDifferentKeys(this.lockedLC, "_A", "_C"),
+                    CircuitUtilities.createDifferentKeys(this.lockedLC, "_B", "_D"))));
+        } else {
+            satSolver.addFormula(CircuitUtilities.distinctCircuitsWithSameInput(this.lockedLC));
+        }
+        satSolver.addFormula(CircuitUtilities.createDifferentOutputs(this.lockedLC, "_A", "_B", activation));
+        if (this.SATConfiguration.symmetryBreaking)
+            satSolver.addFormula(CircuitUtilities.createLexicographicOrder(this.lockedLC, "_A", "_B", activation));
+        ff.clear();
+        if (isExpiredDuringSetup("building the miter"))
+            return;
+
+        // copies are reduced by constant propagation through the netlist, circuits without netlist
+        // (e.g. cyclic ones) are copied whole from the clause template
+        Netlist netlist = this.lockedLC.getNetlist();
+        DIOConstraintEncoder encoder = netlist == null ? null : new DIOConstraintEncoder(netlist);
+        ClauseTemplate template = netlist == null ? new ClauseTemplate(this.lockedLC) : null;
+        List<int[]> keyCopies = new ArrayList<>();
+        keyCopies.add(createKeyVariables(satSolver, template, "_A"));
+        keyCopies.add(createKeyVariables(satSolver, template, "_B"));
+        if (doubleDIP) {
+            keyCopies.add(createKeyVariables(satSolver, template, "_C"));
+            keyCopies.add(createKeyVariables(satSolver, template, "_D"));
+        }
+
+        Collection<Literal> searchAssumption = doubleDIP
+                ? Arrays.asList(activation, doubleDIPActivation)
+                : Collections.singletonList(activation);
+        Collection<Literal> keyAssumption = doubleDIP
+                ? Arrays.asList(activation.negate(), doubleDIPActivation.negate())
+                : Collections.singletonList(activation.negate());
+        Collection<Variable> inputVariablesFilter = this.lockedLC.getInputVariables(ff);
+        Collection<Variable> outputVariablesFilter = this.lockedLC.getOutputVariables(ff);
+
+        // search is split on both copies of key, key extraction only on K_A
+        List<List<Literal>> searchCubes = null;
+        List<List<Literal>> keyCubes = null;
+        if (this.SATConfiguration.cubeKeys > 0) {
+            List<String> cubeKeyNames = CubeGenerator.selectKeyInputs(this.lockedLC, this.SATConfiguration.cubeKeys);
+            searchCubes = CubeGenerator.createCubes(cubeKeyNames, "_A", "_B");
+            keyCubes = CubeGenerator.createCubes(cubeKeyNames, "_A");
+            Protocol.printInfoMessage("Cube-and-conquer on key inputs " + cubeKeyNames + ", "
+                    + searchCubes.size() + " cubes per round.");
+        }
+
+        boolean approximate = this.SATConfiguration.approximate;
+        if (approximate && netlist == null) {
+            Protocol.printWarningMessage("Approximate attack requires combinational circuit, performing exact attack.");
+            approximate = false;
+        }
+        Random sampler = new Random(this.SATConfiguration.approximationSeed);
+
+        // logged pairs are loaded at once, without solving and without calling the oracle
+        List<Assignment[]> replayed = new ArrayList<>();
+        DIPCheckpoint checkpoint = openCheckpoint(replayed);
+        for (Assignment[] pair : replayed)
+            emitDIOConstraints(satSolver, encoder, template, keyCopies, pair[0], pair[1]);
+        this.telemetry.record(this.telemetry.newIteration(replayed.size(), "setup")
+                .addEncoding(System.nanoTime() - setupStart));
+
+        Assignment keyAssignment = null;
+        int iteration = replayed.size() + 1;
+        while (true) {
+            AttackTelemetry.Iteration metrics = this.telemetry.newIteration(iteration, doubleDIP ? "ddip" : "dip");
+            long start = System.nanoTime();
+            Tristate result = solve(satSolver, searchAssumption, searchCubes);
+            metrics.addSolve(System.nanoTime() - start, result, satSolver.getStatistics());
+            if (result != Tristate.TRUE) {
+                this.telemetry.record(metrics);
+                this.complete = result == Tristate.FALSE;
+                if (!doubleDIP || !this.complete)
+                    break;
+                // no input distinguishes two pairs of keys, copies C and D are not needed anymore
+                Protocol.printInfoMessage("Double-DIP phase ended after " + (iteration - 1) + " round(s).");
+                doubleDIP = false;
+                keyCopies = keyCopies.subList(0, 2);
+                searchAssumption = Arrays.asList(activation, doubleDIPActivation.negate());
+                continue;
+            }
+
+            start = System.nanoTime();
+            Assignment distinguishingInput = satSolver.getModel(inputVariablesFilter);
+            Assignment distinguishingOutput = this.lockedLC.evaluate(distinguishingInput.literals(),
+                    realKey.literals(), outputVariablesFilter);
+            metrics.addOracle(System.nanoTime() - start);
+
+            start = System.nanoTime();
+            if (checkpoint != null)
+                checkpoint.append(distinguishingInput, distinguishingOutput);
+            emitDIOConstraints(satSolver, encoder, template, keyCopies, distinguishingInput, distinguishingOutput);
+            metrics.addEncoding(System.nanoTime() - start);
+
+            if (approximate && iteration % this.SATConfiguration.approximationInterval == 0) {
+                start = System.nanoTime();
+                result = solve(satSolver, keyAssumption, keyCubes);
+                metrics.addSolve(System.nanoTime() - start, result, satSolver.getStatistics());
+                if (result == Tristate.FALSE)
+                    throw new IllegalStateException("No key is consistent with the distinguishing inputs.");
+                if (result == Tristate.UNDEF) {
+                    // distinguishing input of this round is already added
+                    this.telemetry.record(metrics);
+                    this.complete = false;
+                    iteration++;
+                    break;
+                }
+                Assignment candidateKey = satSolver.getModel(keyInputVariable_A);
+
+                start = System.nanoTime();
+                List<Assignment[]> misclassified = new ArrayList<>();
+                double errorRate = measureErrorRate(candidateKey, sampler, misclassified);
+                metrics.addOracle(System.nanoTime() - start);
+                if (errorRate <= this.SATConfiguration.errorThreshold) {
+                    Protocol.printInfoMessage(String.format("Approximate key found in round %d, error rate %.4f.",
+                            iteration, errorRate));
+                    this.telemetry.record(metrics);
+                    this.complete = false;
+                    this.approximate = true;
+                    keyAssignment = candidateKey;
+                    break;
+                }
+
+                // inputs misclassified by the candidate key constrain the keys in the same way as DIO pairs,
+                // only a few of them are added, so the solver is not flooded with circuit copies
+                start = System.nanoTime();
+                for (Assignment[] pair : misclassified.subList(0, Math.min(misclassified.size(), MAX_MISCLASSIFIED_CONSTRAINTS))) {
+                    if (checkpoint != null)
+                        checkpoint.append(pair[0], pair[1]);
+                    emitDIOConstraints(satSolver, encoder, template, keyCopies, pair[0], pair[1]);
+                }
+                metrics.addEncoding(System.nanoTime() - start);
+            }
+            this.telemetry.record(metrics);
+            iteration++;
+        }
+
+        this.iterations = iteration - (keyAssignment == null ? 1 : 0);
+        printAttackEnd();
+
+        if (keyAssignment == null)
+            keyAssignment = extractKey(satSolver, keyAssumption, keyCubes, keyInputVariable_A,
+                    this.telemetry.newIteration(iteration, "key"));
+        reportKey(keyAssignment);
+    }
+
+    /**
+     * Extracts the key consistent with all distinguishing inputs found so far. When the budget of attack
+     * is exhausted, the key is extracted with limited number of conflicts regardless of the deadline,
+     * so the attack can report a partial result.
+     * @param cubes cubes of key extraction, null to solve without cube-and-conquer
+     * @param metrics telemetry record of key extraction
+     * @return assignment of K_A or null, if no key was found within the budget
+     */
+    private Assignment extractKey(SatSolverWrapper solver, Collection<Literal> assumptions, List<List<Literal>> cubes,
+                                  Collection<Variable> keyInputVariable_A, AttackTelemetry.Iteration metrics) {
+        long start = System.nanoTime();
+        Tristate result = solve(solver, assumptions, cubes);
+        metrics.addSolve(System.nanoTime() - start, result, solver.getStatistics());
+        if (result == Tristate.UNDEF) {
+            this.complete = false;
+            long conflictLimit = this.SATConfiguration.conflictLimit != 0
+                    ? this.SATConfiguration.conflictLimit : PARTIAL_KEY_CONFLICT_LIMIT;
+            solver.setBudget(SolveBudget.start(conflictLimit, 0, null));
+            start = System.nanoTime();
+            result = solve(solver, assumptions, cubes);
+            metrics.addSolve(System.nanoTime() - start, result, solver.getStatistics());
+        }
+        this.telemetry.record(metrics);
+
+        if (result == Tristate.FALSE)
+            throw new IllegalStateException("No key is consistent with the distinguishing inputs.");
+        return result == Tristate.TRUE ? solver.getModel(keyInputVariable_A) : null;
+    }
+
+    /**
+     * Ends the attack without key, when the budget expired before the first distinguishing input was searched
+     * (building the miter and loading the solver are not interrupted by the budget). Once some distinguishing
+     * inputs are known (e.g. replayed from checkpoint), the expired budget is handled by the solver calls
+     * and the attack reports a partial key.
+     * @param phase phase of setup for the message
+     * @return true if the attack has to end
+     */
+    private boolean isExpiredDuringSetup(String phase) {
+        if (!this.budget.isExpired())
+            return false;
+        this.complete = false;
+        this.iterations = 0;
+        Protocol.printWarningMessage("Solving budget exhausted while " + phase + ", no distinguishing input was searched.");
+        reportKey(null);
+        return true;
+    }
+
+    /**
+     * Creates the condition Y_A != Y_B of miter, with the symmetry breaking K_A < K_B if configured.
+     */
+    private Formula createMiterCondition() {
+        Formula distinctOutputs = CircuitUtilities.createDifferentOutputs(this.lockedLC);
+        if (!this.SATConfiguration.symmetryBreaking)
+            return distinctOutputs;
+        return ff.and(distinctOutputs, CircuitUtilities.createLexicographicOrder(this.lockedLC, "_A", "_B", null));
+    }
+
+    /**
+     * Solves under the assumptions, with cube-and-conquer if the cubes are given.
+     */
+    private static Tristate solve(SatSolverWrapper solver, Collection<Literal> assumptions, List<List<Literal>> cubes) {
+        return cubes == null ? solver.solve(assumptions) : solver.solveCubes(assumptions, cubes);
+    }
+
+    private void printAttackEnd() {
+        if (this.approximate)
+            Protocol.printInfoMessage("Approximate attack ended after " + this.iterations + " round(s), "
+                    + "the key is correct only up to the error threshold.");
+        else if (this.complete)
+            Protocol.printInfoMessage("Attack ended after " + this.iterations + " round(s).");
+        else
+            Protocol.printWarningMessage("Solving budget exhausted after " + this.iterations + " round(s), "
+                    + "the key is consistent only with the distinguishing inputs found so far.");
+    }
+
+    /**
+     * Prints the key and stores it as the result of attack.
+     * @param keyAssignment assignment of K_A, null if no key was found
+     */
+    private void reportKey(Assignment keyAssignment) {
+        if (keyAssignment == null) {
+            Protocol.printWarningMessage("No key was found within the solving budget.");
+            this.estimatedKey = new Assignment();
+            return;
+        }
+
+        System.out.println(this.approximate ? "\nApproximate key:" : this.complete ? "\nKey solved:" : "\nPartial key:");
 
         for (Literal l : keyAssignment.literals())
             System.out.println(l.name() + " = " + l.phase());
@@ -110,19 +468,135 @@ public class SatAttackWrapper {
         this.estimatedKey = keyAssignment;
     }
 
+    /**
+     * Constrains every copy of key by the DIO pair.
+     * @param encoder encoder of constrained circuit copies, null if the copies are emitted from template
+     * @param template clause template of logic circuit, null if the copies are encoded from netlist
+     * @param keyCopies solver variables of K_A, K_B ... (see createKeyVariables())
+     */
+    private void emitDIOConstraints(SatSolverWrapper satSolver, DIOConstraintEncoder encoder, ClauseTemplate template,
+                                    List<int[]> keyCopies, Assignment input, Assignment output) {
+        for (int[] keyVariables : keyCopies) {
+            if (encoder != null)
+                encoder.emit(satSolver, keyVariables, input, output);
+            else
+                emitDIOConstraint(template, satSolver, keyVariables, input, output);
+        }
+    }
+
+    /**
+     * Evaluates the locked circuit with candidate key and with correct key (oracle) on a batch of random inputs.
+     * @param candidateKey assignment of key variables of the K_A copy
+     * @param sampler generator of random inputs, seeded once per attack
+     * @param misclassified output parameter, collects input and oracle output of every misclassified input
+     * @return ratio of random inputs, for which the outputs differ
+     */
+    private double measureErrorRate(Assignment candidateKey, Random sampler, List<Assignment[]> misclassified) {
+        List<String> inputNames = this.lockedLC.getSortedInputNames();
+        List<String> keyNames = this.lockedLC.getSortedKeyInputNames();
+        int samples = this.SATConfiguration.approximationSamples;
+
+        // literals are matched by names, variables created after ff.clear() are different instances
+        Map<String, Boolean> keyValues = new HashMap<>();
+        for (Literal l : candidateKey.literals())
+            keyValues.put(l.name(), l.phase());
+        for (Literal l : this.realKey.literals())
+            keyValues.put(l.name(), l.phase());
+
+        int[] candidate = new int[keyNames.size()];
+        int[] correct = new int[keyNames.size()];
+        for (int k = 0; k < keyNames.size(); k++) {
+            candidate[k] = keyValues.getOrDefault(keyNames.get(k) + "_A", false) ? 1 : 0;
+            correct[k] = keyValues.getOrDefault(keyNames.get(k), false) ? 1 : 0;
+        }
+
+        BitMatrix inputs = BitMatrix.random(inputNames.size(), samples, sampler);
+        BatchResult candidateResult = this.lockedLC.evaluateBatch(inputs, candidate);
+        BatchResult oracleResult = this.lockedLC.evaluateBatch(inputs, correct);
+        BitMatrix candidateOutputs = candidateResult.getOutputs();
+        BitMatrix oracleOutputs = oracleResult.getOutputs();
+
+        // vector is misclassified if any of its outputs differs
+        long[] differs = new long[inputs.getWordCount()];
+        for (int o = 0; o < oracleOutputs.getRowCount(); o++) {
+            long[] a = candidateOutputs.getRow(o);
+            long[] b = oracleOutputs.getRow(o);
+            for (int w = 0; w < differs.length; w++)
+                differs[w] |= a[w] ^ b[w];
+        }
+
+        Collection<Variable> outputVariablesFilter = this.lockedLC.getOutputVariables(ff);
+        int errors = 0;
+        for (int w = 0; w < differs.length; w++) {
+            long word = differs[w] & inputs.wordMask(w);
+            errors += Long.bitCount(word);
+            for (; word != 0; word &= word - 1) {
+                int vector = w * 64 + Long.numberOfTrailingZeros(word);
+                Assignment input = new Assignment();
+                for (int i = 0; i < inputNames.size(); i++)
+                    input.addLiteral(ff.literal(inputNames.get(i), inputs.get(i, vector)));
+                misclassified.add(new Assignment[]{ input, oracleResult.getAssignment(vector, outputVariablesFilter) });
+            }
+        }
+        return (double) errors / samples;
+    }
+
+    /**
+     * Finds the solver variables of one copy of key (K_A or K_B).
+     * @param template clause template of logic circuit, null if the copies are encoded from netlist
+     * @return solver variables indexed by template variables if template is defined, otherwise solver
+     * variables in the order of sorted key names
+     */
+    private int[] createKeyVariables(SatSolverWrapper satSolver, ClauseTemplate template, String suffix) {
+        if (template != null)
+            return template.mapKeyVariables(satSolver, suffix);
+
+        List<String> keyNames = this.lockedLC.getSortedKeyInputNames();
+        int[] keyVariables = new int[keyNames.size()];
+        for (int k = 0; k < keyNames.size(); k++)
+            keyVariables[k] = satSolver.getOrAddVariable(keyNames.get(k) + suffix);
+        return keyVariables;
+    }
+
+    /**
+     * Emits a copy of attacked logic circuit into the solver. The copy shares the key variables with
+     * one half of miter and its inputs and outputs are fixed by the DIO pair.
+     * @param template clause template of logic circuit
+     * @param satSolver instance of a SAT solver, which is currently used in SAT attack
+     * @param keyVariables solver variables of either K_A or K_B
+     * @param distinguishingInput distinguishing input of current iteration
+     * @param distinguishingOutput output of oracle for distinguishing input
+     */
+    private void emitDIOConstraint(ClauseTemplate template, SatSolverWrapper satSolver, int[] keyVariables,
+                                   Assignment distinguishingInput, Assignment distinguishingOutput) {
+        int[] copy = template.emitCopy(satSolver, keyVariables);
+
+        for (Literal l : distinguishingInput.literals()) {
+            int variable = template.getVariable(l.name());
+            if (variable != -1)
+                satSolver.addUnitClause(copy[variable], l.phase());
+        }
+        for (Literal l : distinguishingOutput.literals()) {
+            int variable = template.getVariable(l.name());
+            if (variable != -1)
+                satSolver.addUnitClause(copy[variable], l.phase());
+        }
+    }
+
     /**
      * Creates a main formula F_i for current SAT attack iteration i. Formula is created as a conjunction
      * of previous formula F_{i-1} and two separate version of attacked logic circuit.
      * @param CNF CNF formula of logic circuit
-     * @param satSolver instance of a SAT solver, which is currently used in SAT attack
+     * @param distinguishingInput distinguishing input of current iteration
+     * @param distinguishingOutput output of oracle for distinguishing input
      * @param previousF_i previous form of the main formula
      * @param iteration number of current SAT attack iteration
      * @return main formula for current SAT attack iteration
      */
-    private Formula createCurrentMainFormula(Formula CNF, SatSolverWrapper satSolver,
+    private Formula createCurrentMainFormula(Formula CNF, Assignment distinguishingInput, Assignment distinguishingOutput,
                                              Formula previousF_i, int iteration) {
 
-        Formula DIO = computeDIOFormula(satSolver);
+        Formula DIO = ff.and(distinguishingInput.formula(ff), distinguishingOutput.formula(ff));
         ff.clear();
 
         ArrayList<Substitution> substitutions = createSubstitution(CNF, iteration);
@@ -144,19 +618,21 @@ public class SatAttackWrapper {
     }
 
     /**
-     * Computes the Distinguishing Input-Output formula for attack iteration.
-     * @param satSolver instance of a SAT solver, which is currently used in SAT attack
-     * @return DIO formula for current SAT attack iteration
+     * Creates the checkpoint of SAT attack configuration and loads the pairs logged by interrupted attack.
+     * @param replayed output parameter, collects the logged DIO pairs if the attack is resumed
+     * @return checkpoint or null, if the attack runs without checkpoint
      */
-    private Formula computeDIOFormula(SatSolverWrapper satSolver) {
-        Collection<Variable> inputVariablesFilter = this.lockedLC.getInputVariables(ff);
-        Collection<Variable> outputVariablesFilter = this.lockedLC.getOutputVariables(ff);
-
-        Assignment distinguishingInput = satSolver.getModel(inputVariablesFilter);
-        Assignment distinguishingOutput = this.lockedLC.evaluate(distinguishingInput.literals(),
-                realKey.literals(), outputVariablesFilter);
-
-        return ff.and(distinguishingInput.formula(ff), distinguishingOutput.formula(ff));
+    private DIPCheckpoint openCheckpoint(List<Assignment[]> replayed) {
+        if (this.SATConfiguration.checkpointFile == null)
+            return null;
+
+        DIPCheckpoint checkpoint = new DIPCheckpoint(this.lockedLC, this.SATConfiguration.checkpointFile);
+        if (this.SATConfiguration.resume) {
+            replayed.addAll(checkpoint.load());
+            Protocol.printInfoMessage("Resuming attack with " + replayed.size() + " distinguishing input(s) from checkpoint "
+                    + checkpoint.getFile().getName() + ".");
+        }
+        return checkpoint;
     }
 
     /**
@@ -201,6 +677,8 @@ public class SatAttackWrapper {
         System.out.println("Real key inserted: \t" + this.realKey.literals());
 
         int keyLength = parsedEstimatedKey.size();
+        if (keyLength == 0)
+            return;
         int differences = CircuitUtilities.arrayDifference(parsedEstimatedKey, this.realKey.literals());
         System.out.printf("Success rate %d / %d = [%.03f %%]%n",
                 keyLength - differences, keyLength, ((double)(keyLength - differences)*100) / keyLength);
@@ -212,8 +690,10 @@ public class SatAttackWrapper {
      * for Slovak readers.
      */
     private void performSATAttackWithDetails() {
-        SatSolverWrapper satSolver = new SatSolverWrapper();
-        SatSolverWrapper keySolver = new SatSolverWrapper();
+        SatSolverWrapper satSolver = SatSolverFactory.createSolver(this.SATConfiguration);
+        SatSolverWrapper keySolver = SatSolverFactory.createSolver();
+        satSolver.setBudget(this.budget);
+        keySolver.setBudget(this.budget);
 
         Formula CNF = this.lockedLC.getCNF();
         Collection<Variable> inputVariablesFilter = this.lockedLC.getInputVariables(ff);
@@ -235,12 +715,14 @@ public class SatAttackWrapper {
         // vytvorenie rovnice F_i ako spojenie CNF_A & CNF_B & Y_A != Y_B
         // a prida sa do solvera pripravena na vyhodnotenie
         Formula F_i = CircuitUtilities.distinctCircuitsWithSameInput(this.lockedLC);
-        Formula distinctOutputs = CircuitUtilities.createDifferentOutputs(this.lockedLC);
+        Formula distinctOutputs = createMiterCondition();
 
         satSolver.addFormula(ff.and(F_i, distinctOutputs));
 
         // nasladne sa bude volat solver, pokym bude existovat riesenie (SATisfiable)
-        while (satSolver.solve() == Tristate.TRUE) {
+        // alebo pokym sa nevycerpa rozpocet solvera (UNDEF)
+        Tristate result;
+        while ((result = satSolver.solve()) == Tristate.TRUE) {
             Protocol.printSection("Starting round " + iteration);
 
             // distinguishing input ziskame vdaka najdenemu rieseniu sat solvera
@@ -289,17 +771,49 @@ public class SatAttackWrapper {
             Protocol.printSection("Ending round \t" + (iteration - 1));
         }
 
-        Protocol.printInfoMessage("Attack ended after " + (iteration - 1) + " round(s).");
+        this.iterations = iteration - 1;
+        this.complete = result == Tristate.FALSE;
+        printAttackEnd();
 
         keySolver.addFormula(F_i);
-        keySolver.solve();
-        Assignment keyAssignment = keySolver.getModel(keyInputVariable_A);
+        reportKey(extractKey(keySolver, Collections.emptyList(), null, keyInputVariable_A,
+                this.telemetry.newIteration(iteration, "key")));
+    }
 
-        System.out.println("\nKey solved:");
+    /* Getters */
 
-        for (Literal l : keyAssignment.literals())
-            System.out.println(l.name() + " = " + l.phase());
+    /**
+     * Returns the key used by the oracle, an assignment of the original key variables.
+     */
+    public Assignment getRealKey() {
+        return this.realKey;
+    }
 
-        this.estimatedKey = keyAssignment;
+    public Assignment getEstimatedKey() {
+        return this.estimatedKey;
+    }
+
+    /**
+     * Returns the number of rounds (distinguishing inputs) of the last attack.
+     */
+    public int getIterationCount() {
+        return this.iterations;
+    }
+
+    /**
+     * Returns false if the last attack was stopped by exhausted solving budget, the estimated key is then
+     * consistent only with the distinguishing inputs found so far (or empty), or if the approximate attack
+     * ended on its error threshold (see isApproximate()).
+     */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * Returns true if the last attack was approximate (AppSAT) and ended on its error threshold, the estimated
+     * key then agrees with the oracle only on the sampled inputs.
+     */
+    public boolean isApproximate() {
+        return this.approximate;
     }
 }
@@ -0,0 +1,71 @@
+package main.attacker.sat;
+
+import org.logicng.datastructures.Assignment;
+import org.logicng.datastructures.Tristate;
+import org.logicng.formulas.Formula;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.util.Collection;
+
+/**
+ * Reusable SAT solver for repeated evaluation of one circuit. The CNF of circuit is loaded into the solver
+ * only once, when the session is opened, and every query is answered under assumptions of input and key
+ * literals. Clauses learned by the solver are kept between queries.
+ * The session is not thread-safe, every thread should use its own session.
+ */
+public class SatEvaluationSession implements AutoCloseable {
+
+    private final Formula CNF;
+    private SatSolverWrapper solver;
+
+    /**
+     * Opens the session and loads the formula into the solver.
+     * @param CNF CNF formula of logic circuit
+     */
+    public SatEvaluationSession(Formula CNF) {
+        this.CNF = CNF;
+        this.solver = SatSolverFactory.createLogicNGSolver();
+        this.solver.addFormula(CNF);
+    }
+
+    /**
+     * Finds the values of circuit variables under assumptions.
+     * @param assumptions input and key literals with defined boolean values
+     * @param variablesFilter filter of variables. If null, method returns an assignment of each variable.
+     * @return an assignment of either each variable or just the filtered variables
+     */
+    public Assignment evaluate(Collection<Literal> assumptions, Collection<Variable> variablesFilter)
+            throws IllegalStateException {
+        if (this.solver == null)
+            throw new IllegalStateException("Evaluation session is already closed.");
+
+        if (this.solver.solve(assumptions) != Tristate.TRUE)
+            throw new IllegalStateException("Unable to evaluate circuit.");
+
+        return variablesFilter == null ? this.solver.getModel() : this.solver.getModel(variablesFilter);
+    }
+
+    /**
+     * Releases the solver. Session cannot be used after closing.
+     */
+    @Override
+    public void close() {
+        if (this.solver != null)
+            this.solver.reset();
+        this.solver = null;
+    }
+
+    /* Getters */
+
+    public boolean isOpen() {
+        return this.solver != null;
+    }
+
+    /**
+     * Returns the formula loaded into the solver of session.
+     */
+    public Formula getCNF() {
+        return this.CNF;
+    }
+}
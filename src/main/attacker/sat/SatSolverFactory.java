@@ -0,0 +1,36 @@
+package main.attacker.sat;
+
+/**
+ * Creates SAT solvers for attacks. By default every solver is LogicNG MiniSat, the backend of SAT attack
+ * is selected by its configuration (see SATConfig.setExternalSolver()).
+ */
+public class SatSolverFactory {
+
+    private SatSolverFactory() {
+    }
+
+    /**
+     * Creates a solver with the default backend (LogicNG MiniSat).
+     */
+    public static SatSolverWrapper createSolver() {
+        return new LogicNGSatSolver();
+    }
+
+    /**
+     * Creates a solver with the backend of SAT attack configuration. External solver of configuration
+     * takes precedence, otherwise the LogicNG engines of configuration are used.
+     */
+    public static SatSolverWrapper createSolver(SATConfig config) {
+        if (config.solverCommand != null)
+            return new ExternalSatSolver(config.solverCommand);
+        return new LogicNGSatSolver(config.solverEngines);
+    }
+
+    /**
+     * Creates LogicNG solver regardless of configuration. Intended for frequent small queries, where
+     * starting an external process would be too slow.
+     */
+    public static SatSolverWrapper createLogicNGSolver() {
+        return new LogicNGSatSolver();
+    }
+}
@@ -1,77 +1,114 @@
 package main.attacker.sat;
 
-import main.helpers.FormulaFactoryWrapper;
+import org.logicng.collections.LNGIntVector;
 import org.logicng.datastructures.Assignment;
 import org.logicng.datastructures.Tristate;
 import org.logicng.formulas.Formula;
-import org.logicng.formulas.FormulaFactory;
 import org.logicng.formulas.Literal;
 import org.logicng.formulas.Variable;
-import org.logicng.solvers.MiniSat;
-import org.logicng.solvers.SATSolver;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
-public class SatSolverWrapper {
-	
-	private final SATSolver satSolver;
-	private Assignment model;
-		
-	public SatSolverWrapper(){
-		FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
-		this.satSolver = MiniSat.miniSat(ff);
-		this.model = null;
-	}
+/**
+ * Common interface of SAT solver backends used by the attacks. Instances are created by SatSolverFactory.
+ * Formulas and clauses added to the solver are kept between calls of solve(), so the solver can be used
+ * incrementally. Variables have indices starting from 0, literals are encoded as in MiniSat
+ * (2 * variable for positive and 2 * variable + 1 for negative phase).
+ */
+public interface SatSolverWrapper {
 
 	/**
 	 * Loads the formula into SAT solver.
 	 */
-	public void addFormula(Formula f){
-		satSolver.add(f);
-	}
+	void addFormula(Formula f);
 
 	/**
 	 * Finds boolean assignment for each variable so that the formula is satisfied.
+	 * @return TRUE or FALSE, UNDEF if the backend was unable to decide or the budget was exhausted
 	 */
-	public Tristate solve(){
-		Tristate ts = satSolver.sat();
-		this.saveModel();
-		return ts;
-	}
+	Tristate solve();
 
-	 /**
-	  * Finds boolean assignment for all values, that are not fixed in the assumption.
-	  */
-	public Tristate solve(Collection<Literal> assumptions){
-		Tristate ts = satSolver.sat(assumptions);
-		this.saveModel();
-		return ts;
-	}
+	/**
+	 * Finds boolean assignment for all values, that are not fixed in the assumption.
+	 * Assumptions are valid only for this call.
+	 */
+	Tristate solve(Collection<Literal> assumptions);
 
-	public void reset(){
-		this.model = null;
-		this.satSolver.reset();
+	/**
+	 * Cube-and-conquer: solves the formula under the assumptions extended by every cube (see CubeGenerator).
+	 * Cubes have to cover the whole search space of their variables. Default implementation solves
+	 * the cubes one after another, backends with more solvers can solve them in parallel.
+	 * @return TRUE with the model of the first satisfiable cube, FALSE if all cubes are unsatisfiable,
+	 * UNDEF if any cube was not decided
+	 */
+	default Tristate solveCubes(Collection<Literal> assumptions, List<List<Literal>> cubes){
+		Tristate result = Tristate.FALSE;
+		for (List<Literal> cube : cubes) {
+			List<Literal> cubeAssumptions = new ArrayList<>(assumptions);
+			cubeAssumptions.addAll(cube);
+			Tristate cubeResult = solve(cubeAssumptions);
+			if (cubeResult == Tristate.TRUE)
+				return cubeResult;
+			if (cubeResult == Tristate.UNDEF)
+				result = Tristate.UNDEF;
+		}
+		return result;
 	}
 
-	/* Getters */
+	/**
+	 * Limits the following calls of solve(). Call stopped by exhausted budget returns UNDEF.
+	 */
+	void setBudget(SolveBudget budget);
+
+	/**
+	 * Removes every formula and clause from the solver.
+	 */
+	void reset();
+
+	/**
+	 * Creates a new unnamed variable. Unnamed variables are never part of the model.
+	 * @return index of variable in the solver
+	 */
+	int newVariable();
+
+	/**
+	 * Returns the index of named variable in the solver. Unknown variable is created.
+	 */
+	int getOrAddVariable(String name);
+
+	/**
+	 * Adds a clause of solver literals (see literal()) directly into the solver.
+	 */
+	void addClause(LNGIntVector clause);
 
 	/**
-	 * Returns a model - boolean value assignment for each variable.
+	 * Adds a clause with single literal directly into the solver.
 	 */
-	public Assignment getModel(){
-		return this.model;
+	default void addUnitClause(int variable, boolean phase){
+		addClause(new LNGIntVector(new int[]{ literal(variable, phase) }));
 	}
 
+	/**
+	 * Returns a model - boolean value assignment for each named variable after satisfiable solve().
+	 */
+	Assignment getModel();
+
 	/**
 	 * Returns a model - boolean value assignment restricted to variable filter.
 	 */
-	public Assignment getModel(Collection<Variable> variablesFilter){
-		return this.satSolver.model(variablesFilter);
-	}
+	Assignment getModel(Collection<Variable> variablesFilter);
 
-	/* Utilities */
+	/**
+	 * Returns the counters of the last call of solve() and the current size of formula in the solver.
+	 */
+	SolverStatistics getStatistics();
 
-	private void saveModel(){
-		this.model = satSolver.model();
+	/**
+	 * Creates a solver literal from the index of variable.
+	 */
+	static int literal(int variable, boolean phase){
+		return 2 * variable + (phase ? 0 : 1);
 	}
 }
@@ -0,0 +1,70 @@
+package main.attacker.sat;
+
+/**
+ * Limits of solver calls - maximum number of conflicts of a single call, wall-clock deadline shared by all
+ * calls and cancel token. Solver returns UNDEF, when any of the limits is exceeded.
+ */
+public class SolveBudget {
+
+    private static final SolveBudget UNLIMITED = new SolveBudget(0, 0, null);
+
+    private final long conflictLimit;
+    private final long deadline;
+    private final CancelToken cancelToken;
+
+    private SolveBudget(long conflictLimit, long deadline, CancelToken cancelToken) {
+        this.conflictLimit = conflictLimit;
+        this.deadline = deadline;
+        this.cancelToken = cancelToken;
+    }
+
+    public static SolveBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * Creates a budget with deadline measured from now.
+     * @param conflictLimit maximum number of conflicts of every solver call, 0 for unlimited
+     * @param timeoutMillis time to the deadline in milliseconds, 0 for no deadline
+     * @param cancelToken cancel token, null if the solving cannot be cancelled
+     */
+    public static SolveBudget start(long conflictLimit, long timeoutMillis, CancelToken cancelToken) {
+        if (conflictLimit < 0 || timeoutMillis < 0)
+            throw new IllegalArgumentException("Limits of solving cannot be negative.");
+        if (conflictLimit == 0 && timeoutMillis == 0 && cancelToken == null)
+            return UNLIMITED;
+        // deadline 0 means no deadline, nanoTime() can be zero only by chance
+        long deadline = timeoutMillis == 0 ? 0 : (System.nanoTime() + timeoutMillis * 1_000_000L) | 1;
+        return new SolveBudget(conflictLimit, deadline, cancelToken);
+    }
+
+    /**
+     * Checks the deadline and the cancel token.
+     */
+    public boolean isExpired() {
+        return (this.cancelToken != null && this.cancelToken.isCancelled())
+                || (this.deadline != 0 && System.nanoTime() - this.deadline > 0);
+    }
+
+    /**
+     * Checks all the limits of solver call.
+     * @param conflicts number of conflicts of current call
+     */
+    public boolean isExhausted(long conflicts) {
+        return (this.conflictLimit != 0 && conflicts >= this.conflictLimit) || isExpired();
+    }
+
+    public boolean isUnlimited() {
+        return this == UNLIMITED;
+    }
+
+    /* Getters */
+
+    public long getConflictLimit() {
+        return this.conflictLimit;
+    }
+
+    public CancelToken getCancelToken() {
+        return this.cancelToken;
+    }
+}
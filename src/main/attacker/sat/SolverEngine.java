@@ -0,0 +1,62 @@
+package main.attacker.sat;
+
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.solvers.MiniSat;
+import org.logicng.solvers.sat.GlucoseConfig;
+import org.logicng.solvers.sat.MiniSatConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Configurations of LogicNG solvers used by SatSolverWrapper. Configurations differ in the solver
+ * (MiniSat, Glucose, MiniCard), the initial phase of variables, the restart strategy and the decay
+ * of variable activity, so they tend to perform best on different instances.
+ * All of them use the same CNF transformation, so they number the variables in the same way.
+ */
+public enum SolverEngine {
+    MINISAT,
+    MINISAT_POSITIVE_PHASE,
+    MINISAT_FAST_RESTARTS,
+    MINISAT_SLOW_DECAY,
+    GLUCOSE,
+    GLUCOSE_POSITIVE_PHASE,
+    MINICARD,
+    MINICARD_FAST_RESTARTS;
+
+    /**
+     * Creates a new solver with the configuration of engine.
+     */
+    public MiniSat createSolver(FormulaFactory ff) {
+        switch (this) {
+            case MINISAT_POSITIVE_PHASE:
+                return MiniSat.miniSat(ff, MiniSatConfig.builder().initialPhase(true).build());
+            case MINISAT_FAST_RESTARTS:
+                return MiniSat.miniSat(ff, MiniSatConfig.builder().restartFirst(50).restartInc(1.5).build());
+            case MINISAT_SLOW_DECAY:
+                return MiniSat.miniSat(ff, MiniSatConfig.builder().varDecay(0.99).clauseDecay(0.9999).build());
+            case GLUCOSE:
+                return MiniSat.glucose(ff);
+            case GLUCOSE_POSITIVE_PHASE:
+                return MiniSat.glucose(ff, MiniSatConfig.builder().initialPhase(true).build(),
+                        GlucoseConfig.builder().build());
+            case MINICARD:
+                return MiniSat.miniCard(ff);
+            case MINICARD_FAST_RESTARTS:
+                return MiniSat.miniCard(ff, MiniSatConfig.builder().restartFirst(50).restartInc(1.5).build());
+            default:
+                return MiniSat.miniSat(ff);
+        }
+    }
+
+    /**
+     * Returns the first n configurations for a portfolio of n solvers (n is limited by the number of engines).
+     */
+    public static List<SolverEngine> portfolio(int n) {
+        List<SolverEngine> engines = new ArrayList<>(Arrays.asList(
+                MINISAT, GLUCOSE, MINICARD, MINISAT_POSITIVE_PHASE,
+                GLUCOSE_POSITIVE_PHASE, MINISAT_FAST_RESTARTS, MINICARD_FAST_RESTARTS, MINISAT_SLOW_DECAY));
+        return engines.subList(0, Math.max(1, Math.min(n, engines.size())));
+    }
+}
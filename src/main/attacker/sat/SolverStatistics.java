@@ -0,0 +1,47 @@
+package main.attacker.sat;
+
+/**
+ * Counters of a single call of solve() and the size of formula loaded in SAT solver.
+ * Counters, which are not reported by the backend, have value -1.
+ */
+public class SolverStatistics {
+
+    private final long conflicts;
+    private final long decisions;
+    private final long propagations;
+    private final int variables;
+    private final int clauses;
+
+    public SolverStatistics(long conflicts, long decisions, long propagations, int variables, int clauses) {
+        this.conflicts = conflicts;
+        this.decisions = decisions;
+        this.propagations = propagations;
+        this.variables = variables;
+        this.clauses = clauses;
+    }
+
+    /* Getters */
+
+    public long getConflicts() {
+        return this.conflicts;
+    }
+
+    public long getDecisions() {
+        return this.decisions;
+    }
+
+    public long getPropagations() {
+        return this.propagations;
+    }
+
+    public int getVariables() {
+        return this.variables;
+    }
+
+    /**
+     * Returns the number of original clauses, learned clauses are not included.
+     */
+    public int getClauses() {
+        return this.clauses;
+    }
+}
@@ -1,9 +1,15 @@
 package main.attacker.sig;
 
+import main.attacker.AttackTelemetry;
 import main.helpers.FormulaFactoryWrapper;
+import main.attacker.sat.SATConfig;
+import main.attacker.sat.SatSolverFactory;
 import main.attacker.sat.SatSolverWrapper;
 import main.circuit.LogicCircuit;
+import main.circuit.components.Netlist;
+import main.circuit.simulation.SimulationSession;
 import main.circuit.utilities.CircuitUtilities;
+import main.circuit.utilities.KeyRelationEncoder;
 import main.helpers.utilities.ProgressBar;
 import main.helpers.utilities.Protocol;
 import org.logicng.datastructures.Assignment;
@@ -13,11 +19,14 @@ import org.logicng.formulas.FormulaFactory;
 import org.logicng.formulas.Literal;
 import org.logicng.formulas.Variable;
 
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class SigAttackWrapper {
 
+    private static final String KEY_DIFFERENCE_PREFIX = "SIG_kdiff";
+
     private final LogicCircuit lockedCircuit;
 
     private final List<Variable> inputVariables;
@@ -26,6 +35,10 @@ public class SigAttackWrapper {
     private final List<Variable> outputVariables_A;
     private final List<Variable> outputVariables_B;
     private final Map<String, String> relatedInputs;
+    private File telemetryFile;
+    private SATConfig solverConfig;
+    private boolean symmetryBreaking;
+    private boolean complete;
 
     public SigAttackWrapper(LogicCircuit lockedCircuit) {
         if (lockedCircuit.getCorrectKey().length != 0)
@@ -38,6 +51,38 @@ public class SigAttackWrapper {
         this.outputVariables_A = new ArrayList<>();
         this.outputVariables_B = new ArrayList<>();
         this.relatedInputs = new TreeMap<>();
+        this.telemetryFile = null;
+        this.solverConfig = SATConfig.createSATConfig();
+        this.symmetryBreaking = false;
+        this.complete = false;
+    }
+
+    /**
+     * Writes metrics of every key bit into a telemetry file (see AttackTelemetry). Telemetry is off by default.
+     * @param file JSON Lines file, or CSV file if its name ends with ".csv", null to disable telemetry
+     */
+    public SigAttackWrapper setTelemetry(File file) {
+        this.telemetryFile = file;
+        return this;
+    }
+
+    /**
+     * Sets the solver backend (LogicNG engines or external solver) and the limits of solving (conflict limit,
+     * timeout of whole attack and cancel token) by the configuration of SAT attack, other options of configuration
+     * are not used. Attack stopped by the limits reports the pairs found so far.
+     */
+    public SigAttackWrapper setSolverConfig(SATConfig config) {
+        this.solverConfig = config;
+        return this;
+    }
+
+    /**
+     * Adds the constraint K_A < K_B (lexicographically) into the miter. Keys of both copies differ only in
+     * the attacked bit, so the solver does not try both of their orders.
+     */
+    public SigAttackWrapper setSymmetryBreaking(boolean symmetryBreaking) {
+        this.symmetryBreaking = symmetryBreaking;
+        return this;
     }
 
     /**
@@ -61,35 +106,69 @@ public class SigAttackWrapper {
         }
 
         FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
-        SatSolverWrapper satSolver = new SatSolverWrapper();
+        SatSolverWrapper satSolver = SatSolverFactory.createSolver(this.solverConfig);
+        satSolver.setBudget(this.solverConfig.startBudget());
 
         createFilters();
+        this.complete = true;
         ProgressBar bar = new ProgressBar(this.keyInputVariables_A.size(), "SigAttack", true);
 
-        Formula distinctCircuits = CircuitUtilities.distinctCircuitsWithSameInput(this.lockedCircuit);
-        Formula notEqualOutputs = CircuitUtilities.createDifferentOutputs(this.lockedCircuit);
-
-        for (int k = 0; k < this.keyInputVariables_A.size(); k++) {
-            bar.updateBar(k);
-
-            Formula hammingKeys = CircuitUtilities.differenceAtIndex(k,
-                    this.keyInputVariables_A, this.keyInputVariables_B);
-
-            Formula F = ff.and(distinctCircuits, notEqualOutputs, hammingKeys);
+        // miter and selectors of key differences are loaded only once, every key bit is a query
+        // with different assumptions, so the solver keeps its learned clauses
+        AttackTelemetry telemetry = AttackTelemetry.open(this.telemetryFile, "sig", this.lockedCircuit.getName());
+        try {
+            long setupStart = System.nanoTime();
+            KeyRelationEncoder keyRelation = new KeyRelationEncoder(this.keyInputVariables_A, this.keyInputVariables_B,
+                    KEY_DIFFERENCE_PREFIX);
+            satSolver.addFormula(ff.and(CircuitUtilities.distinctCircuitsWithSameInput(this.lockedCircuit),
+                    createMiterCondition(), keyRelation.encode()));
             ff.clear();
-            satSolver.reset();
-            satSolver.addFormula(F);
-
-            if (satSolver.solve() != Tristate.TRUE)
-                throw new IllegalStateException("Formula is not satisfiable.");
-
-            String actualASKey = CircuitUtilities.removeSuffix(this.keyInputVariables_A.get(k)).name();
-            performSigAttackIteration(satSolver, actualASKey);
+            telemetry.record(telemetry.newIteration(0, "setup").addEncoding(System.nanoTime() - setupStart));
+
+            for (int k = 0; k < this.keyInputVariables_A.size(); k++) {
+                bar.updateBar(k);
+                AttackTelemetry.Iteration metrics = telemetry.newIteration(k + 1, "bit");
+
+                long start = System.nanoTime();
+                Tristate result = satSolver.solve(keyRelation.differenceAt(k));
+                metrics.addSolve(System.nanoTime() - start, result, satSolver.getStatistics());
+                if (result != Tristate.TRUE) {
+                    telemetry.record(metrics);
+                    if (result == Tristate.FALSE)
+                        throw new IllegalStateException("Formula is not satisfiable.");
+                    Protocol.printWarningMessage("Solving budget exhausted at key bit " + (k + 1) + " of "
+                            + this.keyInputVariables_A.size() + ", reporting the pairs found so far.");
+                    this.complete = false;
+                    break;
+                }
+
+                start = System.nanoTime();
+                String actualASKey = CircuitUtilities.removeSuffix(this.keyInputVariables_A.get(k)).name();
+                performSigAttackIteration(satSolver, actualASKey);
+                telemetry.record(metrics.addOracle(System.nanoTime() - start));
+            }
+        } finally {
+            telemetry.close();
         }
 
         evaluateSuccess(printStatistics);
     }
 
+    /**
+     * Returns false if the last attack was stopped by exhausted solving budget, the estimated pairs then
+     * cover only the key bits attacked so far.
+     */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * @return estimated pairs of AntiSAT key bit and its related input bit, by the name of key bit
+     */
+    public Map<String, String> getRelatedInputs() {
+        return Collections.unmodifiableMap(this.relatedInputs);
+    }
+
     /**
      * Tries to find corresponding input bit to specific key bit.
      * @param satSolver Instance of a SAT solver, which is currently used in Sig attack
@@ -97,8 +176,6 @@ public class SigAttackWrapper {
      */
     private void performSigAttackIteration(SatSolverWrapper satSolver, String currentASKey) {
 
-        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
-
         Assignment input = satSolver.getModel(this.inputVariables);
         Assignment key_A = satSolver.getModel(this.keyInputVariables_A);
         Assignment key_B = satSolver.getModel(this.keyInputVariables_B);
@@ -111,29 +188,117 @@ public class SigAttackWrapper {
         if (unflippedA == unflippedB)
             return;
 
-        Collection<Literal> K1 = new ArrayList<>();
-        Collection<Literal> K2 = new ArrayList<>();
+        // circuits without simulator (e.g. cyclic ones) are evaluated vector by vector
+        if (this.lockedCircuit.getSimulator() == null) {
+            findRelatedInputsByEvaluation(input, key_A, key_B, currentASKey);
+            return;
+        }
 
-        for (Literal literal : key_A.literals()) {
-            K1.add(ff.literal(literal.name().substring(0, literal.name().length()-2), literal.phase()));
+        // pattern 0 is simulated with key K_A and pattern 1 with key K_B, both with the same input
+        List<String> inputNames = this.lockedCircuit.getSortedInputNames();
+        List<String> keyNames = this.lockedCircuit.getSortedKeyInputNames();
+        long[] inputWords = createWords(createVector(input, inputNames), createVector(input, inputNames));
+        long[] keyWords = createWords(createVector(key_A, keyNames), createVector(key_B, keyNames));
+
+        SimulationSession session = this.lockedCircuit.openSimulationSession(inputWords, keyWords);
+        Netlist netlist = session.getNetlist();
+        int differentOutputs = 0;
+        for (int output : netlist.getOutputs()) {
+            if (patternsDiffer(session.getValue(output)))
+                differentOutputs++;
         }
-        for (Literal literal : key_B.literals()) {
-            K2.add(ff.literal(literal.name().substring(0, literal.name().length()-2), literal.phase()));
+
+        // flip every input bit and update the number of different outputs only by the changed ones
+        for (int i = 0; i < inputNames.size(); i++) {
+            session.flipInput(i);
+            int flippedDifferentOutputs = differentOutputs;
+            for (int c = 0; c < session.getChangeCount(); c++) {
+                int signal = session.getChangedSignal(c);
+                if (!netlist.isOutputSignal(signal))
+                    continue;
+                if (patternsDiffer(session.getPreviousValue(c)))
+                    flippedDifferentOutputs--;
+                if (patternsDiffer(session.getValue(signal)))
+                    flippedDifferentOutputs++;
+            }
+            session.revert();
+
+            if (flippedDifferentOutputs != 0)
+                this.relatedInputs.put(currentASKey, inputNames.get(i));
         }
+    }
 
+    /**
+     * Flips every input bit and evaluates the circuit with both keys, the input is related to the AntiSAT key bit,
+     * if the outputs differ.
+     */
+    private void findRelatedInputsByEvaluation(Assignment input, Assignment key_A, Assignment key_B, String currentASKey) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Collection<Literal> K1 = new ArrayList<>();
+        Collection<Literal> K2 = new ArrayList<>();
+        for (Literal literal : key_A.literals())
+            K1.add(ff.literal(CircuitUtilities.removeSuffix(literal.variable()).name(), literal.phase()));
+        for (Literal literal : key_B.literals())
+            K2.add(ff.literal(CircuitUtilities.removeSuffix(literal.variable()).name(), literal.phase()));
+
+        Collection<Variable> outputs = this.lockedCircuit.getOutputVariables(ff);
         for (Literal l : input.literals()) {
-            Collection<Literal> flippedInput = input.literals();
+            Collection<Literal> flippedInput = new ArrayList<>(input.literals());
             flippedInput.remove(l);
             flippedInput.add(l.negate());
 
-            Assignment out_A = this.lockedCircuit.evaluate(flippedInput, K1, this.lockedCircuit.getOutputVariables(ff));
-            Assignment out_B = this.lockedCircuit.evaluate(flippedInput, K2, this.lockedCircuit.getOutputVariables(ff));
-
+            Assignment out_A = this.lockedCircuit.evaluate(flippedInput, K1, outputs);
+            Assignment out_B = this.lockedCircuit.evaluate(flippedInput, K2, outputs);
             if (!CircuitUtilities.compareAssignments(out_A, out_B, false))
                 this.relatedInputs.put(currentASKey, l.name());
         }
     }
 
+    /**
+     * Creates the condition Y_A != Y_B of miter, with the symmetry breaking K_A < K_B if configured.
+     */
+    private Formula createMiterCondition() {
+        Formula distinctOutputs = CircuitUtilities.createDifferentOutputs(this.lockedCircuit);
+        if (!this.symmetryBreaking)
+            return distinctOutputs;
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        return ff.and(distinctOutputs, CircuitUtilities.createLexicographicOrder(this.lockedCircuit, "_A", "_B", null));
+    }
+
+    /**
+     * Packs two vectors into words - the first vector into pattern 0 and the second one into pattern 1.
+     */
+    private long[] createWords(int[] first, int[] second) {
+        long[] words = new long[first.length];
+        for (int i = 0; i < words.length; i++)
+            words[i] = first[i] | ((long) second[i] << 1);
+        return words;
+    }
+
+    /**
+     * Returns true if pattern 0 and pattern 1 of the word have different values.
+     */
+    private boolean patternsDiffer(long word) {
+        return ((word ^ (word >>> 1)) & 1L) != 0;
+    }
+
+    /**
+     * Converts an assignment into a vector of ones and zeros. Suffixes '_A' and '_B' of variable
+     * names are ignored.
+     * @param assignment assignment of input or key variables
+     * @param names sorted names of variables defining the order of vector
+     * @return integer vector in the order of names
+     */
+    private int[] createVector(Assignment assignment, List<String> names) {
+        int[] vector = new int[names.size()];
+        for (Literal literal : assignment.literals()) {
+            int index = names.indexOf(CircuitUtilities.removeSuffix(literal).name());
+            if (index != -1)
+                vector[index] = literal.phase() ? 1 : 0;
+        }
+        return vector;
+    }
+
     /**
      * Counts the success rate of completed attack. Prints the information about estimated key values and
      * the result, whether the value is correct or not.
@@ -186,26 +351,36 @@ public class SigAttackWrapper {
     public void performSigAttackWithDetails() {
 
         FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
-        SatSolverWrapper satSolver = new SatSolverWrapper();
+        SatSolverWrapper satSolver = SatSolverFactory.createSolver(this.solverConfig);
+        satSolver.setBudget(this.solverConfig.startBudget());
 
         createFilters();
+        this.complete = true;
 
          // C(X, K_B, Y_B) && C(X, K_A, Y_A)
         Formula distinctCircuits = CircuitUtilities.distinctCircuitsWithSameInput(lockedCircuit);
-        Formula notEqualOutputs = CircuitUtilities.createDifferentOutputs(lockedCircuit);
+        Formula notEqualOutputs = createMiterCondition();
+
+        // selectors d_i <-> (k_i_A XOR k_i_B) are added only once
+        KeyRelationEncoder keyRelation = new KeyRelationEncoder(keyInputVariables_A, keyInputVariables_B,
+                KEY_DIFFERENCE_PREFIX);
+
+        // C(X, K_1, Y_1) && C(X, K_2, Y_2) && (Y_1 != Y_2)
+        satSolver.addFormula(ff.and(distinctCircuits, notEqualOutputs, keyRelation.encode()));
 
         /////     sigAttack Iterations     ////
 
         for (int k = 0; k < keyInputVariables_A.size(); k++) {
             String actualASKey = CircuitUtilities.removeSuffix(keyInputVariables_A.get(k)).name();
-            Formula hammingKeys = CircuitUtilities.differenceAtIndex(k, keyInputVariables_A, keyInputVariables_B);
 
-            // C(X, K_1, Y_1) && C(X, K_2, Y_2) && (Y_1 != Y_2) && (W_H(K_1, K_2) = 1)
-            Formula F = ff.and(distinctCircuits, notEqualOutputs, hammingKeys);
-            satSolver.reset();
-            satSolver.addFormula(F);
-
-            if (satSolver.solve() != Tristate.TRUE)
+            // (W_H(K_1, K_2) = 1) at bit k is given by assumptions d_k & !d_j for every other j
+            Tristate result = satSolver.solve(keyRelation.differenceAt(k));
+            if (result == Tristate.UNDEF) {
+                Protocol.printWarningMessage("Solving budget exhausted at key bit " + (k + 1) + ".");
+                this.complete = false;
+                break;
+            }
+            if (result != Tristate.TRUE)
                 throw new IllegalStateException("Formula is not satisfiable.");
 
             Assignment output_A = satSolver.getModel(outputVariables_A);
@@ -223,8 +398,9 @@ public class SigAttackWrapper {
             System.out.println("K2: " + key_B);
             System.out.println("Y1: " + output_A);
             System.out.println("Y2: " + output_B);
-            System.out.println("Y*: " + lockedCircuit.getEvaluationCircuit().evaluate(input.literals(),
-                    null, lockedCircuit.getEvaluationCircuit().getOutputVariables(ff)));
+            LogicCircuit evaluationCircuit = lockedCircuit.getEvaluationCircuit();
+            System.out.println("Y*: " + evaluationCircuit.evaluate(input.literals(),
+                    evaluationCircuit.getKeyLiterals(ff, null), evaluationCircuit.getOutputVariables(ff)));
 
             boolean unflippedA = lockedCircuit.evaluateAndCheck(input.literals(), output_A, false);
             boolean unflippedB = lockedCircuit.evaluateAndCheck(input.literals(), output_B, false);
@@ -3,6 +3,9 @@ package main.attacker.sps;
 import main.helpers.FormulaFactoryWrapper;
 import main.circuit.LogicCircuit;
 import main.circuit.components.Gate;
+import main.circuit.components.Netlist;
+import main.circuit.simulation.BatchResult;
+import main.circuit.simulation.BitMatrix;
 import main.helpers.utilities.ProgressBar;
 import main.helpers.utilities.Protocol;
 import main.helpers.utilities.Randomizer;
@@ -18,6 +21,8 @@ import java.util.*;
 
 public class SpsAttackWrapper {
 
+    private static final int BATCH_SIZE = 4096;
+
     private final SPSConfig SPSConfiguration;
     private LogicCircuit lockedCircuit;
     private boolean circuitLockedWithSAS = false;
@@ -107,15 +112,18 @@ public class SpsAttackWrapper {
         BigDecimal bigRounds = new BigDecimal(this.SPSConfiguration.rounds);
         Map<Gate, BigDecimal> absoluteDifferences = new HashMap<>();
 
-        for (Gate gate : this.lockedCircuit.getGates()) {
+        // inputs are looked up by name, gates of stats are not created again from the netlist
+        Map<String, BigDecimal> skews = new HashMap<>();
+        for (Map.Entry<Gate, BigDecimal> entry : stats.entrySet())
+            skews.put(entry.getKey().getOutput(), entry.getValue());
+
+        for (Gate gate : stats.keySet()) {
             List<String> inputs = gate.getInputs();
             if (inputs.size() != 2)
                 continue;
 
-            Gate firstInput = this.lockedCircuit.getSingleGate(inputs.get(0));
-            Gate secondInput = this.lockedCircuit.getSingleGate(inputs.get(1));
-            BigDecimal firstSPS = (firstInput == null) ? averageADS : stats.get(firstInput);
-            BigDecimal secondSPS = (secondInput == null) ? averageADS : stats.get(secondInput);
+            BigDecimal firstSPS = skews.getOrDefault(inputs.get(0), averageADS);
+            BigDecimal secondSPS = skews.getOrDefault(inputs.get(1), averageADS);
 
             absoluteDifferences.put(gate, firstSPS.subtract(secondSPS).abs().
                     divide(bigRounds, 5, RoundingMode.CEILING));
@@ -125,88 +133,139 @@ public class SpsAttackWrapper {
 
     /**
      * Computes Signal Probability Skew of every gate in circuit. Probability skew is a
-     * decimal representation of gate's usability in running attack.
+     * decimal representation of gate's usability in running attack. Rounds are evaluated
+     * in batches of BATCH_SIZE random vectors.
      * @return map of Gate objects and theirs SPS values
      */
     private Map<Gate, BigDecimal> computeSkews() {
 
         FormulaFactory f = FormulaFactoryWrapper.getFormulaFactory();
         Collection<Variable> outputFilter = new ArrayList<>();
-        Map<Gate, BigDecimal> stats = new HashMap<>();
+        // gates of netlist are created once for the keys of stats, rounds read the rows by signal ids
+        List<Gate> gates = this.lockedCircuit.getGates();
+        long[] positiveCounts = new long[gates.size()];
 
-        for (Gate gate : this.lockedCircuit.getGates()) {
+        for (Gate gate : gates)
             outputFilter.add(f.variable(gate.getOutput()));
-            stats.put(gate, BigDecimal.ZERO);
+
+        Map<String, Integer> gateIndex = null;
+        int[] gateSignals = null;
+        if (this.lockedCircuit.getSimulator() == null) {
+            gateIndex = new HashMap<>();
+            for (int g = 0; g < gates.size(); g++)
+                gateIndex.put(gates.get(g).getOutput(), g);
+        } else {
+            Netlist netlist = this.lockedCircuit.getNetlist();
+            gateSignals = new int[gates.size()];
+            for (int g = 0; g < gates.size(); g++)
+                gateSignals[g] = netlist.getGateSignal(netlist.getGateAt(g));
         }
 
         ProgressBar bar = new ProgressBar(this.SPSConfiguration.rounds, "SPS Attack", true);
 
-        for (int round = 0; round < this.SPSConfiguration.rounds; round++) {
+        for (int round = 0; round < this.SPSConfiguration.rounds; round += BATCH_SIZE) {
 
-            Collection<Literal> testInputs = createInputSetForAttack();
-            Collection<Literal> testKeys = createKeySetForAttack();
+            int vectors = Math.min(BATCH_SIZE, this.SPSConfiguration.rounds - round);
+            BitMatrix testInputs = createInputSetForAttack(vectors);
+            BitMatrix testKeys = createKeySetForAttack(vectors);
+
+            // circuits without simulator (e.g. cyclic ones) are evaluated vector by vector
+            if (gateIndex != null) {
+                countPositivesByEvaluation(testInputs, testKeys, outputFilter, gateIndex, positiveCounts);
+                bar.updateBar(round + vectors - 1);
+                continue;
+            }
 
             if (this.circuitLockedWithSAS)
-                testInputs = this.lockedCircuit.changeInputBySAS(testInputs, testKeys);
+                this.lockedCircuit.changeInputBySAS(testInputs, testKeys);
 
-            Assignment output = this.lockedCircuit.evaluate(testInputs, testKeys, outputFilter);
+            BatchResult output = this.lockedCircuit.evaluateBatch(testInputs, testKeys);
 
-            for (Variable v : output.positiveVariables()) {
-                Gate g = this.lockedCircuit.getSingleGate(v.name());
-                if (stats.containsKey(g))
-                    stats.put(g, stats.get(g).add(BigDecimal.ONE));
+            BitMatrix values = output.getValues();
+            for (int g = 0; g < gates.size(); g++) {
+                for (long word : values.getRow(gateSignals[g]))
+                    positiveCounts[g] += Long.bitCount(word);
             }
 
-            if (this.SPSConfiguration.debugMode)
-                System.out.println(output);
+            if (this.SPSConfiguration.debugMode) {
+                for (int v = 0; v < vectors; v++)
+                    System.out.println(output.getAssignment(v, outputFilter));
+            }
 
-            bar.updateBar(round);
+            bar.updateBar(round + vectors - 1);
         }
 
+        Map<Gate, BigDecimal> stats = new HashMap<>();
+        for (int g = 0; g < gates.size(); g++)
+            stats.put(gates.get(g), BigDecimal.valueOf(positiveCounts[g]));
+
         return stats;
     }
 
     /**
-     * Creates a collection of random input bits. Size of collection is depending on the number
-     * of inputs in logic circuit.
-     * @return collection of random input literals.
+     * Evaluates every vector of batch separately and counts the positive values of gates.
+     * @param gateIndex positions of gates in positiveCounts by their output names
      */
-    private Collection<Literal> createInputSetForAttack() {
+    private void countPositivesByEvaluation(BitMatrix testInputs, BitMatrix testKeys, Collection<Variable> outputFilter,
+                                            Map<String, Integer> gateIndex, long[] positiveCounts) {
 
         FormulaFactory f = FormulaFactoryWrapper.getFormulaFactory();
-        SecureRandom sr = Randomizer.getSecureRandom();
+        for (int v = 0; v < testInputs.getColumnCount(); v++) {
+            Collection<Literal> inputs = this.lockedCircuit.getInputLiterals(f, testInputs.getColumn(v));
+            Collection<Literal> keys = this.lockedCircuit.getKeyLiterals(f, testKeys.getColumn(v));
+
+            if (this.circuitLockedWithSAS)
+                inputs = this.lockedCircuit.changeInputBySAS(inputs, keys);
+
+            Assignment output = this.lockedCircuit.evaluate(inputs, keys, outputFilter);
+            for (Variable variable : output.positiveVariables()) {
+                Integer g = gateIndex.get(variable.name());
+                if (g != null)
+                    positiveCounts[g]++;
+            }
 
-        int[] rndInputs = new int[this.lockedCircuit.getInputNames().size()];
-        for (int i = 0; i < this.lockedCircuit.getInputNames().size(); i++)
-            rndInputs[i] = sr.nextInt(2);
+            if (this.SPSConfiguration.debugMode)
+                System.out.println(output);
+        }
+    }
+
+    /**
+     * Creates a batch of random input vectors. Number of rows is depending on the number
+     * of inputs in logic circuit.
+     * @param vectors number of vectors in batch
+     * @return packed random input vectors
+     */
+    private BitMatrix createInputSetForAttack(int vectors) {
+
+        SecureRandom sr = Randomizer.getSecureRandom();
 
-        return this.lockedCircuit.getInputLiterals(f, rndInputs);
+        return BitMatrix.random(this.lockedCircuit.getInputNames().size(), vectors, sr);
     }
 
     /**
-     * Creates a collection of key bits. Size of collection is depending on the number
+     * Creates a batch of keys. Number of rows is depending on the number
      * of keys in logic circuit and locking schema.
-     * @return collection of either random key literals or correct key. This depends on
+     * @param vectors number of vectors in batch
+     * @return packed keys, either random keys or correct key for every vector. This depends on
      * the value of keySet property.
      */
-    private Collection<Literal> createKeySetForAttack() {
+    private BitMatrix createKeySetForAttack(int vectors) {
 
-        FormulaFactory f = FormulaFactoryWrapper.getFormulaFactory();
         SecureRandom sr = Randomizer.getSecureRandom();
-
-        int[] combinedKey = this.lockedCircuit.getCombinedKey();
-        int[] rndKeys = new int[this.lockedCircuit.getKeyInputNames().size()];
-        for (int i = 0; i < this.lockedCircuit.getKeyInputNames().size(); i++)
-            rndKeys[i] = sr.nextInt(2);
-
-        // testing with real key inputs .. expecting 0 - 100 relation between the inputs to final AND gate
-        Collection<Literal> realKeys = new ArrayList<>(this.lockedCircuit.getKeyLiterals(f, combinedKey));
+        int keyCount = this.lockedCircuit.getKeyInputNames().size();
 
         // testing with random key inputs .. expecting something close to 0 - 100 relation
         // between the inputs to final AND gate (that is XORed with circuit output)
-        Collection<Literal> randomKeys = new ArrayList<>(this.lockedCircuit.getKeyLiterals(f, rndKeys));
+        if (this.SPSConfiguration.keySet == KeySetType.RANDOM)
+            return BitMatrix.random(keyCount, vectors, sr);
+
+        // testing with real key inputs .. expecting 0 - 100 relation between the inputs to final AND gate
+        int[] combinedKey = this.lockedCircuit.getCombinedKey();
+        BitMatrix realKeys = new BitMatrix(keyCount, vectors);
+        for (int k = 0; k < keyCount; k++)
+            realKeys.fillRow(k, combinedKey[k] == 1);
 
-        return (this.SPSConfiguration.keySet == KeySetType.RANDOM) ? randomKeys : realKeys;
+        return realKeys;
     }
 
     /**
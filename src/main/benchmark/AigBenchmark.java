@@ -0,0 +1,46 @@
+package main.benchmark;
+
+import main.attacker.sat.SATConfig;
+import main.circuit.LogicCircuit;
+import main.circuit.aig.Aig;
+import main.circuit.aig.AigBalancer;
+import main.helpers.utilities.Protocol;
+
+/**
+ * Compares the locked circuits with their balanced And-Inverter Graphs - the count of gates / AND nodes,
+ * the depth, the size of CNF seen by attacks and the incremental SAT attack on both representations.
+ * Usage: AigBenchmark [locked .bench files or directories]
+ */
+public class AigBenchmark {
+
+    public static void main(String[] args) {
+        new SatAttackRunner("AIG benchmark")
+                .setDetails(String.format("%6s %6s %6s | %6s %6s %6s %6s", "gates", "depth", "vars",
+                        "ands", "depth", "balan.", "vars"), AigBenchmark::describe)
+                .compare("original", SATConfig.createSATConfig().setIncremental(true))
+                .compare("AIG", SATConfig.createSATConfig().setIncremental(true), AigBenchmark::toBalancedAig)
+                .run(args, "Depth of AIG before / after balancing, vars = variables of circuit CNF.");
+    }
+
+    /**
+     * Formats the size of circuit and of its balanced AIG, null if the circuit cannot be levelized.
+     */
+    private static String describe(LogicCircuit circuit) {
+        if (circuit.getNetlist() == null) {
+            Protocol.printWarningMessage("Circuit " + circuit.getName() + " cannot be levelized, skipping.");
+            return null;
+        }
+
+        Aig aig = Aig.fromCircuit(circuit);
+        Aig balanced = AigBalancer.balance(aig);
+        return String.format("%6d %6d %6d | %6d %6d %6d %6d", circuit.getNetlist().getGateCount(), circuit.getNetlist().getDepth(),
+                circuit.getCNF().variables().size(), balanced.getAndCount(), aig.getDepth(), balanced.getDepth(),
+                balanced.toLogicCircuit(circuit.getName()).getCNF().variables().size());
+    }
+
+    private static LogicCircuit toBalancedAig(LogicCircuit circuit) {
+        LogicCircuit converted = AigBalancer.balance(Aig.fromCircuit(circuit)).toLogicCircuit(circuit.getName());
+        converted.setCorrectKey(circuit.getCorrectKey());
+        return converted;
+    }
+}
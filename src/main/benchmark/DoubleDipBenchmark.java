@@ -0,0 +1,19 @@
+package main.benchmark;
+
+import main.attacker.sat.SATConfig;
+
+/**
+ * Compares the classic SAT attack (solver rebuilt in every round), the incremental SAT attack and
+ * the incremental Double-DIP attack on the same locked circuits. Reports the number of rounds and the wall time.
+ * Usage: DoubleDipBenchmark [locked .bench files or directories]
+ */
+public class DoubleDipBenchmark {
+
+    public static void main(String[] args) {
+        new SatAttackRunner("Double-DIP benchmark")
+                .compare("classic", SATConfig.createSATConfig())
+                .compare("incremental", SATConfig.createSATConfig().setIncremental(true))
+                .compare("Double-DIP", SATConfig.createSATConfig().setIncremental(true).setDoubleDIP(true))
+                .run(args);
+    }
+}
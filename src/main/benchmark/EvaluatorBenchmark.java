@@ -0,0 +1,128 @@
+package main.benchmark;
+
+import main.circuit.AbstractLogicCircuit;
+import main.circuit.LogicCircuit;
+import main.circuit.simulation.BitMatrix;
+import main.circuit.simulation.CircuitSimulator;
+import main.helpers.utilities.Protocol;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Compares the interpreted simulator with the evaluator compiled at runtime on the ISCAS-85 circuits.
+ * Batch evaluation (gate by gate over packed rows) is measured as a reference. The benchmark only measures
+ * the evaluators, their outputs are compared by CircuitCompilerTest.
+ * Usage: EvaluatorBenchmark [directory with .bench files] [number of vectors]
+ */
+public class EvaluatorBenchmark {
+
+    private static final String ROOT = System.getProperty("user.dir") + File.separator;
+    private static final String CIRCUITS = ROOT + "circuits" + File.separator;
+    private static final String[] ISCAS85 = {
+            "c17", "c432", "c499", "c880", "c1355", "c1908", "c2670", "c3540", "c5315", "c6288", "c7552"
+    };
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    // outputs of measured simulations are folded in and printed, so the JIT cannot drop the simulation
+    private static long checksum = 0;
+
+    public static void main(String[] args) {
+        String directory = args.length > 0 ? args[0] + File.separator : CIRCUITS;
+        int vectors = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 16;
+
+        Protocol.printSection("Evaluator benchmark");
+        System.out.printf("%-8s %7s %10s %14s %14s %14s%n", "circuit", "gates", "javac [ms]",
+                "word interp.", "word compiled", "batch");
+
+        for (String name : ISCAS85) {
+            File benchFile = new File(directory + name + ".bench");
+            if (!benchFile.exists()) {
+                Protocol.printWarningMessage("Missing " + benchFile.getPath() + ", skipping.");
+                continue;
+            }
+
+            LogicCircuit circuit = AbstractLogicCircuit.getCircuitInstance(benchFile);
+            if (circuit == null || circuit.getSimulator() == null) {
+                Protocol.printWarningMessage("Circuit " + name + " cannot be simulated, skipping.");
+                continue;
+            }
+
+            benchmarkCircuit(name, circuit, vectors);
+        }
+        Protocol.printSection("");
+        System.out.println("Throughput in millions of vectors per second.");
+        System.out.printf("Checksum of simulated outputs: %016x%n", checksum);
+    }
+
+    /**
+     * Measures both evaluators on the same random vectors.
+     */
+    private static void benchmarkCircuit(String name, LogicCircuit circuit, int vectors) {
+        Random random = new Random(vectors);
+        BitMatrix inputs = BitMatrix.random(circuit.getInputNames().size(), vectors, random);
+        int[] key = new int[circuit.getKeyInputNames().size()];
+
+        circuit.setCompiledEvaluation(false);
+        double wordInterpreted = measureWords(circuit.getSimulator(), inputs);
+        double batch = measureBatch(circuit, inputs, key);
+
+        long compileStart = System.nanoTime();
+        circuit.setCompiledEvaluation(true);
+        double compileTime = (System.nanoTime() - compileStart) / 1e6;
+
+        if (!circuit.getSimulator().isCompiled()) {
+            System.out.printf("%-8s %7d %10s %14.2f %14s %14.2f%n", name, circuit.getSimulator().getNetlist()
+                    .getGateCount(), "-", wordInterpreted, "-", batch);
+            return;
+        }
+
+        double wordCompiled = measureWords(circuit.getSimulator(), inputs);
+
+        System.out.printf("%-8s %7d %10.1f %14.2f %14.2f %14.2f%n", name,
+                circuit.getSimulator().getNetlist().getGateCount(), compileTime,
+                wordInterpreted, wordCompiled, batch);
+    }
+
+    /**
+     * Evaluates the vectors 64 at a time through CircuitSimulator.simulate().
+     * @return throughput in millions of vectors per second
+     */
+    private static double measureWords(CircuitSimulator simulator, BitMatrix inputs) {
+        long[] inputWords = new long[inputs.getRowCount()];
+        long[] keyWords = new long[simulator.getNetlist().getKeyCount()];
+        long best = Long.MAX_VALUE;
+
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            for (int w = 0; w < inputs.getWordCount(); w++) {
+                for (int i = 0; i < inputWords.length; i++)
+                    inputWords[i] = inputs.getRow(i)[w];
+                long[] values = simulator.simulate(inputWords, keyWords);
+                checksum += values[values.length - 1];
+            }
+            if (run >= WARMUP_RUNS)
+                best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return inputs.getColumnCount() / (best / 1e3);
+    }
+
+    /**
+     * Evaluates all vectors by a single call of evaluateBatch().
+     * @return throughput in millions of vectors per second
+     */
+    private static double measureBatch(LogicCircuit circuit, BitMatrix inputs, int[] key) {
+        long best = Long.MAX_VALUE;
+
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            circuit.evaluateBatch(inputs, key);
+            if (run >= WARMUP_RUNS)
+                best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return inputs.getColumnCount() / (best / 1e3);
+    }
+}
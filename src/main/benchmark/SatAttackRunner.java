@@ -0,0 +1,163 @@
+package main.benchmark;
+
+import main.attacker.sat.SATConfig;
+import main.attacker.sat.SatAttackWrapper;
+import main.circuit.AbstractLogicCircuit;
+import main.circuit.LogicCircuit;
+import main.helpers.utilities.Protocol;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Shared skeleton of benchmarks comparing configurations of SAT attack - collecting of locked circuits and
+ * running every compared configuration with suppressed messages on its own instance of circuit. Benchmarks
+ * only measure the attacks, estimated keys of the same configurations are checked by SatAttackWrapperTest.
+ */
+class SatAttackRunner {
+
+    private static final String ROOT = System.getProperty("user.dir") + File.separator;
+    private static final String LOCKED = ROOT + "locked" + File.separator;
+
+    private final String title;
+    private final List<String> names;
+    private final List<SATConfig> configs;
+    private final List<UnaryOperator<LogicCircuit>> transforms;
+    private String detailsHeader;
+    private Function<LogicCircuit, String> details;
+
+    SatAttackRunner(String title) {
+        this.title = title;
+        this.names = new ArrayList<>();
+        this.configs = new ArrayList<>();
+        this.transforms = new ArrayList<>();
+        this.detailsHeader = null;
+        this.details = null;
+    }
+
+    /**
+     * Adds the compared configuration of attack, which attacks the locked circuit as it is.
+     */
+    SatAttackRunner compare(String name, SATConfig config) {
+        return compare(name, config, UnaryOperator.identity());
+    }
+
+    /**
+     * Adds the compared configuration of attack.
+     * @param transform converts the new instance of locked circuit into the attacked circuit
+     */
+    SatAttackRunner compare(String name, SATConfig config, UnaryOperator<LogicCircuit> transform) {
+        this.names.add(name);
+        this.configs.add(config);
+        this.transforms.add(transform);
+        return this;
+    }
+
+    /**
+     * Adds columns describing the circuit before the results of attacks.
+     * @param header formatted header of columns
+     * @param details formats the columns of circuit, null if the circuit should be skipped
+     */
+    SatAttackRunner setDetails(String header, Function<LogicCircuit, String> details) {
+        this.detailsHeader = header;
+        this.details = details;
+        return this;
+    }
+
+    /**
+     * Runs every configuration on every locked circuit of arguments (locked directory by default) and prints
+     * a row of results per circuit.
+     * @param legend additional lines printed below the results
+     */
+    void run(String[] args, String... legend) {
+        List<File> benchFiles = new ArrayList<>();
+        for (String arg : args.length > 0 ? args : new String[]{ LOCKED })
+            collectBenchFiles(new File(arg), benchFiles);
+
+        Protocol.printSection(this.title);
+        StringBuilder header = new StringBuilder(String.format("%-12s %5s", "circuit", "keys"));
+        if (this.details != null)
+            header.append(" | ").append(this.detailsHeader);
+        for (String name : this.names)
+            header.append(String.format(" | %14s", name));
+        System.out.println(header);
+
+        for (File benchFile : benchFiles) {
+            LogicCircuit circuit = AbstractLogicCircuit.getCircuitInstance(benchFile);
+            if (circuit == null || circuit.getCorrectKey().length == 0) {
+                Protocol.printWarningMessage("Circuit " + benchFile.getName() + " is not locked, skipping.");
+                continue;
+            }
+
+            StringBuilder row = new StringBuilder(String.format("%-12s %5d", benchFile.getName().replace(".bench", ""),
+                    circuit.getKeyInputNames().size()));
+            if (this.details != null) {
+                String columns = this.details.apply(circuit);
+                if (columns == null)
+                    continue;
+                row.append(" | ").append(columns);
+            }
+
+            // every attack gets its own instance, attack modifies the circuit and clears the formula factory
+            for (int i = 0; i < this.configs.size(); i++) {
+                LogicCircuit attacked = this.transforms.get(i).apply(AbstractLogicCircuit.getCircuitInstance(benchFile));
+                row.append(String.format(" | %14s", runAttack(attacked, this.configs.get(i))));
+            }
+            System.out.println(row);
+        }
+
+        Protocol.printSection("");
+        System.out.println("Rounds / wall time in seconds, '~' marks an approximate or partial key.");
+        for (String line : legend)
+            System.out.println(line);
+    }
+
+    /**
+     * Adds the file or every .bench file of directory (sorted by name) into the list.
+     */
+    static void collectBenchFiles(File file, List<File> benchFiles) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles((dir, name) -> name.endsWith(".bench"));
+            if (files != null) {
+                Arrays.sort(files);
+                benchFiles.addAll(Arrays.asList(files));
+            }
+        } else if (file.isFile()) {
+            benchFiles.add(file);
+        } else {
+            Protocol.printWarningMessage("Missing " + file.getPath() + ", skipping.");
+        }
+    }
+
+    /**
+     * Performs the attack with messages of attack suppressed.
+     * @return rounds and wall time of the attack marked by '~' if the key is approximate or partial,
+     * "-" if the attack failed
+     */
+    private static String runAttack(LogicCircuit circuit, SATConfig config) {
+        SatAttackWrapper attacker = new SatAttackWrapper(circuit, config);
+        PrintStream out = System.out;
+        long start = System.nanoTime();
+        try {
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+            attacker.performSATAttack(false);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            System.setOut(out);
+            Protocol.printErrorMessage("Attack on " + circuit.getName() + " failed: " + e.getMessage());
+            return "-";
+        } finally {
+            System.setOut(out);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        return String.format("%4d / %7.2f%s", attacker.getIterationCount(), seconds, attacker.isComplete() ? " " : "~");
+    }
+}
@@ -0,0 +1,20 @@
+package main.benchmark;
+
+import main.attacker.sat.SATConfig;
+
+/**
+ * Compares the classic and the incremental SAT attack with and without the symmetry breaking K_A < K_B
+ * on the same locked circuits. Reports the number of rounds and the wall time.
+ * Usage: SymmetryBreakingBenchmark [locked .bench files or directories]
+ */
+public class SymmetryBreakingBenchmark {
+
+    public static void main(String[] args) {
+        new SatAttackRunner("Symmetry breaking benchmark")
+                .compare("classic", SATConfig.createSATConfig())
+                .compare("classic+sym", SATConfig.createSATConfig().setSymmetryBreaking(true))
+                .compare("incremental", SATConfig.createSATConfig().setIncremental(true))
+                .compare("incr.+sym", SATConfig.createSATConfig().setIncremental(true).setSymmetryBreaking(true))
+                .run(args);
+    }
+}
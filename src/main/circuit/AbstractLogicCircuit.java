@@ -1,9 +1,17 @@
 package main.circuit;
 
 import main.helpers.FormulaFactoryWrapper;
-import main.attacker.sat.SatSolverWrapper;
+import main.attacker.sat.SatEvaluationSession;
 import main.circuit.components.Gate;
 import main.circuit.components.GateType;
+import main.circuit.components.Netlist;
+import main.circuit.components.NetlistPreprocessor;
+import main.circuit.simulation.BatchResult;
+import main.circuit.simulation.BitMatrix;
+import main.circuit.simulation.CircuitCompiler;
+import main.circuit.simulation.CircuitSimulator;
+import main.circuit.simulation.OracleCache;
+import main.circuit.simulation.SimulationSession;
 import main.circuit.utilities.custom_comparators.CustomKeyComparator;
 import main.helpers.utilities.Protocol;
 import org.logicng.datastructures.Assignment;
@@ -14,6 +22,9 @@ import org.logicng.formulas.Literal;
 import org.logicng.formulas.Variable;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 /**
@@ -25,8 +36,18 @@ public abstract class AbstractLogicCircuit {
     private final Set<String> inputNames;
     private final Set<String> keyInputNames;
     private final Set<String> outputNames;
+    // gate list is kept only until the netlist is built or if the circuit cannot be levelized
     private List<Gate> gates;
     private Formula CNF;
+    private Netlist netlist;
+    private NetlistPreprocessor preprocessor;
+    private CircuitSimulator simulator;
+    private boolean compiledEvaluation;
+    private boolean preprocessing;
+    private final ThreadLocal<SatEvaluationSession> evaluationSession;
+    private OracleCache oracleCache;
+    private int oracleCacheCapacity;
+    private File oracleStoreDirectory;
 
     public AbstractLogicCircuit() {
         this.inputNames = new HashSet<>();
@@ -34,6 +55,13 @@ public abstract class AbstractLogicCircuit {
         this.outputNames = new HashSet<>();
         this.gates = new ArrayList<>();
         this.name = "";
+        this.compiledEvaluation = false;
+        this.preprocessing = false;
+        this.preprocessor = null;
+        this.evaluationSession = new ThreadLocal<>();
+        this.oracleCache = null;
+        this.oracleCacheCapacity = 0;
+        this.oracleStoreDirectory = null;
     }
 
     /**
@@ -49,6 +77,7 @@ public abstract class AbstractLogicCircuit {
         BufferedReader br;
         String line;
         int[] keyValues;
+        List<Gate> gates = new ArrayList<>();
 
         try {
             br = new BufferedReader(new FileReader(benchFile));
@@ -115,8 +144,7 @@ public abstract class AbstractLogicCircuit {
                     for (int i = 0; i < gateInputs.length; i++) {
                         gateInputs[i] = gateInputsHelper[i].trim();
                     }
-                    Gate gate = new Gate(gateType, gateOutput, gateInputs);
-                    ls.getGates().add(gate);
+                    gates.add(new Gate(gateType, gateOutput, gateInputs));
                 }
             }
             br.close();
@@ -128,18 +156,67 @@ public abstract class AbstractLogicCircuit {
             return null;
         }
 
-        ls.createCNF();
+        ls.setGates(gates);
 
         return ls;
     }
 
+    /**
+     * Creates a circuit instance from its components (e.g. a circuit converted from another representation)
+     * and computes its CNF form. The correct key is not known, it can be set by setCorrectKey().
+     * @param name name of circuit
+     * @param inputNames names of regular inputs
+     * @param keyNames names of key inputs
+     * @param outputNames names of outputs
+     * @param gates gates of circuit
+     * @return an instance of LogicCircuit
+     */
+    public static LogicCircuit getCircuitInstance(String name, Collection<String> inputNames, Collection<String> keyNames,
+                                                  Collection<String> outputNames, List<Gate> gates) {
+        LogicCircuit ls = new LogicCircuit();
+        ls.setName(name);
+        ls.getInputNames().addAll(inputNames);
+        ls.getKeyInputNames().addAll(keyNames);
+        ls.getOutputNames().addAll(outputNames);
+        ls.setGates(gates);
+
+        return ls;
+    }
+
+    /**
+     * Replaces the structure of circuit by the gate list, builds its netlist and computes the CNF form.
+     * @param gates gates of circuit
+     */
+    protected void setGates(List<Gate> gates) {
+        this.gates = new ArrayList<>(gates);
+        createCNF();
+    }
+
     /**
      * Creates a formula in Conjunctive Normal Form and saves it as a property of logic circuit.
+     * Gates are encoded with all their inputs, so the gate list (and the netlist built from it) stays
+     * the same as in the bench file. If the preprocessing is enabled, combinational circuits are encoded
+     * from the netlist simplified by NetlistPreprocessor, the gate list, netlist and simulator stay original.
      */
     protected void createCNF() {
-        simplifyAllGates();
+        if (this.gates != null)
+            buildNetlist();
+        this.preprocessor = null;
+        if (this.preprocessing && this.netlist != null) {
+            try {
+                this.preprocessor = new NetlistPreprocessor(this.netlist);
+                this.CNF = this.preprocessor.createCNF();
+                Protocol.printInfoMessage("Preprocessing of circuit " + this.name + ": " + this.netlist.getGateCount() +
+                        " gates -> " + this.preprocessor.getGateCount() + " gates.");
+                return;
+            } catch (IllegalStateException e) {
+                Protocol.printWarningMessage(e.getMessage() + ", circuit is encoded without preprocessing.");
+                this.preprocessor = null;
+            }
+        }
+
         List<Formula> CNFClauses = new ArrayList<>();
-        for (Gate g : this.gates) {
+        for (Gate g : getGates()) {
             try {
                 CNFClauses.add(g.toFormula());
             } catch (Exception e) {
@@ -148,41 +225,67 @@ public abstract class AbstractLogicCircuit {
                 return;
             }
         }
-        this.CNF = FormulaFactoryWrapper.getFormulaFactory().and(CNFClauses);
+
+        // inputs and keys declared in bench file, but driving no gate, would be missing from models of solver
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        List<String> primaries = new ArrayList<>(getSortedInputNames());
+        primaries.addAll(getSortedKeyInputNames());
+        boolean[] driving = new boolean[primaries.size()];
+        if (this.netlist != null) {
+            // inputs and keys take the first ids of netlist in the same order
+            for (int s = 0; s < driving.length; s++)
+                driving[s] = this.netlist.getFanOutEnd(s) > this.netlist.getFanOutStart(s);
+        } else {
+            Set<String> drivingSignals = new HashSet<>();
+            for (Gate g : this.gates)
+                drivingSignals.addAll(g.getInputs());
+            for (int s = 0; s < driving.length; s++)
+                driving[s] = drivingSignals.contains(primaries.get(s));
+        }
+        for (int s = 0; s < driving.length; s++) {
+            if (!driving[s])
+                Gate.encodeUnused(ff, CNFClauses, primaries.get(s));
+        }
+        this.CNF = ff.and(CNFClauses);
     }
 
     /**
-     * Decomposes every gate with more than 2 inputs. The gate's functionality have to remain.
+     * Builds the integer-indexed netlist and the simulator of the current gate list. If the netlist
+     * is built, it becomes the only storage of circuit structure and the gate list is released.
      */
-    private void simplifyAllGates() {
-        List<Gate> decomposedGates = new ArrayList<>();
-        for (Gate g : this.gates) {
-            try {
-                decomposedGates.addAll(g.simplifyGate());
-            } catch (Exception e) {
-                Protocol.printErrorMessage("Unable to simplify gate: " + e.getMessage());
-                Protocol.printErrorMessage("Gate: " + g.toString() + " seems malformed.");
-                return;
-            }
-        }
-        this.gates = decomposedGates;
+    private void buildNetlist() {
+        this.netlist = Netlist.build(getSortedInputNames(), getSortedKeyInputNames(), this.outputNames, this.gates);
+        if (this.netlist != null)
+            this.gates = null;
+        this.simulator = (this.netlist == null) ? null : new CircuitSimulator(this.netlist);
+        if (this.compiledEvaluation && this.simulator != null)
+            this.simulator.setKernel(CircuitCompiler.compile(this.netlist, getStructureFingerprint()));
+        // responses of the previous structure are not valid anymore
+        if (this.oracleCacheCapacity > 0)
+            createOracleCache();
     }
 
     /**
      * Produces an assignment (boolean value) of either each variable (input, key, output) or just output variable.
+     * Combinational circuits are evaluated by the bit-parallel simulator, circuits which cannot be levelized
+     * by SAT solver session of current thread. Both give the same result only for a complete key, so key literals
+     * are required whenever the circuit has key inputs (getKeyLiterals(ff, null) gives the zero key).
      * Throws an exception if the CNF form of circuit is unsatisfiable (assignment does not exist).
+     * If the oracle cache is enabled, responses restricted to output variables are memoized.
      * @param inputLiterals input variables with defined boolean values
-     * @param keyLiterals key variables with defined boolean values
+     * @param keyLiterals key variables with defined boolean values, null only for circuit without key inputs
      * @param outputVariables filter of output variables. If null, method returns an assignment of each variable.
      * @return an assignment (boolean value) of either each variable (input, key, output) or just output variable
      * (depending on presence of outputVariables argument)
      */
     public Assignment evaluate(Collection<Literal> inputLiterals, Collection<Literal> keyLiterals, Collection<Variable> outputVariables)
             throws IllegalArgumentException, IllegalStateException {
-        if (keyLiterals != null) {
-            if (this.keyInputNames.size() != keyLiterals.size()) {
-                throw new IllegalArgumentException("Invalid amount of key inputs defined to evaluate.");
+        if (keyLiterals == null) {
+            if (!this.keyInputNames.isEmpty()) {
+                throw new IllegalArgumentException("Key inputs are not defined to evaluate.");
             }
+        } else if (this.keyInputNames.size() != keyLiterals.size()) {
+            throw new IllegalArgumentException("Invalid amount of key inputs defined to evaluate.");
         }
 
         if (this.inputNames.size() != inputLiterals.size()) {
@@ -190,8 +293,25 @@ public abstract class AbstractLogicCircuit {
                     this.inputNames.size() + " vs. " + inputLiterals.size() + " (parameter of method).");
         }
 
-        SatSolverWrapper solver = new SatSolverWrapper();
-        solver.addFormula(this.CNF);
+        OracleCache cache = this.oracleCache;
+        if (cache != null && cache.coversOutputs(outputVariables)) {
+            long[] vector = cache.packVector(inputLiterals, keyLiterals);
+            Assignment response = cache.get(vector, outputVariables);
+            if (response == null) {
+                Collection<Variable> allOutputs = cache.getOutputVariables();
+                Assignment outputs = evaluateUncached(inputLiterals, keyLiterals, allOutputs);
+                response = cache.put(vector, outputs, outputVariables);
+            }
+            return response;
+        }
+
+        return evaluateUncached(inputLiterals, keyLiterals, outputVariables);
+    }
+
+    private Assignment evaluateUncached(Collection<Literal> inputLiterals, Collection<Literal> keyLiterals,
+                                        Collection<Variable> outputVariables) throws IllegalStateException {
+        if (this.simulator != null)
+            return this.simulator.evaluate(inputLiterals, keyLiterals, outputVariables);
 
         // Assumption is a combination of input and key variables.
         Collection<Literal> assumptions = new HashSet<>(inputLiterals);
@@ -199,14 +319,165 @@ public abstract class AbstractLogicCircuit {
             assumptions.addAll(keyLiterals);
         }
 
-        if (solver.solve(assumptions).equals(Tristate.TRUE))
-            if (outputVariables == null)
-                return solver.getModel();
-            else
-                return solver.getModel(outputVariables);
+        return getEvaluationSession().evaluate(assumptions, outputVariables);
+    }
+
+    /**
+     * Enables memoization of evaluate() responses. The cache is recreated whenever the structure of circuit
+     * changes (e.g. by inserting AntiSAT).
+     * @param capacity maximum number of responses kept in memory (least recently used ones are evicted)
+     * @param storeDirectory directory for persistent stores of responses, one file per circuit fingerprint.
+     *                       If null, responses are kept only in memory.
+     */
+    public void enableOracleCache(int capacity, File storeDirectory) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity of oracle cache has to be positive.");
+        this.oracleCacheCapacity = capacity;
+        this.oracleStoreDirectory = storeDirectory;
+        createOracleCache();
+    }
 
+    public void disableOracleCache() {
+        if (this.oracleCache != null)
+            this.oracleCache.closeStore();
+        this.oracleCache = null;
+        this.oracleCacheCapacity = 0;
+        this.oracleStoreDirectory = null;
+    }
 
-        throw new IllegalStateException("Unable to evaluate circuit.");
+    private void createOracleCache() {
+        if (this.oracleCache != null)
+            this.oracleCache.closeStore();
+        File storeFile = this.oracleStoreDirectory == null ? null
+                : new File(this.oracleStoreDirectory, getStructureFingerprint() + ".oracle");
+        this.oracleCache = new OracleCache(getSortedInputNames(), getSortedKeyInputNames(), this.outputNames,
+                this.oracleCacheCapacity, storeFile);
+    }
+
+    /**
+     * Computes SHA-256 hash of circuit structure - names of inputs, keys and outputs and every gate.
+     * Equal circuits loaded from different files (or formatted differently) have the same fingerprint.
+     */
+    public String getStructureFingerprint() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(getSortedInputNames()).append('|').append(getSortedKeyInputNames()).append('|');
+        List<String> sortedOutputNames = new ArrayList<>(this.outputNames);
+        Collections.sort(sortedOutputNames);
+        sb.append(sortedOutputNames).append('|');
+        if (this.netlist != null) {
+            // netlist is read directly in the order of gate list, no Gate objects are created
+            int[] fanIn = this.netlist.getFanIn();
+            for (int position = 0; position < this.netlist.getGateCount(); position++) {
+                int g = this.netlist.getGateAt(position);
+                sb.append(this.netlist.getSignalName(this.netlist.getGateSignal(g))).append('=')
+                        .append(this.netlist.getGateType(g)).append('[');
+                for (int i = this.netlist.getFanInStart(g); i < this.netlist.getFanInEnd(g); i++) {
+                    if (i > this.netlist.getFanInStart(g))
+                        sb.append(", ");
+                    sb.append(this.netlist.getSignalName(fanIn[i]));
+                }
+                sb.append("];");
+            }
+        } else {
+            for (Gate g : this.gates)
+                sb.append(g.getOutput()).append('=').append(g.getType()).append(g.getInputs()).append(';');
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++)
+                hex.append(String.format("%02x", digest[i]));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(sb.toString().hashCode());
+        }
+    }
+
+    /**
+     * Returns the oracle cache or null, if memoization is disabled.
+     */
+    public OracleCache getOracleCache() {
+        return this.oracleCache;
+    }
+
+    public int getOracleCacheCapacity() {
+        return this.oracleCacheCapacity;
+    }
+
+    public File getOracleStoreDirectory() {
+        return this.oracleStoreDirectory;
+    }
+
+    /**
+     * Opens a new SAT evaluation session with the CNF of circuit loaded. The caller owns the session
+     * and is responsible for closing it.
+     */
+    public SatEvaluationSession openEvaluationSession() {
+        return new SatEvaluationSession(this.CNF);
+    }
+
+    /**
+     * Returns the SAT evaluation session of current thread. The session is opened on the first request
+     * and reopened whenever the CNF of circuit changes.
+     */
+    public SatEvaluationSession getEvaluationSession() {
+        SatEvaluationSession session = this.evaluationSession.get();
+        if (session == null || !session.isOpen() || session.getCNF() != this.CNF) {
+            if (session != null)
+                session.close();
+            session = openEvaluationSession();
+            this.evaluationSession.set(session);
+        }
+        return session;
+    }
+
+    /**
+     * Closes the SAT evaluation session of current thread, if there is any.
+     */
+    public void closeEvaluationSession() {
+        SatEvaluationSession session = this.evaluationSession.get();
+        if (session != null)
+            session.close();
+        this.evaluationSession.remove();
+    }
+
+    /**
+     * Evaluates a batch of input vectors with the same key in one pass through the circuit.
+     * @param inputs packed input vectors, one row per regular input (in the order of getSortedInputNames())
+     * @param key key values (in the order of getSortedKeyInputNames()), null for zero key
+     * @return packed values of outputs and internal nodes for every vector
+     */
+    public BatchResult evaluateBatch(BitMatrix inputs, int[] key) throws IllegalArgumentException, IllegalStateException {
+        return getBatchSimulator().simulateBatch(inputs, key);
+    }
+
+    /**
+     * Evaluates a batch of input vectors, each one with its own key, in one pass through the circuit.
+     * @param inputs packed input vectors, one row per regular input (in the order of getSortedInputNames())
+     * @param keys packed keys, one row per key input (in the order of getSortedKeyInputNames()), null for zero key
+     * @return packed values of outputs and internal nodes for every vector
+     */
+    public BatchResult evaluateBatch(BitMatrix inputs, BitMatrix keys) throws IllegalArgumentException, IllegalStateException {
+        return getBatchSimulator().simulateBatch(inputs, keys);
+    }
+
+    /**
+     * Opens an incremental simulation session for 64 patterns of inputs and keys. Subsequent input flips
+     * re-evaluate only the affected fan-out cone.
+     * @param inputWords one word per regular input (in the order of getSortedInputNames())
+     * @param keyWords one word per key input (in the order of getSortedKeyInputNames()), null for zero key
+     * @return session holding the values of every signal
+     */
+    public SimulationSession openSimulationSession(long[] inputWords, long[] keyWords)
+            throws IllegalArgumentException, IllegalStateException {
+        return getBatchSimulator().openSession(inputWords, keyWords);
+    }
+
+    private CircuitSimulator getBatchSimulator() throws IllegalStateException {
+        if (this.simulator == null)
+            throw new IllegalStateException("Circuit " + this.name + " cannot be levelized for simulation.");
+        return this.simulator;
     }
 
     /* Getters */
@@ -219,6 +490,15 @@ public abstract class AbstractLogicCircuit {
         return inputNames;
     }
 
+    /**
+     * Returns the regular input names in the order used for the integer representation of input vectors.
+     */
+    public List<String> getSortedInputNames() {
+        List<String> sortedInputNames = new ArrayList<>(this.inputNames);
+        Collections.sort(sortedInputNames);
+        return sortedInputNames;
+    }
+
     public Collection<Literal> getInputLiterals(FormulaFactory ff, int[] initValues) {
         if (initValues != null) {
             if (this.inputNames.size() != initValues.length) {
@@ -229,10 +509,8 @@ public abstract class AbstractLogicCircuit {
         }
 
         int i = 0;
-        List<String> sortedInputNames = new ArrayList<>(inputNames);
-        Collections.sort(sortedInputNames);
         Collection<Literal> inputLiterals = new HashSet<>();
-        for (String s : sortedInputNames) {
+        for (String s : getSortedInputNames()) {
             inputLiterals.add(ff.literal(s, initValues != null && initValues[i] == 1));
             i++;
         }
@@ -252,6 +530,15 @@ public abstract class AbstractLogicCircuit {
         return keyInputNames;
     }
 
+    /**
+     * Returns the key input names in the order used for the integer representation of keys.
+     */
+    public List<String> getSortedKeyInputNames() {
+        List<String> sortedKeyNames = new ArrayList<>(this.keyInputNames);
+        sortedKeyNames.sort(new CustomKeyComparator());
+        return sortedKeyNames;
+    }
+
     public Collection<Literal> getKeyLiterals(FormulaFactory ff, int[] initValues) {
         if (initValues != null) {
             if (this.keyInputNames.size() != initValues.length) {
@@ -261,11 +548,9 @@ public abstract class AbstractLogicCircuit {
             }
         }
 
-        List<String> sortedKeyNames = new ArrayList<>(keyInputNames);
-        sortedKeyNames.sort(new CustomKeyComparator());
         int i = 0;
         Collection<Literal> keyLiterals = new HashSet<>();
-        for (String s : sortedKeyNames) {
+        for (String s : getSortedKeyInputNames()) {
             keyLiterals.add(ff.literal(s, initValues != null && initValues[i] == 1));
             i++;
         }
@@ -290,7 +575,27 @@ public abstract class AbstractLogicCircuit {
         return this.CNF;
     }
 
-    public List<Gate> getGates() { return this.gates; }
+    /**
+     * Returns the read-only list of gates in the order of bench file. Gates of combinational circuits
+     * are created from the netlist by every call, so hot paths should read the netlist instead.
+     */
+    public List<Gate> getGates() {
+        return (this.netlist != null) ? this.netlist.asGateList() : Collections.unmodifiableList(this.gates);
+    }
+
+    /**
+     * Returns the integer-indexed netlist of the circuit or null if the circuit cannot be levelized.
+     */
+    public Netlist getNetlist() {
+        return this.netlist;
+    }
+
+    /**
+     * Returns the levelized simulator of the circuit or null if the circuit cannot be simulated.
+     */
+    public CircuitSimulator getSimulator() {
+        return this.simulator;
+    }
 
     /* Setters */
 
@@ -298,6 +603,31 @@ public abstract class AbstractLogicCircuit {
         this.name = name;
     }
 
+    /**
+     * Switches between the interpreted simulator and the evaluator compiled at runtime into a Java class.
+     * The compiled evaluator is used for single words - evaluate() (e.g. oracle queries of SAT and Sig attack)
+     * and CircuitSimulator.simulate() - and pays off for many such calls on a fixed circuit. Batches
+     * (evaluateBatch(), used by SPS attack) are always evaluated by the interpreted simulator.
+     * If the Java compiler is not available, the interpreted simulator is used.
+     */
+    public void setCompiledEvaluation(boolean compiledEvaluation) {
+        this.compiledEvaluation = compiledEvaluation;
+        if (this.simulator != null)
+            this.simulator.setKernel(compiledEvaluation ? CircuitCompiler.compile(this.netlist, getStructureFingerprint()) : null);
+    }
+
+    /**
+     * Enables or disables the netlist preprocessing (constant folding, merging of BUF / NOT gates and
+     * structurally identical gates, removal of logic outside the fan-in of outputs) and recreates the CNF.
+     * Affects only the CNF used by attacks, the evaluation of circuit stays the same.
+     */
+    public void setPreprocessing(boolean preprocessing) {
+        if (this.preprocessing == preprocessing)
+            return;
+        this.preprocessing = preprocessing;
+        createCNF();
+    }
+
     /* Utilities */
 
     public void printCNF() {
@@ -321,6 +651,11 @@ public abstract class AbstractLogicCircuit {
      * @return found gate or null if the gate with that name doesn't exists.
      */
     public Gate getSingleGate(String name) {
+        if (this.netlist != null) {
+            int gate = this.netlist.getDrivingGate(this.netlist.getSignalIndex(name));
+            return gate < 0 ? null : this.netlist.createGate(gate);
+        }
+
         for (Gate gate : this.gates) {
             if (gate.getOutput().equals(name))
                 return gate;
@@ -3,6 +3,8 @@ package main.circuit;
 import main.helpers.FormulaFactoryWrapper;
 import main.circuit.components.Gate;
 import main.circuit.components.GateType;
+import main.circuit.components.Netlist;
+import main.circuit.simulation.BitMatrix;
 import main.circuit.utilities.CircuitUtilities;
 import main.helpers.utilities.Protocol;
 import main.helpers.utilities.Randomizer;
@@ -126,6 +128,28 @@ public class LogicCircuit extends AbstractLogicCircuit {
      * E.g. G1 = and(I1, I2)
      */
     private void addGatesToBuffer(BufferedWriter bw) throws IOException {
+        Netlist netlist = this.getNetlist();
+        if (netlist != null) {
+            // gates are written from the netlist in the order of bench file, no Gate objects are created
+            int[] fanIn = netlist.getFanIn();
+            for (int position = 0; position < netlist.getGateCount(); position++) {
+                int g = netlist.getGateAt(position);
+                bw.write(netlist.getSignalName(netlist.getGateSignal(g)));
+                bw.write(" = ");
+                bw.write(netlist.getGateType(g).toString().toLowerCase());
+                bw.write("(");
+                for (int i = netlist.getFanInStart(g); i < netlist.getFanInEnd(g); i++) {
+                    if (i > netlist.getFanInStart(g))
+                        bw.write(", ");
+                    bw.write(netlist.getSignalName(fanIn[i]));
+                }
+                bw.write(")");
+                bw.newLine();
+            }
+            bw.flush();
+            return;
+        }
+
         for (Gate gate : this.getGates()) {
             bw.write(gate.getOutput());
             bw.write(" = ");
@@ -203,9 +227,8 @@ public class LogicCircuit extends AbstractLogicCircuit {
             Protocol.printWarningMessage("Trying to remove invalid output from regular outputs.");
 
         this.getOutputNames().add(newRegularOutput);
-        this.getGates().addAll(newGates);
-
-        createCNF();
+        newGates.addAll(0, this.getGates());
+        setGates(newGates);
     }
 
     /**
@@ -340,6 +363,40 @@ public class LogicCircuit extends AbstractLogicCircuit {
         return newInputs;
     }
 
+    /**
+     * Simulates the Strong-AntiSAT protection on a batch of input vectors. Every vector with odd
+     * Hamming weight is changed the same way as changeInputBySAS() changes a single input.
+     * @param inputs packed input vectors, changed in place
+     * @param keys packed keys related to the input vectors
+     */
+    public void changeInputBySAS(BitMatrix inputs, BitMatrix keys) {
+        List<String> inputNames = this.getSortedInputNames();
+        List<String> keyNames = this.getSortedKeyInputNames();
+
+        long[] oddWeight = new long[inputs.getWordCount()];
+        for (int i = 0; i < inputs.getRowCount(); i++) {
+            long[] input = inputs.getRow(i);
+            for (int w = 0; w < oddWeight.length; w++)
+                oddWeight[w] ^= input[w];
+        }
+
+        for (int i = 0; i < inputNames.size(); i++) {
+            KeyMapper mapper = this.inputKeyMapping.get(inputNames.get(i));
+            int keyIndex = (mapper == null) ? -1 : keyNames.indexOf(mapper.getKey());
+            if (keyIndex == -1) {
+                Protocol.printWarningMessage("SAS: Unable to find variable " + inputNames.get(i) + ".");
+                continue;
+            }
+
+            long[] input = inputs.getRow(i);
+            long[] key = keys.getRow(keyIndex);
+            for (int w = 0; w < oddWeight.length; w++) {
+                long changed = (mapper.getGate() == GateType.XOR) ? ~key[w] : key[w];
+                input[w] = (input[w] & ~oddWeight[w]) | (changed & oddWeight[w]);
+            }
+        }
+    }
+
     /**
      * Searches through the keys collection and checks if there is a literal with specific name.
      * @return found instance of Literal or null if the literal is not in keys collection.
@@ -398,9 +455,12 @@ public class LogicCircuit extends AbstractLogicCircuit {
 
     public void createEvaluationCircuit(File plainFile) {
         LogicCircuit eval = LogicCircuit.getCircuitInstance(plainFile);
-        if (eval != null)
+        if (eval != null) {
+            // evaluation circuit is the oracle of Sig attack, so it shares the cache settings
+            if (getOracleCacheCapacity() > 0)
+                eval.enableOracleCache(getOracleCacheCapacity(), getOracleStoreDirectory());
             this.evaluationCircuit = eval;
-        else
+        } else
             throw new IllegalArgumentException("Evaluation circuit could not be set.");
     }
 }
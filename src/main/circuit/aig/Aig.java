@@ -0,0 +1,436 @@
+package main.circuit.aig;
+
+import main.circuit.AbstractLogicCircuit;
+import main.circuit.LogicCircuit;
+import main.circuit.components.Gate;
+import main.circuit.components.GateType;
+import main.circuit.components.Netlist;
+import main.helpers.FormulaFactoryWrapper;
+import org.logicng.formulas.Formula;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.util.*;
+
+/**
+ * And-Inverter Graph - a combinational circuit made of two-input AND nodes connected by complemented edges.
+ * Every node has a dense id: node 0 is the constant zero, regular inputs and key inputs follow in the order
+ * of the netlist and AND nodes take the rest. An edge is a literal 2 * node + complement, e.g. the literal 1
+ * is the constant one. AND nodes are created only by createAnd(), which simplifies trivial cases and returns
+ * an existing node with the same fan-in (structural hashing), so the graph never contains two identical nodes.
+ * Nodes are created after their fan-in, so evaluating them in id order is always correct.
+ */
+public class Aig {
+
+    public static final int FALSE = 0;
+    public static final int TRUE = 1;
+
+    private final List<String> inputNames;
+    private final List<String> keyNames;
+    private final Map<String, Integer> outputs;
+    private final Map<Long, Integer> structuralHashes;
+    private int[] fanIn0;
+    private int[] fanIn1;
+    private int[] levels;
+    private int nodeCount;
+
+    /**
+     * Creates an AIG without AND nodes and outputs.
+     * @param inputNames regular input names in the order of their nodes (1, 2, ...)
+     * @param keyNames key input names in the order of their nodes (following the regular inputs)
+     */
+    public Aig(List<String> inputNames, List<String> keyNames) {
+        this.inputNames = new ArrayList<>(inputNames);
+        this.keyNames = new ArrayList<>(keyNames);
+        this.outputs = new TreeMap<>();
+        this.structuralHashes = new HashMap<>();
+        int capacity = 1 + inputNames.size() + keyNames.size();
+        this.fanIn0 = new int[2 * capacity];
+        this.fanIn1 = new int[2 * capacity];
+        this.levels = new int[2 * capacity];
+        this.nodeCount = capacity;
+    }
+
+    /**
+     * Converts the combinational logic circuit into an AIG. Gates with more inputs are built as balanced
+     * trees of two-input nodes, XOR and XNOR gates take three AND nodes per two inputs.
+     * @param circuit logic circuit, which can be levelized
+     * @return an instance of Aig with the outputs of circuit
+     * @throws IllegalArgumentException if the circuit contains a combinational cycle
+     */
+    public static Aig fromCircuit(LogicCircuit circuit) throws IllegalArgumentException {
+        Netlist netlist = circuit.getNetlist();
+        if (netlist == null)
+            throw new IllegalArgumentException("Circuit " + circuit.getName() + " cannot be levelized, AIG is not created.");
+
+        Aig aig = new Aig(circuit.getSortedInputNames(), circuit.getSortedKeyInputNames());
+        int[] literals = new int[netlist.getSignalCount()];
+        for (int s = 0; s < netlist.getInputCount() + netlist.getKeyCount(); s++)
+            literals[s] = 2 * (s + 1);
+
+        for (int g = 0; g < netlist.getGateCount(); g++) {
+            List<Integer> fanIn = new ArrayList<>();
+            for (int i = netlist.getFanInStart(g); i < netlist.getFanInEnd(g); i++)
+                fanIn.add(literals[netlist.getFanIn()[i]]);
+
+            int literal;
+            switch (netlist.getGateType(g)) {
+                case AND:
+                    literal = aig.createAnd(fanIn);
+                    break;
+                case NAND:
+                    literal = aig.createAnd(fanIn) ^ 1;
+                    break;
+                case OR:
+                    literal = aig.createOr(fanIn);
+                    break;
+                case NOR:
+                    literal = aig.createOr(fanIn) ^ 1;
+                    break;
+                case XOR:
+                    literal = aig.createXor(fanIn);
+                    break;
+                case XNOR:
+                    literal = aig.createXor(fanIn) ^ 1;
+                    break;
+                case NOT:
+                    literal = fanIn.get(0) ^ 1;
+                    break;
+                case BUF:
+                    literal = fanIn.get(0);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unable to convert gate " + netlist.getSignalName(netlist.getGateSignal(g)) + " into AIG.");
+            }
+            literals[netlist.getGateSignal(g)] = literal;
+        }
+
+        for (String output : circuit.getOutputNames())
+            aig.setOutput(output, literals[netlist.getSignalIndex(output)]);
+        return aig;
+    }
+
+    /**
+     * Returns the literal of a AND b. Constants, equal and complementary inputs are simplified and the node
+     * with the same fan-in is reused, if it already exists.
+     */
+    public int createAnd(int a, int b) {
+        if (a > b) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        if (a == FALSE || a == (b ^ 1))
+            return FALSE;
+        if (a == TRUE || a == b)
+            return b;
+
+        long key = ((long) a << 32) | b;
+        Integer existing = this.structuralHashes.get(key);
+        if (existing != null)
+            return 2 * existing;
+
+        if (this.nodeCount == this.fanIn0.length) {
+            this.fanIn0 = Arrays.copyOf(this.fanIn0, 2 * this.nodeCount);
+            this.fanIn1 = Arrays.copyOf(this.fanIn1, 2 * this.nodeCount);
+            this.levels = Arrays.copyOf(this.levels, 2 * this.nodeCount);
+        }
+        int node = this.nodeCount++;
+        this.fanIn0[node] = a;
+        this.fanIn1[node] = b;
+        this.levels[node] = 1 + Math.max(this.levels[a >> 1], this.levels[b >> 1]);
+        this.structuralHashes.put(key, node);
+        return 2 * node;
+    }
+
+    public int createOr(int a, int b) {
+        return createAnd(a ^ 1, b ^ 1) ^ 1;
+    }
+
+    /**
+     * Returns the literal of a XOR b = ~(~(a & ~b) & ~(~a & b)).
+     */
+    public int createXor(int a, int b) {
+        return createOr(createAnd(a, b ^ 1), createAnd(a ^ 1, b));
+    }
+
+    /**
+     * Returns the literal of AND of all literals, built as a balanced tree.
+     */
+    public int createAnd(List<Integer> literals) {
+        return createTree(literals, 0, literals.size(), GateType.AND);
+    }
+
+    public int createOr(List<Integer> literals) {
+        return createTree(literals, 0, literals.size(), GateType.OR);
+    }
+
+    public int createXor(List<Integer> literals) {
+        return createTree(literals, 0, literals.size(), GateType.XOR);
+    }
+
+    private int createTree(List<Integer> literals, int from, int to, GateType type) {
+        if (to - from == 1)
+            return literals.get(from);
+
+        int middle = (from + to) / 2;
+        int a = createTree(literals, from, middle, type);
+        int b = createTree(literals, middle, to, type);
+        switch (type) {
+            case AND:
+                return createAnd(a, b);
+            case OR:
+                return createOr(a, b);
+            default:
+                return createXor(a, b);
+        }
+    }
+
+    /**
+     * Converts the AIG back into a logic circuit. AND nodes become AND, NAND, OR or NOR gates (see AigEncoding),
+     * recognized XORs become XOR or XNOR gates and the remaining complemented edges get one NOT gate per node
+     * (e.g. AIG_n42_not). Nodes are named AIG_n[id] or by the output they drive. Only nodes in the fan-in
+     * of outputs are converted. Inputs and keys, which do not drive any output, are kept among the inputs
+     * of circuit without any gate.
+     * @param name name of the new circuit
+     * @return an instance of LogicCircuit (without correct key)
+     */
+    public LogicCircuit toLogicCircuit(String name) {
+        AigEncoding encoding = new AigEncoding(this);
+        Set<Integer> negated = new HashSet<>();
+        List<Gate> gates = new ArrayList<>();
+
+        for (int node = firstAndNode(); node < this.nodeCount; node++) {
+            if (!encoding.isEncoded(node))
+                continue;
+
+            String output = encoding.getName(node);
+            if (encoding.isXor(node)) {
+                int a = encoding.getXorInput0(node);
+                int b = encoding.getXorInput1(node);
+                int parity = encoding.getComplement(a) ^ encoding.getComplement(b) ^ encoding.getPhase(node);
+                gates.add(new Gate(parity == 0 ? GateType.XOR : GateType.XNOR, output,
+                        encoding.getName(a >> 1), encoding.getName(b >> 1)));
+                continue;
+            }
+
+            int a = this.fanIn0[node];
+            int b = this.fanIn1[node];
+            if (encoding.getComplement(a) == 1 && encoding.getComplement(b) == 1) {
+                // ~a & ~b = NOR(a, b)
+                gates.add(new Gate(encoding.getPhase(node) == 0 ? GateType.NOR : GateType.OR, output,
+                        encoding.getName(a >> 1), encoding.getName(b >> 1)));
+            } else {
+                gates.add(new Gate(encoding.getPhase(node) == 0 ? GateType.AND : GateType.NAND, output,
+                        signalName(a, encoding, negated, gates), signalName(b, encoding, negated, gates)));
+            }
+        }
+
+        for (Map.Entry<String, Integer> output : this.outputs.entrySet()) {
+            int literal = output.getValue();
+            String signal = encoding.getName(literal >> 1);
+            if (signal.equals(output.getKey()))
+                continue;
+
+            if (literal == FALSE || literal == TRUE) {
+                // constants are not part of .bench format, x ^ x = 0 and ~(x ^ x) = 1
+                if (this.nodeCount == 1)
+                    throw new IllegalStateException("Constant output " + output.getKey() + " of circuit without inputs.");
+                gates.add(new Gate(literal == FALSE ? GateType.XOR : GateType.XNOR, output.getKey(),
+                        encoding.getName(1), encoding.getName(1)));
+            } else {
+                gates.add(new Gate(encoding.getComplement(literal) == 0 ? GateType.BUF : GateType.NOT, output.getKey(), signal));
+            }
+        }
+
+        return AbstractLogicCircuit.getCircuitInstance(name, this.inputNames, this.keyNames, this.outputs.keySet(), gates);
+    }
+
+    /**
+     * Creates the CNF of AIG - three clauses per AND node and four clauses per recognized XOR in the fan-in
+     * of outputs, complemented edges are negated literals. Variables are named in the same way as the signals
+     * of toLogicCircuit(), outputs, which are shared with another output or constant, are bound by
+     * an equivalence or a unit clause. Inputs and keys driving no output are kept
+     * in the models of SAT solver by Gate.encodeUnused().
+     * @return boolean CNF formula
+     */
+    public Formula toCNF() {
+        FormulaFactory f = FormulaFactoryWrapper.getFormulaFactory();
+        AigEncoding encoding = new AigEncoding(this);
+        List<Formula> operands = new ArrayList<>();
+
+        for (int node = firstAndNode(); node < this.nodeCount; node++) {
+            if (!encoding.isEncoded(node))
+                continue;
+
+            Literal y = toLiteral(f, 2 * node, encoding);
+            if (encoding.isXor(node)) {
+                Literal a = toLiteral(f, encoding.getXorInput0(node), encoding);
+                Literal b = toLiteral(f, encoding.getXorInput1(node), encoding);
+                operands.add(f.or(a.negate(), b.negate(), y.negate()));
+                operands.add(f.or(a, b, y.negate()));
+                operands.add(f.or(a, b.negate(), y));
+                operands.add(f.or(a.negate(), b, y));
+            } else {
+                Literal a = toLiteral(f, this.fanIn0[node], encoding);
+                Literal b = toLiteral(f, this.fanIn1[node], encoding);
+                operands.add(f.or(y.negate(), a));
+                operands.add(f.or(y.negate(), b));
+                operands.add(f.or(y, a.negate(), b.negate()));
+            }
+        }
+
+        for (Map.Entry<String, Integer> output : this.outputs.entrySet()) {
+            int literal = output.getValue();
+            if (encoding.getName(literal >> 1).equals(output.getKey()))
+                continue;
+
+            Variable y = f.variable(output.getKey());
+            if (literal == FALSE || literal == TRUE) {
+                operands.add(literal == TRUE ? y : y.negate());
+            } else {
+                Literal x = toLiteral(f, literal, encoding);
+                operands.add(f.or(y.negate(), x));
+                operands.add(f.or(y, x.negate()));
+            }
+        }
+
+        boolean[] driving = new boolean[this.nodeCount];
+        for (int node = firstAndNode(); node < this.nodeCount; node++) {
+            if (encoding.isEncoded(node) && encoding.isXor(node)) {
+                driving[encoding.getXorInput0(node) >> 1] = true;
+                driving[encoding.getXorInput1(node) >> 1] = true;
+            } else if (encoding.isEncoded(node)) {
+                driving[this.fanIn0[node] >> 1] = true;
+                driving[this.fanIn1[node] >> 1] = true;
+            }
+        }
+        for (int literal : this.outputs.values())
+            driving[literal >> 1] = true;
+        for (int node = 1; node < firstAndNode(); node++) {
+            if (!driving[node])
+                Gate.encodeUnused(f, operands, encoding.getName(node));
+        }
+        return f.and(operands);
+    }
+
+    /* Getters */
+
+    public List<String> getInputNames() {
+        return Collections.unmodifiableList(this.inputNames);
+    }
+
+    public List<String> getKeyNames() {
+        return Collections.unmodifiableList(this.keyNames);
+    }
+
+    public Set<String> getOutputNames() {
+        return Collections.unmodifiableSet(this.outputs.keySet());
+    }
+
+    /**
+     * Returns the literal driving the output or -1 if such output does not exist.
+     */
+    public int getOutput(String name) {
+        Integer literal = this.outputs.get(name);
+        return literal == null ? -1 : literal;
+    }
+
+    /**
+     * Returns the count of all nodes including the constant and inputs.
+     */
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Returns the count of AND nodes in the fan-in of outputs.
+     */
+    public int getAndCount() {
+        int count = 0;
+        for (boolean live : markLiveNodes())
+            count += live ? 1 : 0;
+        return count;
+    }
+
+    public boolean isAnd(int node) {
+        return node >= firstAndNode();
+    }
+
+    public int getFanIn0(int node) {
+        return this.fanIn0[node];
+    }
+
+    public int getFanIn1(int node) {
+        return this.fanIn1[node];
+    }
+
+    /**
+     * Returns the level of node - 0 for the constant and inputs, the longest path from inputs for AND nodes.
+     */
+    public int getLevel(int node) {
+        return this.levels[node];
+    }
+
+    /**
+     * Returns the highest level of outputs.
+     */
+    public int getDepth() {
+        int depth = 0;
+        for (int literal : this.outputs.values())
+            depth = Math.max(depth, this.levels[literal >> 1]);
+        return depth;
+    }
+
+    /* Setters */
+
+    public void setOutput(String name, int literal) {
+        if (literal < 0 || (literal >> 1) >= this.nodeCount)
+            throw new IllegalArgumentException("Literal " + literal + " of output " + name + " is not in AIG.");
+        this.outputs.put(name, literal);
+    }
+
+    /* Utilities */
+
+    private int firstAndNode() {
+        return 1 + this.inputNames.size() + this.keyNames.size();
+    }
+
+    /**
+     * Marks the AND nodes in the fan-in of outputs.
+     */
+    boolean[] markLiveNodes() {
+        boolean[] live = new boolean[this.nodeCount];
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (int literal : this.outputs.values())
+            pending.push(literal >> 1);
+
+        while (!pending.isEmpty()) {
+            int node = pending.pop();
+            if (!isAnd(node) || live[node])
+                continue;
+            live[node] = true;
+            pending.push(this.fanIn0[node] >> 1);
+            pending.push(this.fanIn1[node] >> 1);
+        }
+        return live;
+    }
+
+    /**
+     * Returns the name of signal with the value of literal, the NOT gate of complemented signal is created
+     * with its first use.
+     */
+    private String signalName(int literal, AigEncoding encoding, Set<Integer> negated, List<Gate> gates) {
+        String name = encoding.getName(literal >> 1);
+        if (encoding.getComplement(literal) == 0)
+            return name;
+        if (negated.add(literal >> 1))
+            gates.add(new Gate(GateType.NOT, name + "_not", name));
+        return name + "_not";
+    }
+
+    private Literal toLiteral(FormulaFactory f, int literal, AigEncoding encoding) {
+        return f.literal(encoding.getName(literal >> 1), encoding.getComplement(literal) == 0);
+    }
+}
@@ -0,0 +1,99 @@
+package main.circuit.aig;
+
+import java.util.*;
+
+/**
+ * Depth-reducing balancing of AIG. Every node, which drives an output, a complemented edge or more than one
+ * node, is the root of a supergate - a multi-input AND collected through the uncomplemented edges of nodes
+ * with a single fan-out. The leaves of supergate are joined again in the order of their levels (the two
+ * lowest first), so the depth of supergate is minimal for the arrival times of its leaves. Logic is not
+ * duplicated, the count of AND nodes does not grow and the new graph is structurally hashed as well.
+ */
+public class AigBalancer {
+
+    private final Aig source;
+    private final Aig balanced;
+    private final int[] fanOutCounts;
+    private final int[] literals;
+
+    private AigBalancer(Aig source) {
+        this.source = source;
+        this.balanced = new Aig(source.getInputNames(), source.getKeyNames());
+        this.fanOutCounts = new int[source.getNodeCount()];
+        this.literals = new int[source.getNodeCount()];
+        Arrays.fill(this.literals, -1);
+        for (int node = 0; node < source.getNodeCount() && !source.isAnd(node); node++)
+            this.literals[node] = 2 * node;
+    }
+
+    /**
+     * Creates a balanced copy of AIG with the same inputs, keys and outputs.
+     * @param aig source AIG, it is not modified
+     * @return a new instance of Aig
+     */
+    public static Aig balance(Aig aig) {
+        return new AigBalancer(aig).balance();
+    }
+
+    private Aig balance() {
+        boolean[] live = this.source.markLiveNodes();
+        boolean[] roots = new boolean[this.source.getNodeCount()];
+        for (int node = 0; node < live.length; node++) {
+            if (!live[node])
+                continue;
+            for (int literal : new int[]{ this.source.getFanIn0(node), this.source.getFanIn1(node) }) {
+                this.fanOutCounts[literal >> 1]++;
+                if ((literal & 1) == 1)
+                    roots[literal >> 1] = true;
+            }
+        }
+        for (String output : this.source.getOutputNames())
+            roots[this.source.getOutput(output) >> 1] = true;
+
+        // leaves of supergate have lower ids than its root, so roots are rebuilt in id order
+        for (int node = 0; node < roots.length; node++) {
+            if (live[node] && (roots[node] || this.fanOutCounts[node] > 1))
+                this.literals[node] = rebuild(node);
+        }
+
+        for (String output : this.source.getOutputNames()) {
+            int literal = this.source.getOutput(output);
+            this.balanced.setOutput(output, this.literals[literal >> 1] ^ (literal & 1));
+        }
+        return this.balanced;
+    }
+
+    /**
+     * Collects the leaves of supergate with the root node and joins their balanced literals by levels.
+     */
+    private int rebuild(int root) {
+        List<Integer> leaves = new ArrayList<>();
+        collectLeaves(this.source.getFanIn0(root), leaves);
+        collectLeaves(this.source.getFanIn1(root), leaves);
+
+        PriorityQueue<Integer> pending = new PriorityQueue<>(
+                Comparator.comparingInt((Integer literal) -> this.balanced.getLevel(literal >> 1)).thenComparingInt(literal -> literal));
+        Set<Integer> inputs = new HashSet<>();
+        for (int leaf : leaves) {
+            int literal = this.literals[leaf >> 1] ^ (leaf & 1);
+            if (inputs.contains(literal ^ 1))
+                return Aig.FALSE;
+            if (inputs.add(literal))
+                pending.add(literal);
+        }
+
+        while (pending.size() > 1)
+            pending.add(this.balanced.createAnd(pending.poll(), pending.poll()));
+        return pending.poll();
+    }
+
+    private void collectLeaves(int literal, List<Integer> leaves) {
+        int node = literal >> 1;
+        if ((literal & 1) == 1 || !this.source.isAnd(node) || this.fanOutCounts[node] > 1) {
+            leaves.add(literal);
+            return;
+        }
+        collectLeaves(this.source.getFanIn0(node), leaves);
+        collectLeaves(this.source.getFanIn1(node), leaves);
+    }
+}
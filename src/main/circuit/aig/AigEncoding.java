@@ -0,0 +1,142 @@
+package main.circuit.aig;
+
+/**
+ * Mapping of AIG nodes to signals of a logic circuit (or variables of CNF), shared by Aig.toLogicCircuit()
+ * and Aig.toCNF(). Only nodes in the fan-in of outputs are encoded. The pattern ~(a & b) & ~(~a & ~b)
+ * with single fan-out inner nodes is recognized as one XOR of a and b, its inner nodes are not encoded.
+ * Every encoded node has a phase - the signal of node carries the value of node XOR phase - chosen by
+ * the majority of complemented uses, so most complemented edges are absorbed into NAND, NOR and OR gates
+ * instead of separate NOT gates. Nodes driving an output are named by the output.
+ */
+class AigEncoding {
+
+    private final Aig aig;
+    private final String[] names;
+    private final boolean[] encoded;
+    private final boolean[] xor;
+    private final int[] phases;
+
+    AigEncoding(Aig aig) {
+        this.aig = aig;
+        int nodeCount = aig.getNodeCount();
+        this.names = new String[nodeCount];
+        this.encoded = aig.markLiveNodes();
+        this.xor = new boolean[nodeCount];
+        this.phases = new int[nodeCount];
+
+        int[] fanOutCounts = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            if (this.encoded[node]) {
+                fanOutCounts[aig.getFanIn0(node) >> 1]++;
+                fanOutCounts[aig.getFanIn1(node) >> 1]++;
+            }
+        }
+        for (String output : aig.getOutputNames())
+            fanOutCounts[aig.getOutput(output) >> 1]++;
+
+        // consumers have higher ids, so a node absorbed into XOR is never checked as XOR itself
+        for (int node = nodeCount - 1; node >= 0 && aig.isAnd(node); node--) {
+            if (this.encoded[node] && isXor(node, fanOutCounts)) {
+                this.xor[node] = true;
+                this.encoded[aig.getFanIn0(node) >> 1] = false;
+                this.encoded[aig.getFanIn1(node) >> 1] = false;
+            }
+        }
+
+        createNames();
+    }
+
+    /**
+     * Returns true if the node is ~p & ~q, where p = a & b, q = ~a & ~b and p, q drive only the node.
+     */
+    private boolean isXor(int node, int[] fanOutCounts) {
+        int a = this.aig.getFanIn0(node);
+        int b = this.aig.getFanIn1(node);
+        if ((a & 1) == 0 || (b & 1) == 0)
+            return false;
+
+        int p = a >> 1;
+        int q = b >> 1;
+        if (!this.aig.isAnd(p) || !this.aig.isAnd(q) || fanOutCounts[p] != 1 || fanOutCounts[q] != 1)
+            return false;
+
+        int p0 = this.aig.getFanIn0(p), p1 = this.aig.getFanIn1(p);
+        int q0 = this.aig.getFanIn0(q), q1 = this.aig.getFanIn1(q);
+        return (q0 == (p0 ^ 1) && q1 == (p1 ^ 1)) || (q0 == (p1 ^ 1) && q1 == (p0 ^ 1));
+    }
+
+    private void createNames() {
+        int primaryCount = this.aig.getInputNames().size() + this.aig.getKeyNames().size();
+        this.names[0] = "AIG_false";
+        for (int i = 0; i < this.aig.getInputNames().size(); i++)
+            this.names[1 + i] = this.aig.getInputNames().get(i);
+        for (int i = 0; i < this.aig.getKeyNames().size(); i++)
+            this.names[1 + this.aig.getInputNames().size() + i] = this.aig.getKeyNames().get(i);
+
+        int[] complementedUses = new int[this.names.length];
+        int[] uses = new int[this.names.length];
+        for (int node = 1 + primaryCount; node < this.names.length; node++) {
+            if (!this.encoded[node] || this.xor[node])
+                continue;
+            for (int literal : new int[]{ this.aig.getFanIn0(node), this.aig.getFanIn1(node) }) {
+                uses[literal >> 1]++;
+                complementedUses[literal >> 1] += literal & 1;
+            }
+        }
+
+        for (String output : this.aig.getOutputNames()) {
+            int literal = this.aig.getOutput(output);
+            int node = literal >> 1;
+            if (this.aig.isAnd(node) && this.names[node] == null) {
+                this.names[node] = output;
+                this.phases[node] = literal & 1;
+            }
+        }
+
+        for (int node = 1 + primaryCount; node < this.names.length; node++) {
+            if (this.encoded[node] && this.names[node] == null) {
+                this.names[node] = "AIG_n" + node;
+                this.phases[node] = (2 * complementedUses[node] > uses[node]) ? 1 : 0;
+            }
+        }
+    }
+
+    /* Getters */
+
+    /**
+     * Returns true if the node is encoded as a gate (AND node or XOR of its inner nodes).
+     */
+    boolean isEncoded(int node) {
+        return this.aig.isAnd(node) && this.encoded[node];
+    }
+
+    boolean isXor(int node) {
+        return this.xor[node];
+    }
+
+    /**
+     * Returns the first input of XOR node (the other one is getXorInput1()).
+     */
+    int getXorInput0(int node) {
+        return this.aig.getFanIn0(this.aig.getFanIn0(node) >> 1);
+    }
+
+    int getXorInput1(int node) {
+        return this.aig.getFanIn1(this.aig.getFanIn0(node) >> 1);
+    }
+
+    String getName(int node) {
+        return this.names[node];
+    }
+
+    int getPhase(int node) {
+        return this.phases[node];
+    }
+
+    /**
+     * Returns 1 if the literal is the complement of its node's signal, 0 otherwise.
+     */
+    int getComplement(int literal) {
+        return (literal & 1) ^ this.phases[literal >> 1];
+    }
+}
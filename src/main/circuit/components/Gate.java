@@ -5,6 +5,7 @@ import main.helpers.utilities.GlobalCounter;
 import main.helpers.utilities.Protocol;
 import org.logicng.formulas.Formula;
 import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
 import org.logicng.formulas.Variable;
 
 import java.util.ArrayList;
@@ -40,9 +41,20 @@ public class Gate{
 		}
 	}
 
+	/**
+	 * Creates a gate of an already validated circuit structure (e.g. a gate of netlist), without warnings.
+	 */
+	Gate(GateType type, String output, List<String> inputs) {
+		this.type = type;
+		this.inputs = inputs;
+		this.output = output;
+		this.neg = this.type.isNeg();
+	}
+
 	/**
 	 * Decomposes all multi-input gates and create multiple gates with two inputs from it.
-	 * Logic of each gate has to be retained.
+	 * Logic of each gate has to be retained. Not needed for the CNF, toFormula() encodes gates with
+	 * any number of inputs.
 	 * @return list of gates containing only of NOT and BUF gates or other gates with only two inputs
 	 */
 	public List<Gate> simplifyGate() {
@@ -87,63 +99,48 @@ public class Gate{
 	}
 
 	/**
-	 * Converts gate to a CNF formula following the standard Tseytin transformation.
+	 * Converts gate to a CNF formula following the standard Tseytin transformation. Gates with more inputs
+	 * are encoded directly - AND, NAND, OR and NOR with n + 1 clauses, XOR and XNOR as a balanced tree
+	 * of two-input XORs with auxiliary variables named by the gate output (e.g. G10$x0).
 	 * @return CNF representation of logic gate
 	 */
 	public Formula toFormula() throws IllegalStateException{
 		FormulaFactory f = FormulaFactoryWrapper.getFormulaFactory();
 		List<Formula> operands = new ArrayList<>();
 
-		//preparation for gates (NAND, NOR, XNOR)
-		Variable inputA = f.variable(this.inputs.get(0));
-		Variable inputB = f.variable("");
-		Variable output = f.variable(this.output);
-
-		if (!(this.inputs.size() == 2 || this.inputs.size() == 1))
+		if (this.inputs.isEmpty())
 			throw new IllegalStateException("unknown gate when creating formula");
 
-		// inputB for AND, NAND, OR, NOR, XOR, XNOR
-		// otherwise inputA is enough (NOT, BUF)
-		if(this.inputs.size() == 2)
-			inputB = f.variable(this.inputs.get(1));
+		List<Literal> inputs = new ArrayList<>();
+		for (String input : this.inputs)
+			inputs.add(f.variable(input));
+		Variable inputA = f.variable(this.inputs.get(0));
+		Variable output = f.variable(this.output);
 
 		switch(this.getType()){
 			case AND:
-				operands.add(f.or(inputA.negate(), inputB.negate(), output));
-				operands.add(f.or(inputB, output.negate()));
-				operands.add(f.or(inputA, output.negate()));
+				encodeAnd(f, operands, inputs, output);
 				return f.and(operands);
 
 			case NAND:
-				operands.add(f.or(inputA.negate(), inputB.negate(), output.negate()));
-				operands.add(f.or(inputB, output));
-				operands.add(f.or(inputA, output));
+				encodeAnd(f, operands, inputs, output.negate());
 				return f.and(operands);
 
 			case OR:
-				operands.add(f.or(inputA, inputB, output.negate()));
-				operands.add(f.or(inputB.negate(), output));
-				operands.add(f.or(inputA.negate(), output));
+				// y = x1 | x2 ... is encoded as ~y = ~x1 & ~x2 ...
+				encodeAnd(f, operands, negate(inputs), output.negate());
 				return f.and(operands);
 
 			case NOR:
-				operands.add(f.or(inputA, inputB, output));
-				operands.add(f.or(inputB.negate(), output.negate()));
-				operands.add(f.or(inputA.negate(), output.negate()));
+				encodeAnd(f, operands, negate(inputs), output);
 				return f.and(operands);
 
 			case XOR:
-				operands.add(f.or(inputA.negate(), inputB.negate(), output.negate()));
-				operands.add(f.or(inputA, inputB, output.negate()));
-				operands.add(f.or(inputA, inputB.negate(), output));
-				operands.add(f.or(inputA.negate(), inputB, output));
+				encodeXor(f, operands, inputs, output, this.output);
 				return f.and(operands);
 
 			case XNOR:
-				operands.add(f.or(inputA.negate(), inputB.negate(), output));
-				operands.add(f.or(inputA.negate(), inputB, output.negate()));
-				operands.add(f.or(inputA, inputB.negate(), output.negate()));
-				operands.add(f.or(inputA, inputB, output));
+				encodeXor(f, operands, inputs, output.negate(), this.output);
 				return f.and(operands);
 
 			case NOT:
@@ -161,6 +158,71 @@ public class Gate{
 		}
 	}
 
+	/**
+	 * Adds clauses of y = x1 & x2 & ... & xn - n binary clauses (~y | xi) and one clause (y | ~x1 | ... | ~xn).
+	 */
+	static void encodeAnd(FormulaFactory f, List<Formula> operands, List<Literal> inputs, Literal output){
+		List<Literal> clause = new ArrayList<>();
+		clause.add(output);
+		for (Literal input : inputs) {
+			operands.add(f.or(output.negate(), input));
+			clause.add(input.negate());
+		}
+		operands.add(f.clause(clause));
+	}
+
+	/**
+	 * Adds clauses of y = x1 ^ x2 ^ ... ^ xn. Inputs are paired into a balanced tree of two-input XORs,
+	 * so the depth of encoding is logarithmic in the number of inputs. Auxiliary variables are named
+	 * by the prefix (e.g. G10$x0).
+	 */
+	static void encodeXor(FormulaFactory f, List<Formula> operands, List<Literal> inputs, Literal output, String prefix){
+		List<Literal> level = inputs;
+		int auxiliary = 0;
+		while (level.size() > 2) {
+			List<Literal> next = new ArrayList<>();
+			for (int i = 0; i + 1 < level.size(); i += 2) {
+				Literal y = f.variable(prefix + "$x" + auxiliary++);
+				encodeXor2(f, operands, level.get(i), level.get(i + 1), y);
+				next.add(y);
+			}
+			if (level.size() % 2 == 1)
+				next.add(level.get(level.size() - 1));
+			level = next;
+		}
+
+		if (level.size() == 2) {
+			encodeXor2(f, operands, level.get(0), level.get(1), output);
+		} else {
+			operands.add(f.or(output.negate(), level.get(0)));
+			operands.add(f.or(output, level.get(0).negate()));
+		}
+	}
+
+	/**
+	 * Adds clause (x | x$free) of an input or key, which drives no gate. The clause is always satisfiable
+	 * by the auxiliary variable, so it does not constrain x, it only makes x known to the SAT solver.
+	 * Models of solver contain only the known variables, so without the clause x would be missing
+	 * from the distinguishing inputs and keys read from the models.
+	 */
+	public static void encodeUnused(FormulaFactory f, List<Formula> operands, String name){
+		operands.add(f.or(f.variable(name), f.variable(name + "$free")));
+	}
+
+	private static void encodeXor2(FormulaFactory f, List<Formula> operands, Literal a, Literal b, Literal y){
+		operands.add(f.or(a.negate(), b.negate(), y.negate()));
+		operands.add(f.or(a, b, y.negate()));
+		operands.add(f.or(a, b.negate(), y));
+		operands.add(f.or(a.negate(), b, y));
+	}
+
+	private static List<Literal> negate(List<Literal> literals){
+		List<Literal> negated = new ArrayList<>();
+		for (Literal literal : literals)
+			negated.add(literal.negate());
+		return negated;
+	}
+
 	/* Getters */
 
 	public GateType getType() {
@@ -186,6 +248,26 @@ public class Gate{
 	}
 
 	/* Utilities */
+
+	/**
+	 * Gates are equal, if they have the same type, output and inputs, so the gates created from netlist
+	 * at different times can be used as keys of the same map.
+	 */
+	@Override
+	public boolean equals(Object o){
+		if (this == o)
+			return true;
+		if (!(o instanceof Gate))
+			return false;
+		Gate gate = (Gate) o;
+		return this.type == gate.type && this.output.equals(gate.output) && this.inputs.equals(gate.inputs);
+	}
+
+	@Override
+	public int hashCode(){
+		return this.output.hashCode();
+	}
+
 	@Override
 	public String toString(){
 		return "Inputs: " + this.inputs.toString() + "\n" +
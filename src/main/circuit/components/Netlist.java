@@ -0,0 +1,317 @@
+package main.circuit.components;
+
+import java.util.*;
+
+/**
+ * Compact integer-indexed representation of a combinational logic circuit. Every signal has a dense id:
+ * regular inputs come first (sorted by name), key inputs follow (sorted by CustomKeyComparator) and gate
+ * outputs take the rest. Gate g drives the signal getGateSignal(g) and gates are sorted by their topological
+ * level, so evaluating them in id order is always correct. Fan-in and fan-out are stored in compressed
+ * sparse row (CSR) layout, i.e. the fan-in of gate g is fanIn[fanInStart[g] .. fanInStart[g + 1]).
+ * Once built, the netlist is the only storage of circuit structure, Gate objects are created from it
+ * on demand (see asGateList()).
+ */
+public class Netlist {
+
+    private static final GateType[] GATE_TYPES = GateType.values();
+
+    private final String[] signalNames;
+    private final Map<String, Integer> signalIndex;
+    private final int inputCount;
+    private final int keyCount;
+    private final byte[] gateTypes;
+    private final int[] fanInStart;
+    private final int[] fanIn;
+    private final int[] fanOutStart;
+    private final int[] fanOut;
+    private final int[] levels;
+    private final int[] outputs;
+    private final int[] gateOrder;
+
+    private Netlist(String[] signalNames, Map<String, Integer> signalIndex, int inputCount, int keyCount,
+                    byte[] gateTypes, int[] fanInStart, int[] fanIn, int[] levels, int[] outputs, int[] gateOrder) {
+        this.signalNames = signalNames;
+        this.signalIndex = signalIndex;
+        this.inputCount = inputCount;
+        this.keyCount = keyCount;
+        this.gateTypes = gateTypes;
+        this.fanInStart = fanInStart;
+        this.fanIn = fanIn;
+        this.levels = levels;
+        this.outputs = outputs;
+        this.gateOrder = gateOrder;
+
+        // fan-out is a transposition of fan-in
+        this.fanOutStart = new int[signalNames.length + 1];
+        this.fanOut = new int[fanIn.length];
+        for (int source : fanIn)
+            this.fanOutStart[source + 1]++;
+        for (int s = 0; s < signalNames.length; s++)
+            this.fanOutStart[s + 1] += this.fanOutStart[s];
+
+        int[] fill = Arrays.copyOf(this.fanOutStart, signalNames.length);
+        for (int g = 0; g < gateTypes.length; g++) {
+            for (int i = fanInStart[g]; i < fanInStart[g + 1]; i++)
+                this.fanOut[fill[fanIn[i]]++] = g;
+        }
+    }
+
+    /**
+     * Builds the netlist from the gate list of logic circuit.
+     * @param sortedInputs regular input names in the order of their ids
+     * @param sortedKeys key input names in the order of their ids
+     * @param outputNames names of output signals
+     * @param gates gates of logic circuit in arbitrary order
+     * @return an instance of Netlist or null if the circuit contains a combinational cycle, a signal
+     * without a driver or a signal driven by more than one gate
+     */
+    public static Netlist build(List<String> sortedInputs, List<String> sortedKeys,
+                                Collection<String> outputNames, List<Gate> gates) {
+        int primaryCount = sortedInputs.size() + sortedKeys.size();
+        Map<String, Integer> primaryIndex = new HashMap<>();
+        for (String input : sortedInputs)
+            primaryIndex.put(input, primaryIndex.size());
+        for (String key : sortedKeys)
+            primaryIndex.put(key, primaryIndex.size());
+
+        Map<String, Integer> driverIndex = new HashMap<>();
+        for (int g = 0; g < gates.size(); g++) {
+            String output = gates.get(g).getOutput();
+            if (primaryIndex.containsKey(output) || driverIndex.put(output, g) != null)
+                return null;
+        }
+
+        // level of every gate computed by Kahn's algorithm
+        int[] pendingInputs = new int[gates.size()];
+        int[] gateLevel = new int[gates.size()];
+        List<List<Integer>> consumers = new ArrayList<>();
+        for (int g = 0; g < gates.size(); g++)
+            consumers.add(new ArrayList<>());
+
+        for (int g = 0; g < gates.size(); g++) {
+            for (String input : gates.get(g).getInputs()) {
+                Integer driver = driverIndex.get(input);
+                if (driver != null) {
+                    pendingInputs[g]++;
+                    consumers.get(driver).add(g);
+                } else if (!primaryIndex.containsKey(input)) {
+                    return null;
+                }
+            }
+        }
+
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int g = 0; g < gates.size(); g++) {
+            if (pendingInputs[g] == 0) {
+                gateLevel[g] = 1;
+                ready.add(g);
+            }
+        }
+
+        Integer[] order = new Integer[gates.size()];
+        int ordered = 0;
+        while (!ready.isEmpty()) {
+            int g = ready.poll();
+            order[ordered++] = g;
+            for (int consumer : consumers.get(g)) {
+                gateLevel[consumer] = Math.max(gateLevel[consumer], gateLevel[g] + 1);
+                if (--pendingInputs[consumer] == 0)
+                    ready.add(consumer);
+            }
+        }
+
+        if (ordered != gates.size())
+            return null;
+
+        Arrays.sort(order, Comparator.comparingInt(g -> gateLevel[g]));
+
+        String[] signalNames = new String[primaryCount + gates.size()];
+        Map<String, Integer> signalIndex = new HashMap<>(primaryIndex);
+        for (Map.Entry<String, Integer> entry : primaryIndex.entrySet())
+            signalNames[entry.getValue()] = entry.getKey();
+        for (int g = 0; g < order.length; g++) {
+            String output = gates.get(order[g]).getOutput();
+            signalNames[primaryCount + g] = output;
+            signalIndex.put(output, primaryCount + g);
+        }
+
+        byte[] gateTypes = new byte[gates.size()];
+        int[] fanInStart = new int[gates.size() + 1];
+        int[] gateOrder = new int[gates.size()];
+        int[] levels = new int[signalNames.length];
+        for (int g = 0; g < order.length; g++)
+            fanInStart[g + 1] = fanInStart[g] + gates.get(order[g]).getInputs().size();
+
+        int[] fanIn = new int[fanInStart[gates.size()]];
+        for (int g = 0; g < order.length; g++) {
+            Gate gate = gates.get(order[g]);
+            gateTypes[g] = (byte) gate.getType().ordinal();
+            gateOrder[order[g]] = g;
+            levels[primaryCount + g] = gateLevel[order[g]];
+            for (int i = 0; i < gate.getInputs().size(); i++)
+                fanIn[fanInStart[g] + i] = signalIndex.get(gate.getInputs().get(i));
+        }
+
+        int[] outputs = new int[outputNames.size()];
+        int outputCount = 0;
+        for (String output : outputNames) {
+            Integer index = signalIndex.get(output);
+            if (index == null)
+                return null;
+            outputs[outputCount++] = index;
+        }
+        Arrays.sort(outputs);
+
+        return new Netlist(signalNames, signalIndex, sortedInputs.size(), sortedKeys.size(),
+                gateTypes, fanInStart, fanIn, levels, outputs, gateOrder);
+    }
+
+    /* Getters */
+
+    public int getSignalCount() {
+        return this.signalNames.length;
+    }
+
+    public int getGateCount() {
+        return this.gateTypes.length;
+    }
+
+    public int getInputCount() {
+        return this.inputCount;
+    }
+
+    public int getKeyCount() {
+        return this.keyCount;
+    }
+
+    /**
+     * Returns the id of the i-th regular input (in the order of sorted input names).
+     */
+    public int getInputSignal(int i) {
+        return i;
+    }
+
+    /**
+     * Returns the id of the i-th key input (in the order of sorted key names).
+     */
+    public int getKeySignal(int i) {
+        return this.inputCount + i;
+    }
+
+    /**
+     * Returns the id of the signal driven by gate g.
+     */
+    public int getGateSignal(int g) {
+        return this.inputCount + this.keyCount + g;
+    }
+
+    /**
+     * Returns the id of the gate driving the signal or -1 if the signal is a primary input (or unknown).
+     */
+    public int getDrivingGate(int signal) {
+        int g = signal - this.inputCount - this.keyCount;
+        return g < 0 ? -1 : g;
+    }
+
+    public boolean isKeySignal(int signal) {
+        return signal >= this.inputCount && signal < this.inputCount + this.keyCount;
+    }
+
+    /**
+     * Returns the id of the signal with specific name or -1 if such signal does not exist.
+     */
+    public int getSignalIndex(String name) {
+        Integer index = this.signalIndex.get(name);
+        return index == null ? -1 : index;
+    }
+
+    public String getSignalName(int signal) {
+        return this.signalNames[signal];
+    }
+
+    public GateType getGateType(int g) {
+        return GATE_TYPES[this.gateTypes[g]];
+    }
+
+    public int getFanInStart(int g) {
+        return this.fanInStart[g];
+    }
+
+    public int getFanInEnd(int g) {
+        return this.fanInStart[g + 1];
+    }
+
+    /**
+     * Returns the whole fan-in array. Inputs of gate g are stored between getFanInStart(g) and getFanInEnd(g).
+     */
+    public int[] getFanIn() {
+        return this.fanIn;
+    }
+
+    public int getFanOutStart(int signal) {
+        return this.fanOutStart[signal];
+    }
+
+    public int getFanOutEnd(int signal) {
+        return this.fanOutStart[signal + 1];
+    }
+
+    /**
+     * Returns the whole fan-out array. Gates reading the signal are stored between getFanOutStart(signal)
+     * and getFanOutEnd(signal).
+     */
+    public int[] getFanOut() {
+        return this.fanOut;
+    }
+
+    /**
+     * Returns the topological level of the signal. Primary inputs have level 0.
+     */
+    public int getLevel(int signal) {
+        return this.levels[signal];
+    }
+
+    public int getDepth() {
+        return this.gateTypes.length == 0 ? 0 : this.levels[this.levels.length - 1];
+    }
+
+    /**
+     * Returns sorted ids of the output signals.
+     */
+    public int[] getOutputs() {
+        return this.outputs;
+    }
+
+    public boolean isOutputSignal(int signal) {
+        return Arrays.binarySearch(this.outputs, signal) >= 0;
+    }
+
+    /**
+     * Returns the id of gate at the position of the gate list, which the netlist was built from.
+     */
+    public int getGateAt(int position) {
+        return this.gateOrder[position];
+    }
+
+    /**
+     * Creates a Gate object of gate g. The object is a copy, the netlist does not keep it.
+     */
+    public Gate createGate(int g) {
+        String[] inputs = new String[this.fanInStart[g + 1] - this.fanInStart[g]];
+        for (int i = 0; i < inputs.length; i++)
+            inputs[i] = this.signalNames[this.fanIn[this.fanInStart[g] + i]];
+        return new Gate(getGateType(g), this.signalNames[getGateSignal(g)], Arrays.asList(inputs));
+    }
+
+    /**
+     * Returns the gates as a read-only list in the order of the gate list, which the netlist was built from.
+     * Gate objects are created by every call and the netlist does not keep them, so it stays the only storage
+     * of circuit structure. Hot paths should read the arrays of netlist instead.
+     */
+    public List<Gate> asGateList() {
+        List<Gate> gates = new ArrayList<>(getGateCount());
+        for (int position = 0; position < getGateCount(); position++)
+            gates.add(createGate(getGateAt(position)));
+        return Collections.unmodifiableList(gates);
+    }
+}
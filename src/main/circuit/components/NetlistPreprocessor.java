@@ -0,0 +1,240 @@
+package main.circuit.components;
+
+import main.helpers.FormulaFactoryWrapper;
+import org.logicng.formulas.Formula;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.util.*;
+
+/**
+ * Netlist-level simplification performed before the CNF of circuit is created. Gates are visited in topological
+ * order and every signal gets a representative literal (signal id * 2 + negation) or a constant:
+ * <p> constants are propagated through gates (e.g. AND with a zero input is zero) </p>
+ * <p> BUF and NOT gates are absorbed into the polarity of representative literal </p>
+ * <p> AND, NAND, OR and NOR gates are normalized into AND nodes, XOR and XNOR into XOR nodes, and structurally
+ * identical nodes (same type and same sorted fan-in) are merged by structural hashing </p>
+ * <p> nodes outside the fan-in cones of outputs are not encoded </p>
+ * The variable of every node is named by the signal of gate, which created it, so the names of inputs, keys,
+ * outputs and of the remaining internal signals keep their meaning in the CNF.
+ */
+public class NetlistPreprocessor {
+
+    private static final int FALSE = -2;
+    private static final int TRUE = -1;
+
+    private final Netlist netlist;
+    private final int[] representatives;
+    private final GateType[] nodeTypes;
+    private final int[][] nodeFanIn;
+    private final int[] nodeOutputs;
+    private final boolean[] live;
+    private int liveCount;
+
+    /**
+     * Simplifies the netlist, the CNF is created by createCNF().
+     * @param netlist netlist of combinational circuit
+     */
+    public NetlistPreprocessor(Netlist netlist) {
+        this.netlist = netlist;
+        int gateCount = netlist.getGateCount();
+        this.representatives = new int[netlist.getSignalCount()];
+        this.nodeTypes = new GateType[gateCount];
+        this.nodeFanIn = new int[gateCount][];
+        this.nodeOutputs = new int[gateCount];
+        this.live = new boolean[gateCount];
+        this.liveCount = 0;
+
+        for (int s = 0; s < netlist.getInputCount() + netlist.getKeyCount(); s++)
+            this.representatives[s] = 2 * s;
+
+        Map<String, Integer> structuralHashes = new HashMap<>();
+        for (int g = 0; g < gateCount; g++)
+            this.representatives[netlist.getGateSignal(g)] = fold(g, structuralHashes);
+
+        markLiveNodes();
+    }
+
+    /**
+     * Creates the CNF of simplified circuit. Outputs, which were merged with another signal or folded
+     * into a constant, are bound to their representative by an equivalence or a unit clause. Inputs and keys
+     * feeding only the removed logic are kept in the models of SAT solver by Gate.encodeUnused().
+     * @return boolean CNF formula
+     */
+    public Formula createCNF() {
+        FormulaFactory f = FormulaFactoryWrapper.getFormulaFactory();
+        List<Formula> operands = new ArrayList<>();
+        boolean[] encoded = new boolean[this.netlist.getSignalCount()];
+
+        for (int g = 0; g < this.nodeTypes.length; g++) {
+            if (!this.live[g])
+                continue;
+
+            List<Literal> inputs = new ArrayList<>();
+            for (int literal : this.nodeFanIn[g]) {
+                inputs.add(toLiteral(f, literal));
+                encoded[literal >> 1] = true;
+            }
+            int signal = this.netlist.getGateSignal(g);
+            encoded[signal] = true;
+
+            if (this.nodeTypes[g] == GateType.AND)
+                Gate.encodeAnd(f, operands, inputs, toLiteral(f, this.nodeOutputs[g]));
+            else
+                Gate.encodeXor(f, operands, inputs, toLiteral(f, this.nodeOutputs[g]), this.netlist.getSignalName(signal));
+        }
+
+        for (int output : this.netlist.getOutputs()) {
+            int representative = this.representatives[output];
+            if (representative == 2 * output)
+                continue;
+
+            Variable y = f.variable(this.netlist.getSignalName(output));
+            encoded[output] = true;
+            if (representative < 0) {
+                operands.add(representative == TRUE ? y : y.negate());
+            } else {
+                Literal x = toLiteral(f, representative);
+                encoded[representative >> 1] = true;
+                operands.add(f.or(y.negate(), x));
+                operands.add(f.or(y, x.negate()));
+            }
+        }
+
+        for (int s = 0; s < this.netlist.getInputCount() + this.netlist.getKeyCount(); s++) {
+            if (!encoded[s])
+                Gate.encodeUnused(f, operands, this.netlist.getSignalName(s));
+        }
+        return f.and(operands);
+    }
+
+    /* Getters */
+
+    /**
+     * Returns the count of gates (AND and XOR nodes) encoded into the CNF.
+     */
+    public int getGateCount() {
+        return this.liveCount;
+    }
+
+    /* Utilities */
+
+    /**
+     * Computes the representative literal of the signal of gate g from the representatives of its fan-in.
+     */
+    private int fold(int g, Map<String, Integer> structuralHashes) {
+        int start = this.netlist.getFanInStart(g);
+        int[] fanIn = new int[this.netlist.getFanInEnd(g) - start];
+        for (int i = 0; i < fanIn.length; i++)
+            fanIn[i] = this.representatives[this.netlist.getFanIn()[start + i]];
+
+        switch (this.netlist.getGateType(g)) {
+            case BUF:
+                return fanIn[0];
+            case NOT:
+                return fanIn[0] ^ 1;
+            case AND:
+                return foldAnd(g, fanIn, 0, 0, structuralHashes);
+            case NAND:
+                return foldAnd(g, fanIn, 0, 1, structuralHashes);
+            case OR:
+                // y = x1 | x2 ... is folded as ~y = ~x1 & ~x2 ...
+                return foldAnd(g, fanIn, 1, 1, structuralHashes);
+            case NOR:
+                return foldAnd(g, fanIn, 1, 0, structuralHashes);
+            case XOR:
+                return foldXor(g, fanIn, 0, structuralHashes);
+            case XNOR:
+                return foldXor(g, fanIn, 1, structuralHashes);
+            default:
+                throw new IllegalStateException("Unable to preprocess gate " + this.netlist.getSignalName(this.netlist.getGateSignal(g)));
+        }
+    }
+
+    private int foldAnd(int g, int[] fanIn, int inputPolarity, int outputPolarity, Map<String, Integer> structuralHashes) {
+        TreeSet<Integer> literals = new TreeSet<>();
+        for (int literal : fanIn) {
+            literal ^= inputPolarity;
+            if (literal == TRUE)
+                continue;
+            if (literal == FALSE || literals.contains(literal ^ 1))
+                return FALSE ^ outputPolarity;
+            literals.add(literal);
+        }
+
+        if (literals.isEmpty())
+            return TRUE ^ outputPolarity;
+        if (literals.size() == 1)
+            return literals.first() ^ outputPolarity;
+        return createNode(g, GateType.AND, literals, outputPolarity, structuralHashes);
+    }
+
+    private int foldXor(int g, int[] fanIn, int parity, Map<String, Integer> structuralHashes) {
+        TreeSet<Integer> variables = new TreeSet<>();
+        for (int literal : fanIn) {
+            if (literal < 0) {
+                parity ^= (literal == TRUE) ? 1 : 0;
+                continue;
+            }
+            parity ^= literal & 1;
+            // x ^ x = 0
+            if (!variables.remove(literal & ~1))
+                variables.add(literal & ~1);
+        }
+
+        if (variables.isEmpty())
+            return FALSE ^ parity;
+        if (variables.size() == 1)
+            return variables.first() ^ parity;
+        return createNode(g, GateType.XOR, variables, parity, structuralHashes);
+    }
+
+    /**
+     * Returns the literal of existing node with the same structure or creates a new node named by the signal
+     * of gate g. The variable of node is negated if needed, so it always keeps the value of the original signal.
+     */
+    private int createNode(int g, GateType type, TreeSet<Integer> fanIn, int polarity, Map<String, Integer> structuralHashes) {
+        String key = type + fanIn.toString();
+        Integer existing = structuralHashes.get(key);
+        if (existing != null)
+            return existing ^ polarity;
+
+        int output = (2 * this.netlist.getGateSignal(g)) ^ polarity;
+        this.nodeTypes[g] = type;
+        this.nodeFanIn[g] = new int[fanIn.size()];
+        int i = 0;
+        for (int literal : fanIn)
+            this.nodeFanIn[g][i++] = literal;
+        this.nodeOutputs[g] = output;
+        structuralHashes.put(key, output);
+        return output ^ polarity;
+    }
+
+    /**
+     * Marks the nodes in the fan-in cones of outputs.
+     */
+    private void markLiveNodes() {
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (int output : this.netlist.getOutputs())
+            pending.push(this.representatives[output]);
+
+        while (!pending.isEmpty()) {
+            int literal = pending.pop();
+            if (literal < 0)
+                continue;
+            int g = this.netlist.getDrivingGate(literal >> 1);
+            if (g < 0 || this.live[g])
+                continue;
+
+            this.live[g] = true;
+            this.liveCount++;
+            for (int input : this.nodeFanIn[g])
+                pending.push(input);
+        }
+    }
+
+    private Literal toLiteral(FormulaFactory f, int literal) {
+        return f.literal(this.netlist.getSignalName(literal >> 1), (literal & 1) == 0);
+    }
+}
@@ -0,0 +1,84 @@
+package main.circuit.simulation;
+
+import main.circuit.components.Netlist;
+import main.helpers.FormulaFactoryWrapper;
+import org.logicng.datastructures.Assignment;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Variable;
+
+import java.util.Collection;
+
+/**
+ * Result of batch evaluation. Holds the packed values of every signal of the circuit for every vector
+ * of the batch. Rows are indexed by signal ids of the netlist.
+ */
+public class BatchResult {
+
+    private final Netlist netlist;
+    private final BitMatrix values;
+
+    BatchResult(Netlist netlist, BitMatrix values) {
+        this.netlist = netlist;
+        this.values = values;
+    }
+
+    /**
+     * Returns the packed values of the signal with specific name or null if such signal does not exist.
+     */
+    public long[] getSignalRow(String name) {
+        int signal = this.netlist.getSignalIndex(name);
+        return signal == -1 ? null : this.values.getRow(signal);
+    }
+
+    /**
+     * Returns the packed values of circuit outputs. The rows follow the order of Netlist.getOutputs().
+     */
+    public BitMatrix getOutputs() {
+        int[] outputs = this.netlist.getOutputs();
+        long[][] rows = new long[outputs.length][];
+        for (int i = 0; i < outputs.length; i++)
+            rows[i] = this.values.getRow(outputs[i]);
+        return new BitMatrix(rows, this.values.getColumnCount());
+    }
+
+    /**
+     * Produces an assignment of circuit variables for one vector of the batch, in the same form as
+     * AbstractLogicCircuit.evaluate() does.
+     * @param vector index of vector (column)
+     * @param variablesFilter filter of variables. If null, method returns an assignment of each variable.
+     */
+    public Assignment getAssignment(int vector, Collection<Variable> variablesFilter) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Assignment assignment = new Assignment();
+
+        if (variablesFilter == null) {
+            for (int s = 0; s < this.netlist.getSignalCount(); s++)
+                assignment.addLiteral(ff.literal(this.netlist.getSignalName(s), this.values.get(s, vector)));
+            return assignment;
+        }
+
+        for (Variable variable : variablesFilter) {
+            int signal = this.netlist.getSignalIndex(variable.name());
+            if (signal != -1)
+                assignment.addLiteral(ff.literal(variable.name(), this.values.get(signal, vector)));
+        }
+        return assignment;
+    }
+
+    /* Getters */
+
+    /**
+     * Returns packed values of all signals (inputs, keys and internal nodes).
+     */
+    public BitMatrix getValues() {
+        return this.values;
+    }
+
+    public Netlist getNetlist() {
+        return this.netlist;
+    }
+
+    public int getVectorCount() {
+        return this.values.getColumnCount();
+    }
+}
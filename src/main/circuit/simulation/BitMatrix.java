@@ -0,0 +1,137 @@
+package main.circuit.simulation;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Packed bit matrix used for batch evaluation of logic circuits. Each row belongs to one signal
+ * (input, key or gate output) and each column to one vector, so the row of a signal holds its values
+ * for all vectors of the batch, 64 vectors per long word (vector v is stored in bit v % 64 of word v / 64).
+ */
+public class BitMatrix {
+
+    private final long[][] rows;
+    private final int columns;
+
+    /**
+     * Creates a matrix filled with zeros.
+     * @param rows the number of rows (signals)
+     * @param columns the number of columns (vectors)
+     */
+    public BitMatrix(int rows, int columns) {
+        this.rows = new long[rows][wordCount(columns)];
+        this.columns = columns;
+    }
+
+    BitMatrix(long[][] rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * Creates a matrix filled with random bits.
+     */
+    public static BitMatrix random(int rows, int columns, Random random) {
+        BitMatrix matrix = new BitMatrix(rows, columns);
+        for (long[] row : matrix.rows) {
+            for (int w = 0; w < row.length; w++)
+                row[w] = random.nextLong();
+            matrix.clearPadding(row);
+        }
+        return matrix;
+    }
+
+    /**
+     * Returns the number of long words needed for the specific number of columns.
+     */
+    public static int wordCount(int columns) {
+        return (columns + CircuitSimulator.PATTERNS_PER_WORD - 1) / CircuitSimulator.PATTERNS_PER_WORD;
+    }
+
+    public boolean get(int row, int column) {
+        return (this.rows[row][column >>> 6] & (1L << column)) != 0;
+    }
+
+    public void set(int row, int column, boolean value) {
+        if (value)
+            this.rows[row][column >>> 6] |= 1L << column;
+        else
+            this.rows[row][column >>> 6] &= ~(1L << column);
+    }
+
+    /**
+     * Returns the whole column as an integer vector of ones and zeros.
+     */
+    public int[] getColumn(int column) {
+        int[] values = new int[this.rows.length];
+        for (int r = 0; r < this.rows.length; r++)
+            values[r] = get(r, column) ? 1 : 0;
+        return values;
+    }
+
+    /**
+     * Sets the whole column from an integer vector of ones and zeros.
+     */
+    public void setColumn(int column, int[] values) {
+        if (values.length != this.rows.length)
+            throw new IllegalArgumentException("Invalid length of column: " + values.length +
+                    ", required " + this.rows.length + ".");
+        for (int r = 0; r < this.rows.length; r++)
+            set(r, column, values[r] == 1);
+    }
+
+    /**
+     * Sets every column of the row to the same value.
+     */
+    public void fillRow(int row, boolean value) {
+        Arrays.fill(this.rows[row], value ? -1L : 0L);
+        clearPadding(this.rows[row]);
+    }
+
+    /**
+     * Counts the columns in which the row has value 1.
+     */
+    public int countOnes(int row) {
+        int count = 0;
+        for (long word : this.rows[row])
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * Returns the mask of valid columns in the specific word of row.
+     */
+    public long wordMask(int word) {
+        int remaining = this.columns - word * CircuitSimulator.PATTERNS_PER_WORD;
+        return remaining >= CircuitSimulator.PATTERNS_PER_WORD ? -1L : (1L << remaining) - 1;
+    }
+
+    /**
+     * Clears the bits of last word which do not belong to any column.
+     */
+    void clearPadding(long[] row) {
+        if (row.length > 0)
+            row[row.length - 1] &= wordMask(row.length - 1);
+    }
+
+    /* Getters */
+
+    /**
+     * Returns the packed row. Changes of the returned array are reflected in the matrix.
+     */
+    public long[] getRow(int row) {
+        return this.rows[row];
+    }
+
+    public int getRowCount() {
+        return this.rows.length;
+    }
+
+    public int getColumnCount() {
+        return this.columns;
+    }
+
+    public int getWordCount() {
+        return wordCount(this.columns);
+    }
+}
@@ -0,0 +1,203 @@
+package main.circuit.simulation;
+
+import main.circuit.components.GateType;
+import main.circuit.components.Netlist;
+import main.helpers.utilities.Protocol;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Turns a netlist into a generated Java class with straight-line bitwise code in topological order.
+ * The class is compiled in-process by the system Java compiler and the JIT can then optimize the whole
+ * netlist as plain arithmetic. The generated code is split into several methods, so even large circuits
+ * stay under the size limit of methods compiled by JIT.
+ * Compiled classes are cached by the structure fingerprint of circuit, so structurally identical circuits are
+ * compiled only once and a cached kernel is found without generating its code.
+ * The cache keeps only the recently compiled kernels, so long runs over many circuits do not retain all of their classes.
+ */
+public class CircuitCompiler {
+
+    private static final String CLASS_PREFIX = "CompiledCircuit_";
+    private static final int FAN_IN_PER_METHOD = 400;
+    private static final int CACHE_CAPACITY = 16;
+    // least recently used kernels are evicted, circuits keep their own kernels in their simulators
+    private static final Map<String, Consumer<long[]>> cache = new LinkedHashMap<String, Consumer<long[]>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Consumer<long[]>> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    /**
+     * Compiles the netlist into a kernel which evaluates all gates of the circuit. The kernel accepts
+     * the array of signal values (indexed by netlist ids) with the values of primary inputs already set.
+     * The code is generated only if no kernel of the same structure is cached.
+     * @param netlist netlist of logic circuit
+     * @param fingerprint structure fingerprint of the circuit (see AbstractLogicCircuit.getStructureFingerprint()),
+     *                    equal fingerprints have to mean equal netlists
+     * @return compiled kernel or null if the Java compiler is not available or the compilation failed
+     */
+    public static synchronized Consumer<long[]> compile(Netlist netlist, String fingerprint) {
+        String className = CLASS_PREFIX + fingerprint;
+
+        Consumer<long[]> kernel = cache.get(className);
+        if (kernel != null)
+            return kernel;
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            Protocol.printWarningMessage("Java compiler is not available (running on JRE?). " +
+                    "Circuit will be evaluated by interpreted simulator.");
+            return null;
+        }
+
+        String source = "public final class " + className + " implements java.util.function.Consumer<long[]> {\n" +
+                generateBody(netlist) + "}\n";
+
+        try {
+            kernel = compileSource(compiler, className, source);
+        } catch (ReflectiveOperationException | IllegalStateException e) {
+            Protocol.printWarningMessage("Unable to compile circuit evaluator: " + e.getMessage());
+            return null;
+        }
+
+        cache.put(className, kernel);
+        return kernel;
+    }
+
+    /**
+     * Generates the methods of the evaluator class. Values produced inside a method are kept in local
+     * variables, values from previous methods are read from the array.
+     */
+    private static String generateBody(Netlist netlist) {
+        StringBuilder accept = new StringBuilder("    public void accept(long[] v) {\n");
+        StringBuilder methods = new StringBuilder();
+        Set<Integer> locals = new HashSet<>();
+        int[] fanIn = netlist.getFanIn();
+        int methodCount = 0;
+        int methodFanIn = FAN_IN_PER_METHOD;
+
+        for (int g = 0; g < netlist.getGateCount(); g++) {
+            if (methodFanIn >= FAN_IN_PER_METHOD) {
+                if (methodCount > 0)
+                    methods.append("    }\n");
+                accept.append("        m").append(methodCount).append("(v);\n");
+                methods.append("    private static void m").append(methodCount).append("(long[] v) {\n");
+                methodCount++;
+                methodFanIn = 0;
+                locals.clear();
+            }
+
+            int output = netlist.getGateSignal(g);
+            List<String> operands = new ArrayList<>();
+            for (int i = netlist.getFanInStart(g); i < netlist.getFanInEnd(g); i++)
+                operands.add(locals.contains(fanIn[i]) ? "s" + fanIn[i] : "v[" + fanIn[i] + "]");
+
+            methods.append("        long s").append(output).append(" = ")
+                    .append(expressionOf(netlist.getGateType(g), operands))
+                    .append("; v[").append(output).append("] = s").append(output).append(";\n");
+
+            locals.add(output);
+            methodFanIn += netlist.getFanInEnd(g) - netlist.getFanInStart(g);
+        }
+
+        if (methodCount > 0)
+            methods.append("    }\n");
+        accept.append("    }\n");
+
+        return accept.append(methods).toString();
+    }
+
+    /**
+     * Creates a Java expression computing the output of gate from its operands.
+     */
+    private static String expressionOf(GateType type, List<String> operands) {
+        String expression = String.join(" " + operatorOf(type) + " ", operands);
+        return type.isNeg() ? "~(" + expression + ")" : expression;
+    }
+
+    private static String operatorOf(GateType type) {
+        switch (type) {
+            case AND:
+            case NAND:
+                return "&";
+            case OR:
+            case NOR:
+                return "|";
+            case XOR:
+            case XNOR:
+                return "^";
+            case NOT:
+            case BUF:
+                return "";
+            default:
+                throw new IllegalStateException("Unable to compile gate of type " + type + ".");
+        }
+    }
+
+    /**
+     * Compiles the source in memory and loads the class by a dedicated class loader.
+     */
+    @SuppressWarnings("unchecked")
+    private static Consumer<long[]> compileSource(JavaCompiler compiler, String className, String source)
+            throws ReflectiveOperationException {
+        Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> options = Arrays.asList("-g:none", "-nowarn");
+        Boolean success;
+        // file manager keeps the archives of class path open, it is closed after every compilation
+        try (StandardJavaFileManager standardManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+             JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(standardManager) {
+                 @Override
+                 public JavaFileObject getJavaFileForOutput(Location location, String name,
+                                                            JavaFileObject.Kind kind, FileObject sibling) {
+                     return new SimpleJavaFileObject(URI.create("mem:///" + name + kind.extension), kind) {
+                         @Override
+                         public OutputStream openOutputStream() {
+                             ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                             classes.put(name, bytes);
+                             return bytes;
+                         }
+                     };
+                 }
+             }) {
+            JavaFileObject sourceFile = new SimpleJavaFileObject(
+                    URI.create("string:///" + className + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return source;
+                }
+            };
+
+            success = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    Collections.singletonList(sourceFile)).call();
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to close the file manager: " + e.getMessage());
+        }
+
+        if (success == null || !success || !classes.containsKey(className)) {
+            String reason = diagnostics.getDiagnostics().isEmpty() ?
+                    "unknown error" : diagnostics.getDiagnostics().get(0).getMessage(null);
+            throw new IllegalStateException(reason);
+        }
+
+        ClassLoader loader = new ClassLoader(CircuitCompiler.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                ByteArrayOutputStream bytes = classes.get(name);
+                if (bytes == null)
+                    throw new ClassNotFoundException(name);
+                return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+            }
+        };
+
+        return (Consumer<long[]>) loader.loadClass(className).getDeclaredConstructor().newInstance();
+    }
+}
@@ -0,0 +1,279 @@
+package main.circuit.simulation;
+
+import main.circuit.components.GateType;
+import main.circuit.components.Netlist;
+import main.helpers.FormulaFactoryWrapper;
+import org.logicng.datastructures.Assignment;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Forward simulator of a combinational logic circuit. The gates of the netlist are already levelized
+ * into topological order and every signal is represented by a 64-bit word, so a single pass through
+ * the gate list evaluates 64 independent input patterns (one pattern per bit position).
+ * Single words are evaluated either by an interpreted loop over the netlist or by a kernel generated
+ * by CircuitCompiler. Batches are always evaluated gate by gate, which keeps the rows in cache.
+ */
+public class CircuitSimulator {
+
+    public static final int PATTERNS_PER_WORD = 64;
+
+    private final Netlist netlist;
+    private Consumer<long[]> kernel;
+
+    public CircuitSimulator(Netlist netlist) {
+        this.netlist = netlist;
+        this.kernel = null;
+    }
+
+    /**
+     * Evaluates 64 input patterns at once. The i-th bit of each word belongs to the i-th pattern.
+     * @param inputWords one word per regular input (in the order of sorted input names)
+     * @param keyWords one word per key input (in the order of sorted key names), null for zero key
+     * @return the value of every signal of the circuit, indexed by signal id of the netlist
+     */
+    public long[] simulate(long[] inputWords, long[] keyWords) {
+        if (inputWords.length != this.netlist.getInputCount())
+            throw new IllegalArgumentException("Invalid amount of input words: " +
+                    inputWords.length + ", required " + this.netlist.getInputCount() + ".");
+        if (keyWords != null && keyWords.length != this.netlist.getKeyCount())
+            throw new IllegalArgumentException("Invalid amount of key words: " +
+                    keyWords.length + ", required " + this.netlist.getKeyCount() + ".");
+
+        long[] values = new long[this.netlist.getSignalCount()];
+        System.arraycopy(inputWords, 0, values, this.netlist.getInputSignal(0), inputWords.length);
+        if (keyWords != null)
+            System.arraycopy(keyWords, 0, values, this.netlist.getKeySignal(0), keyWords.length);
+
+        propagate(values);
+        return values;
+    }
+
+    /**
+     * Simulates 64 input patterns and opens an incremental session over the computed values.
+     * @param inputWords one word per regular input (in the order of sorted input names)
+     * @param keyWords one word per key input (in the order of sorted key names), null for zero key
+     */
+    public SimulationSession openSession(long[] inputWords, long[] keyWords) {
+        return new SimulationSession(this.netlist, simulate(inputWords, keyWords));
+    }
+
+    /**
+     * Evaluates every gate in topological order. Values of primary inputs have to be already set.
+     */
+    public void propagate(long[] values) {
+        if (this.kernel != null) {
+            this.kernel.accept(values);
+            return;
+        }
+
+        int[] fanIn = this.netlist.getFanIn();
+        for (int g = 0; g < this.netlist.getGateCount(); g++) {
+            values[this.netlist.getGateSignal(g)] = evaluateGate(this.netlist.getGateType(g), fanIn,
+                    this.netlist.getFanInStart(g), this.netlist.getFanInEnd(g), values);
+        }
+    }
+
+    /**
+     * Computes the output word of a single gate from the words of its inputs.
+     * @param type type of gate
+     * @param fanIn fan-in array of netlist
+     * @param start first position of gate inputs in fanIn
+     * @param end position after the last gate input in fanIn
+     * @param values current values of all signals
+     */
+    public static long evaluateGate(GateType type, int[] fanIn, int start, int end, long[] values) {
+        long result = values[fanIn[start]];
+        switch (type) {
+            case AND:
+            case NAND:
+                for (int i = start + 1; i < end; i++)
+                    result &= values[fanIn[i]];
+                break;
+            case OR:
+            case NOR:
+                for (int i = start + 1; i < end; i++)
+                    result |= values[fanIn[i]];
+                break;
+            case XOR:
+            case XNOR:
+                for (int i = start + 1; i < end; i++)
+                    result ^= values[fanIn[i]];
+                break;
+            case NOT:
+            case BUF:
+                break;
+            default:
+                throw new IllegalStateException("Unable to simulate gate of type " + type + ".");
+        }
+        return type.isNeg() ? ~result : result;
+    }
+
+    /**
+     * Evaluates a batch of vectors with the same key for every vector.
+     * @param inputs packed input vectors, one row per regular input (in the order of sorted input names)
+     * @param key fixed key as a vector of ones and zeros (in the order of sorted key names), null for zero key
+     * @return packed values of every signal for every vector
+     */
+    public BatchResult simulateBatch(BitMatrix inputs, int[] key) {
+        if (key != null && key.length != this.netlist.getKeyCount())
+            throw new IllegalArgumentException("Invalid length of key: " +
+                    key.length + ", required " + this.netlist.getKeyCount() + ".");
+
+        BitMatrix keys = new BitMatrix(this.netlist.getKeyCount(), inputs.getColumnCount());
+        for (int k = 0; key != null && k < key.length; k++)
+            keys.fillRow(k, key[k] == 1);
+
+        return simulateBatch(inputs, keys);
+    }
+
+    /**
+     * Evaluates a batch of vectors, each one with its own key.
+     * @param inputs packed input vectors, one row per regular input (in the order of sorted input names)
+     * @param keys packed keys, one row per key input (in the order of sorted key names), null for zero key
+     * @return packed values of every signal for every vector
+     */
+    public BatchResult simulateBatch(BitMatrix inputs, BitMatrix keys) {
+        if (inputs.getRowCount() != this.netlist.getInputCount())
+            throw new IllegalArgumentException("Invalid amount of input rows: " +
+                    inputs.getRowCount() + ", required " + this.netlist.getInputCount() + ".");
+        if (keys != null && keys.getRowCount() != this.netlist.getKeyCount())
+            throw new IllegalArgumentException("Invalid amount of key rows: " +
+                    keys.getRowCount() + ", required " + this.netlist.getKeyCount() + ".");
+        if (keys != null && keys.getColumnCount() != inputs.getColumnCount())
+            throw new IllegalArgumentException("Different number of input vectors and keys.");
+
+        int words = inputs.getWordCount();
+        long[][] rows = new long[this.netlist.getSignalCount()][];
+        BitMatrix values = new BitMatrix(rows, inputs.getColumnCount());
+
+        for (int i = 0; i < this.netlist.getInputCount(); i++)
+            rows[this.netlist.getInputSignal(i)] = inputs.getRow(i).clone();
+        for (int k = 0; k < this.netlist.getKeyCount(); k++)
+            rows[this.netlist.getKeySignal(k)] = (keys == null) ? new long[words] : keys.getRow(k).clone();
+
+        // gate-major order, every gate is evaluated for all words of the batch at once
+        int[] fanIn = this.netlist.getFanIn();
+        for (int g = 0; g < this.netlist.getGateCount(); g++) {
+            long[] output = evaluateGateBatch(this.netlist.getGateType(g), fanIn,
+                    this.netlist.getFanInStart(g), this.netlist.getFanInEnd(g), rows);
+            values.clearPadding(output);
+            rows[this.netlist.getGateSignal(g)] = output;
+        }
+
+        return new BatchResult(this.netlist, values);
+    }
+
+    /**
+     * Computes the packed output row of a single gate from the packed rows of its inputs.
+     */
+    private static long[] evaluateGateBatch(GateType type, int[] fanIn, int start, int end, long[][] rows) {
+        long[] result = rows[fanIn[start]].clone();
+        switch (type) {
+            case AND:
+            case NAND:
+                for (int i = start + 1; i < end; i++) {
+                    long[] input = rows[fanIn[i]];
+                    for (int w = 0; w < result.length; w++)
+                        result[w] &= input[w];
+                }
+                break;
+            case OR:
+            case NOR:
+                for (int i = start + 1; i < end; i++) {
+                    long[] input = rows[fanIn[i]];
+                    for (int w = 0; w < result.length; w++)
+                        result[w] |= input[w];
+                }
+                break;
+            case XOR:
+            case XNOR:
+                for (int i = start + 1; i < end; i++) {
+                    long[] input = rows[fanIn[i]];
+                    for (int w = 0; w < result.length; w++)
+                        result[w] ^= input[w];
+                }
+                break;
+            case NOT:
+            case BUF:
+                break;
+            default:
+                throw new IllegalStateException("Unable to simulate gate of type " + type + ".");
+        }
+
+        if (type.isNeg()) {
+            for (int w = 0; w < result.length; w++)
+                result[w] = ~result[w];
+        }
+        return result;
+    }
+
+    /**
+     * Produces an assignment of circuit variables for a single input pattern. The result is the same
+     * as the model of the circuit CNF found by SAT solver under the input and key assumptions.
+     * @param inputLiterals input variables with defined boolean values
+     * @param keyLiterals key variables with defined boolean values, null for zero key
+     * @param outputVariables filter of variables. If null, method returns an assignment of each variable.
+     * @return an assignment of either each variable or just the filtered variables
+     */
+    public Assignment evaluate(Collection<Literal> inputLiterals, Collection<Literal> keyLiterals,
+                               Collection<Variable> outputVariables) {
+        long[] values = new long[this.netlist.getSignalCount()];
+        loadLiterals(inputLiterals, values);
+        if (keyLiterals != null)
+            loadLiterals(keyLiterals, values);
+
+        propagate(values);
+
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Assignment assignment = new Assignment();
+
+        if (outputVariables == null) {
+            for (int i = 0; i < values.length; i++)
+                assignment.addLiteral(ff.literal(this.netlist.getSignalName(i), (values[i] & 1L) != 0));
+            return assignment;
+        }
+
+        for (Variable variable : outputVariables) {
+            int index = this.netlist.getSignalIndex(variable.name());
+            if (index != -1)
+                assignment.addLiteral(ff.literal(variable.name(), (values[index] & 1L) != 0));
+        }
+        return assignment;
+    }
+
+    /**
+     * Sets the first pattern of every signal defined by the literals. Unknown literals are ignored.
+     */
+    private void loadLiterals(Collection<Literal> literals, long[] values) {
+        for (Literal literal : literals) {
+            int index = this.netlist.getSignalIndex(literal.name());
+            if (index != -1)
+                values[index] = literal.phase() ? 1L : 0L;
+        }
+    }
+
+    /* Getters */
+
+    public Netlist getNetlist() {
+        return this.netlist;
+    }
+
+    public boolean isCompiled() {
+        return this.kernel != null;
+    }
+
+    /* Setters */
+
+    /**
+     * Sets the kernel generated by CircuitCompiler for the netlist of this simulator.
+     * Null switches the simulator back to the interpreted evaluation.
+     */
+    public void setKernel(Consumer<long[]> kernel) {
+        this.kernel = kernel;
+    }
+}
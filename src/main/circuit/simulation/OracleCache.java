@@ -0,0 +1,391 @@
+package main.circuit.simulation;
+
+import main.helpers.FormulaFactoryWrapper;
+import main.helpers.utilities.Protocol;
+import org.logicng.datastructures.Assignment;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Memoized responses of circuit used as oracle. Input and key vector is packed into bit words (inputs in the
+ * order of sorted input names followed by keys in the order of sorted key names) and mapped to the packed
+ * values of all outputs. Memory is bounded by the number of entries, the least recently used entry is evicted.
+ * Optionally the responses are stored in a binary file, so they can be reused by later runs on the same circuit.
+ * Responses are appended to the file when they enter the cache, a vector evicted and requested again is appended
+ * repeatedly. Such repeated records are removed when the file is loaded by the next run.
+ * Methods are synchronized, the cache can be shared by threads evaluating the same circuit.
+ */
+public class OracleCache {
+
+    private static final int MAGIC = 0x4f524331;    // "ORC1"
+
+    private final List<String> outputNames;
+    private final Map<String, Integer> vectorIndex;
+    private final Map<String, Integer> outputIndex;
+    private final int inputCount;
+    private final int vectorWords;
+    private final int outputWords;
+
+    private final int capacity;
+    private final LinkedHashMap<PackedVector, long[]> entries;
+    private final File storeFile;
+    private DataOutputStream store;
+    private boolean storeAppendable;
+    private boolean storeClosed;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates the cache and loads the responses from store file, if it exists.
+     * @param inputNames sorted names of regular inputs
+     * @param keyNames sorted names of key inputs
+     * @param outputNames names of outputs
+     * @param capacity maximum number of cached responses
+     * @param storeFile file with stored responses, null for cache in memory only
+     */
+    public OracleCache(List<String> inputNames, List<String> keyNames, Collection<String> outputNames,
+                       int capacity, File storeFile) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity of oracle cache has to be positive.");
+
+        this.outputNames = new ArrayList<>(outputNames);
+        Collections.sort(this.outputNames);
+        this.vectorIndex = new HashMap<>();
+        for (int i = 0; i < inputNames.size(); i++)
+            this.vectorIndex.put(inputNames.get(i), i);
+        for (int i = 0; i < keyNames.size(); i++)
+            this.vectorIndex.put(keyNames.get(i), inputNames.size() + i);
+        this.outputIndex = new HashMap<>();
+        for (int i = 0; i < this.outputNames.size(); i++)
+            this.outputIndex.put(this.outputNames.get(i), i);
+        this.inputCount = inputNames.size();
+        this.vectorWords = (inputNames.size() + keyNames.size() + 63) >>> 6;
+        this.outputWords = (this.outputNames.size() + 63) >>> 6;
+
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<PackedVector, long[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PackedVector, long[]> eldest) {
+                return size() > OracleCache.this.capacity;
+            }
+        };
+        this.storeFile = storeFile;
+        this.store = null;
+        this.storeAppendable = false;
+        this.storeClosed = storeFile == null;
+        this.hits = 0;
+        this.misses = 0;
+
+        if (storeFile != null)
+            loadStore();
+    }
+
+    /**
+     * Packs the input and key literals into a vector. Missing literals are considered to be zero.
+     */
+    public long[] packVector(Collection<Literal> inputLiterals, Collection<Literal> keyLiterals) {
+        long[] vector = new long[this.vectorWords];
+        packLiterals(inputLiterals, vector);
+        if (keyLiterals != null)
+            packLiterals(keyLiterals, vector);
+        return vector;
+    }
+
+    private void packLiterals(Collection<Literal> literals, long[] vector) {
+        for (Literal l : literals) {
+            Integer index = this.vectorIndex.get(l.name());
+            if (index != null && l.phase())
+                vector[index >>> 6] |= 1L << index;
+        }
+    }
+
+    /**
+     * Returns the cached response for a vector or null, if it is not cached.
+     */
+    public synchronized Assignment get(long[] vector, Collection<Variable> outputVariables) {
+        long[] outputs = this.entries.get(new PackedVector(vector));
+        if (outputs == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return unpackOutputs(outputs, outputVariables);
+    }
+
+    /**
+     * Stores the response of oracle for a vector.
+     * @param outputs assignment of every output
+     * @param outputVariables filter of output variables for the returned response
+     * @return the stored response restricted to output variables
+     */
+    public synchronized Assignment put(long[] vector, Assignment outputs, Collection<Variable> outputVariables) {
+        long[] packed = new long[this.outputWords];
+        for (Literal l : outputs.literals()) {
+            Integer index = this.outputIndex.get(l.name());
+            if (index != null && l.phase())
+                packed[index >>> 6] |= 1L << index;
+        }
+        PackedVector key = new PackedVector(vector.clone());
+        if (!this.storeClosed && !this.entries.containsKey(key))
+            appendToStore(key.words, packed);
+        this.entries.put(key, packed);
+        return unpackOutputs(packed, outputVariables);
+    }
+
+    private Assignment unpackOutputs(long[] outputs, Collection<Variable> outputVariables) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Assignment assignment = new Assignment();
+        for (Variable variable : outputVariables) {
+            Integer index = this.outputIndex.get(variable.name());
+            if (index != null)
+                assignment.addLiteral(ff.literal(variable.name(), (outputs[index >>> 6] & (1L << index)) != 0));
+        }
+        return assignment;
+    }
+
+    /**
+     * Checks whether all variables of filter are outputs, so the response can be created from the cache.
+     */
+    public boolean coversOutputs(Collection<Variable> outputVariables) {
+        if (outputVariables == null)
+            return false;
+        for (Variable variable : outputVariables) {
+            if (!this.outputIndex.containsKey(variable.name()))
+                return false;
+        }
+        return true;
+    }
+
+    public List<Variable> getOutputVariables() {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        List<Variable> variables = new ArrayList<>();
+        for (String name : this.outputNames)
+            variables.add(ff.variable(name));
+        return variables;
+    }
+
+    /* Store */
+
+    /**
+     * Loads the stored responses into the cache. Store with repeated vectors or with incomplete last record
+     * is compacted. Store with different circuit dimensions is rewritten on the first write.
+     */
+    private void loadStore() {
+        if (!this.storeFile.isFile())
+            return;
+        boolean compact;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.storeFile)))) {
+            if (!readHeader(in)) {
+                Protocol.printWarningMessage("Oracle store " + this.storeFile.getName() + " does not match the circuit, it will be overwritten.");
+                return;
+            }
+            compact = !readRecords(in);
+        } catch (IOException e) {
+            Protocol.printWarningMessage("Unable to read oracle store " + this.storeFile.getName() + ": " + e.getMessage());
+            return;
+        }
+        this.storeAppendable = true;
+        if (compact)
+            compactStore();
+    }
+
+    /**
+     * Rewrites the store without repeated vectors and without incomplete last record. Records are copied
+     * from the old file, so the records evicted from the cache are kept. If the store cannot be compacted,
+     * it is closed, records appended to it would be misaligned.
+     */
+    private void compactStore() {
+        File compacted = new File(this.storeFile.getPath() + ".tmp");
+        Set<PackedVector> written = new HashSet<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.storeFile)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compacted)))) {
+            readHeader(in);
+            writeHeader(out);
+            long[] vector = new long[this.vectorWords];
+            long[] outputs = new long[this.outputWords];
+            try {
+                while (readRecord(in, vector, outputs)) {
+                    if (written.add(new PackedVector(vector.clone())))
+                        writeRecord(out, vector, outputs);
+                }
+            } catch (EOFException e) {
+                // incomplete last record is dropped
+            }
+        } catch (IOException e) {
+            Protocol.printWarningMessage("Unable to compact oracle store " + this.storeFile.getName() + ": " + e.getMessage());
+            closeStore();
+            return;
+        }
+        if (!compacted.renameTo(this.storeFile) && !(this.storeFile.delete() && compacted.renameTo(this.storeFile))) {
+            Protocol.printWarningMessage("Unable to replace oracle store " + this.storeFile.getName() + " by its compacted copy.");
+            closeStore();
+        }
+    }
+
+    /**
+     * Opens the store for writing. New store starts with the header and the responses already in cache.
+     */
+    private void openStore() throws IOException {
+        File directory = this.storeFile.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("cannot create directory " + directory);
+        this.store = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.storeFile, this.storeAppendable)));
+        if (!this.storeAppendable) {
+            writeHeader(this.store);
+            for (Map.Entry<PackedVector, long[]> entry : this.entries.entrySet())
+                writeRecord(this.store, entry.getKey().words, entry.getValue());
+            this.storeAppendable = true;
+        }
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(this.inputCount);
+        out.writeInt(this.vectorIndex.size() - this.inputCount);
+        out.writeInt(this.outputNames.size());
+    }
+
+    private boolean readHeader(DataInputStream in) throws IOException {
+        return in.readInt() == MAGIC
+                && in.readInt() == this.inputCount
+                && in.readInt() == this.vectorIndex.size() - this.inputCount
+                && in.readInt() == this.outputNames.size();
+    }
+
+    /**
+     * Reads the records of store into the cache. Repeated vectors are read only once, the later record wins.
+     * @return false if the store has to be compacted - it contains repeated vectors or its last record is incomplete
+     */
+    private boolean readRecords(DataInputStream in) throws IOException {
+        // vectors of the whole store are tracked only during the loading
+        Set<PackedVector> read = new HashSet<>();
+        boolean repeated = false;
+        while (true) {
+            long[] vector = new long[this.vectorWords];
+            long[] outputs = new long[this.outputWords];
+            try {
+                if (!readRecord(in, vector, outputs))
+                    return !repeated;
+            } catch (EOFException e) {
+                return false;
+            }
+            PackedVector key = new PackedVector(vector);
+            repeated |= !read.add(key);
+            this.entries.put(key, outputs);
+        }
+    }
+
+    /**
+     * Reads one record into the arrays.
+     * @return false at the end of store
+     * @throws EOFException if the record is incomplete
+     */
+    private static boolean readRecord(DataInputStream in, long[] vector, long[] outputs) throws IOException {
+        int words = 0;
+        try {
+            for (int i = 0; i < vector.length; i++, words++)
+                vector[i] = in.readLong();
+            for (int i = 0; i < outputs.length; i++, words++)
+                outputs[i] = in.readLong();
+        } catch (EOFException e) {
+            if (words == 0 && in.available() == 0)
+                return false;
+            throw e;
+        }
+        return true;
+    }
+
+    private static void writeRecord(DataOutputStream out, long[] vector, long[] outputs) throws IOException {
+        for (long word : vector)
+            out.writeLong(word);
+        for (long word : outputs)
+            out.writeLong(word);
+    }
+
+    private void appendToStore(long[] vector, long[] outputs) {
+        try {
+            if (this.store == null)
+                openStore();
+            writeRecord(this.store, vector, outputs);
+            this.store.flush();
+        } catch (IOException e) {
+            Protocol.printWarningMessage("Unable to write oracle store " + this.storeFile.getName() + ": " + e.getMessage());
+            closeStore();
+        }
+    }
+
+    /**
+     * Closes the store file, new responses are not stored anymore. Cache remains usable in memory.
+     */
+    public synchronized void closeStore() {
+        this.storeClosed = true;
+        if (this.store == null)
+            return;
+        try {
+            this.store.close();
+        } catch (IOException ignored) {
+        }
+        this.store = null;
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    /* Getters */
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized double getHitRate() {
+        long total = this.hits + this.misses;
+        return total == 0 ? 0.0 : (double) this.hits / total;
+    }
+
+    public synchronized int getSize() {
+        return this.entries.size();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public File getStoreFile() {
+        return this.storeFile;
+    }
+
+    /**
+     * Packed vector with value-based equality, used as key of the cache.
+     */
+    private static final class PackedVector {
+        private final long[] words;
+        private final int hash;
+
+        PackedVector(long[] words) {
+            this.words = words;
+            this.hash = Arrays.hashCode(words);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PackedVector && Arrays.equals(this.words, ((PackedVector) o).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
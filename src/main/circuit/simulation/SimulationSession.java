@@ -0,0 +1,163 @@
+package main.circuit.simulation;
+
+import main.circuit.components.Netlist;
+
+import java.util.Arrays;
+
+/**
+ * Incremental simulation of a logic circuit around a base vector. The session holds the values of every
+ * signal for the base vector (64 patterns per word as in CircuitSimulator). Flipping an input propagates
+ * the change only through the affected fan-out cone - gates are scheduled into buckets by their level and
+ * a gate whose output did not change does not schedule its successors. Every change is recorded, so the
+ * session can be reverted back to the base vector.
+ */
+public class SimulationSession {
+
+    private final Netlist netlist;
+    private final long[] values;
+
+    // event queue, one bucket of scheduled gates per level
+    private final int[][] buckets;
+    private final int[] bucketSizes;
+    private final boolean[] scheduled;
+
+    // undo log of changed signals and their previous values
+    private int[] changedSignals;
+    private long[] previousValues;
+    private int changeCount;
+
+    SimulationSession(Netlist netlist, long[] values) {
+        this.netlist = netlist;
+        this.values = values;
+        this.buckets = new int[netlist.getDepth() + 1][];
+        this.bucketSizes = new int[netlist.getDepth() + 1];
+        this.scheduled = new boolean[netlist.getGateCount()];
+        this.changedSignals = new int[16];
+        this.previousValues = new long[16];
+        this.changeCount = 0;
+
+        int[] gatesPerLevel = new int[netlist.getDepth() + 1];
+        for (int g = 0; g < netlist.getGateCount(); g++)
+            gatesPerLevel[netlist.getLevel(netlist.getGateSignal(g))]++;
+        for (int l = 0; l < this.buckets.length; l++)
+            this.buckets[l] = new int[gatesPerLevel[l]];
+    }
+
+    /**
+     * Flips every pattern of the i-th regular input and propagates the change.
+     * @param i index of input (in the order of sorted input names)
+     */
+    public void flipInput(int i) {
+        flipSignal(this.netlist.getInputSignal(i), ~0L);
+    }
+
+    /**
+     * Flips the bits of primary input (regular or key) selected by mask and propagates the change.
+     * @param signal id of primary input
+     * @param mask patterns to be flipped
+     */
+    public void flipSignal(int signal, long mask) {
+        if (this.netlist.getDrivingGate(signal) != -1)
+            throw new IllegalArgumentException("Signal " + this.netlist.getSignalName(signal) +
+                    " is not a primary input.");
+        if (mask == 0)
+            return;
+
+        record(signal);
+        this.values[signal] ^= mask;
+        schedule(signal);
+        propagate();
+    }
+
+    /**
+     * Restores the values of the base vector (undoes every flip since the session was opened).
+     */
+    public void revert() {
+        for (int c = this.changeCount - 1; c >= 0; c--)
+            this.values[this.changedSignals[c]] = this.previousValues[c];
+        this.changeCount = 0;
+    }
+
+    /**
+     * Evaluates the scheduled gates level by level. Changed gates schedule their successors.
+     */
+    private void propagate() {
+        int[] fanIn = this.netlist.getFanIn();
+
+        for (int level = 1; level < this.buckets.length; level++) {
+            int[] bucket = this.buckets[level];
+            for (int b = 0; b < this.bucketSizes[level]; b++) {
+                int g = bucket[b];
+                this.scheduled[g] = false;
+
+                int signal = this.netlist.getGateSignal(g);
+                long value = CircuitSimulator.evaluateGate(this.netlist.getGateType(g), fanIn,
+                        this.netlist.getFanInStart(g), this.netlist.getFanInEnd(g), this.values);
+                if (value == this.values[signal])
+                    continue;
+
+                record(signal);
+                this.values[signal] = value;
+                schedule(signal);
+            }
+            this.bucketSizes[level] = 0;
+        }
+    }
+
+    /**
+     * Schedules every gate reading the signal.
+     */
+    private void schedule(int signal) {
+        int[] fanOut = this.netlist.getFanOut();
+        for (int f = this.netlist.getFanOutStart(signal); f < this.netlist.getFanOutEnd(signal); f++) {
+            int g = fanOut[f];
+            if (this.scheduled[g])
+                continue;
+            this.scheduled[g] = true;
+            int level = this.netlist.getLevel(this.netlist.getGateSignal(g));
+            this.buckets[level][this.bucketSizes[level]++] = g;
+        }
+    }
+
+    private void record(int signal) {
+        if (this.changeCount == this.changedSignals.length) {
+            this.changedSignals = Arrays.copyOf(this.changedSignals, this.changeCount * 2);
+            this.previousValues = Arrays.copyOf(this.previousValues, this.changeCount * 2);
+        }
+        this.changedSignals[this.changeCount] = signal;
+        this.previousValues[this.changeCount] = this.values[signal];
+        this.changeCount++;
+    }
+
+    /* Getters */
+
+    public long getValue(int signal) {
+        return this.values[signal];
+    }
+
+    /**
+     * Returns the number of signals changed since the session was opened (or reverted).
+     * A signal changed more than once is counted repeatedly.
+     */
+    public int getChangeCount() {
+        return this.changeCount;
+    }
+
+    /**
+     * Returns the id of the c-th changed signal.
+     */
+    public int getChangedSignal(int c) {
+        return this.changedSignals[c];
+    }
+
+    /**
+     * Returns the value of the c-th changed signal before the change.
+     */
+    public long getPreviousValue(int c) {
+        return this.previousValues[c];
+    }
+
+    public Netlist getNetlist() {
+        return this.netlist;
+    }
+}
@@ -1,12 +1,15 @@
 package main.circuit.utilities;
 
 import main.circuit.LogicCircuit;
+import main.circuit.components.Gate;
+import main.circuit.components.Netlist;
 import main.circuit.utilities.custom_comparators.CustomLiteralComparator;
 import main.helpers.FormulaFactoryWrapper;
 import main.helpers.utilities.Protocol;
 import org.logicng.datastructures.Assignment;
 import org.logicng.datastructures.Substitution;
 import org.logicng.formulas.Formula;
+import org.logicng.formulas.FType;
 import org.logicng.formulas.FormulaFactory;
 import org.logicng.formulas.Literal;
 import org.logicng.formulas.Variable;
@@ -104,44 +107,165 @@ public class CircuitUtilities {
     }
 
     /**
-     * Creates two copies of the specific circuit. Each output and key variable 'var'
-     * will be duplicated and renamed to 'var_A' and 'var_B'. Input variables will remain unchanged.
+     * Creates two copies of the specific circuit. Each key variable 'var' and each variable depending
+     * on some key input will be duplicated and renamed to 'var_A' and 'var_B'. Input variables and
+     * the key-independent logic remain unchanged and are shared by both copies. Outputs, which don't
+     * depend on keys, are connected to their copies by equivalences (y_A = y, y_B = y), so both copies
+     * still have a complete set of outputs.
      * The mathematical form of the formula is C(X, K_A, Y_A) & C(X, K_B, Y_B).
      * @return boolean CNF formula of logic circuit that is duplicated and connected
      * by shared inputs
      */
     public static Formula distinctCircuitsWithSameInput(LogicCircuit circuit) {
+        return circuitCopiesWithSameInput(circuit, "_A", "_B");
+    }
+
+    /**
+     * Creates a copy of the specific circuit for every suffix in the same way as distinctCircuitsWithSameInput().
+     * The copies share the inputs and the key-independent logic, e.g. for suffixes "_A", "_B", "_C", "_D"
+     * the formula is C(X, K_A, Y_A) & C(X, K_B, Y_B) & C(X, K_C, Y_C) & C(X, K_D, Y_D).
+     * @return boolean CNF formula of logic circuit copies connected by shared inputs
+     */
+    public static Formula circuitCopiesWithSameInput(LogicCircuit circuit, String... suffixes) {
         FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
         Formula CNF = circuit.getCNF();
+        Netlist netlist = circuit.getNetlist();
+        boolean[] keyDependentMask = (netlist != null) ? keyDependentMask(netlist) : null;
+        Set<String> keyDependent = (netlist == null) ? keyDependentSignals(circuit) : null;
+        Set<String> signals = null;
+        if (netlist == null) {
+            signals = new HashSet<>(circuit.getInputNames());
+            signals.addAll(circuit.getKeyInputNames());
+            for (Gate gate : circuit.getGates())
+                signals.add(gate.getOutput());
+        }
 
-        //preparation for substitutions of first half of CNF in sat attack
-        Substitution substitution_A = new Substitution();
-        Substitution substitution_B = new Substitution();
+        //preparation for substitutions of each copy of CNF in sat attack
+        List<Substitution> substitutions = new ArrayList<>();
+        for (int i = 0; i < suffixes.length; i++)
+            substitutions.add(new Substitution());
 
-        // vsetky premenne, ktore niesu vstupne sa nahradia za *_A (napr. G10=G10_A, O22=O22_A)
-        // kluc sa takisto nahradi za k*_A a prida sa do pola
-        // so vstupnymi premennymi sa nerobi nic
+        // premenne zavisle od kluca sa nahradia za *_A a *_B (napr. G10=G10_A, k0=k0_A)
+        // so vstupnymi premennymi a logikou nezavislou od kluca sa nerobi nic
+        // pomocne premenne (nie su signalmi obvodu) sa pre istotu duplikuju vzdy
+        Set<Variable> duplicated = new HashSet<>();
         for (Variable v : CNF.variables()) {
-            if (!circuit.isInputVariable(v)) {
-                substitution_A.addMapping(v, ff.variable(v.name() + "_A"));
-                substitution_B.addMapping(v, ff.variable(v.name() + "_B"));
+            boolean copied;
+            if (netlist != null) {
+                int signal = netlist.getSignalIndex(v.name());
+                copied = signal < 0 || keyDependentMask[signal];
+            } else {
+                copied = !circuit.isInputVariable(v) && (keyDependent.contains(v.name()) || !signals.contains(v.name()));
+            }
+            if (copied) {
+                duplicated.add(v);
+                for (int i = 0; i < suffixes.length; i++)
+                    substitutions.get(i).addMapping(v, ff.variable(v.name() + suffixes[i]));
+            }
+        }
+
+        // klauzuly bez duplikovanych premennych su spolocne pre obe kopie obvodu
+        List<Formula> sharedClauses = new ArrayList<>();
+        List<Formula> duplicatedClauses = new ArrayList<>();
+        List<Formula> clauses = new ArrayList<>();
+        if (CNF.type() == FType.AND)
+            CNF.forEach(clauses::add);
+        else
+            clauses.add(CNF);
+
+        for (Formula clause : clauses) {
+            boolean shared = true;
+            for (Variable v : clause.variables()) {
+                if (duplicated.contains(v)) {
+                    shared = false;
+                    break;
+                }
+            }
+            (shared ? sharedClauses : duplicatedClauses).add(clause);
+        }
+
+        // C(X, K_A, Y_A), C(X, K_B, Y_B) ...
+        Formula duplicatedPart = ff.and(duplicatedClauses);
+        List<Formula> copies = new ArrayList<>();
+        copies.add(ff.and(sharedClauses));
+        for (Substitution substitution : substitutions)
+            copies.add(duplicatedPart.substitute(substitution));
+
+        // vystupy nezavisle od kluca maju vo vsetkych kopiach rovnaku hodnotu
+        for (String output : circuit.getOutputNames()) {
+            if (duplicated.contains(ff.variable(output)))
+                continue;
+            Variable y = ff.variable(output);
+            for (String suffix : suffixes) {
+                copies.add(ff.clause(y.negate(), ff.variable(output + suffix)));
+                copies.add(ff.clause(y, ff.literal(output + suffix, false)));
+            }
+        }
+
+        return ff.and(copies);
+    }
+
+    /**
+     * Finds the transitive fan-out of key inputs - every key input and every gate output,
+     * whose value depends on some key input.
+     * @return names of key-dependent signals
+     */
+    public static Set<String> keyDependentSignals(LogicCircuit circuit) {
+        Netlist netlist = circuit.getNetlist();
+        if (netlist != null) {
+            boolean[] mask = keyDependentMask(netlist);
+            Set<String> keyDependent = new HashSet<>();
+            for (int s = 0; s < mask.length; s++) {
+                if (mask[s])
+                    keyDependent.add(netlist.getSignalName(s));
             }
+            return keyDependent;
+        }
+
+        // obvod bez netlistu (napr. cyklicky) sa prechadza cez zoznam hradiel
+        Map<String, List<Gate>> readers = new HashMap<>();
+        for (Gate gate : circuit.getGates()) {
+            for (String input : gate.getInputs())
+                readers.computeIfAbsent(input, k -> new ArrayList<>()).add(gate);
         }
 
+        Set<String> keyDependent = new HashSet<>(circuit.getKeyInputNames());
+        Deque<String> queue = new ArrayDeque<>(keyDependent);
+        while (!queue.isEmpty()) {
+            for (Gate gate : readers.getOrDefault(queue.poll(), Collections.emptyList())) {
+                if (keyDependent.add(gate.getOutput()))
+                    queue.add(gate.getOutput());
+            }
+        }
 
-        // vytvoria sa 2 nove formuly, rovnake ako povodna, ale s nahradenymi premennymi (_A, _B)
-        // v CNF_A su vsetky nevstupne premenne nahradene za unikatny ikvivaletna (*_A)
-        // F pre dane kolo bude kombinaciou CNF_A & CNF_B, cize zdvojnasobenie povodne CNF rovnice,
-        // akurat s odlisnymi nevstupnymi premennymi (vstupne sa neduplikuju)
-        // spojenim oboch polovicnych formul ziskame (snad) splnitelnu rovnicu,
-        // ktora pre 2 rovnake vstupy a ODLISNE kluce K_A = [k0_A, .., kn_A], K_B = [k0_B, .., kn_B]
-        // vyprodukuje odlisne vystupy (O_A, O_B)
-        // zatial teda mame CNF_A & CNF_B
-        // este musime pridat klauzulu, ktore tieto vystupy naozaj olisi (teda O_A XOR O_B)
-        Formula CNF_A = CNF.substitute(substitution_A);         // C(X, K_A, Y_A)
-        Formula CNF_B = CNF.substitute(substitution_B);         // C(X, K_B, Y_B)
+        return keyDependent;
+    }
 
-        return ff.and(CNF_A, CNF_B);
+    /**
+     * Marks the transitive fan-out of key inputs in the netlist by a traversal of its fan-out arrays.
+     * @return flags indexed by signal ids, true for key inputs and signals depending on them
+     */
+    public static boolean[] keyDependentMask(Netlist netlist) {
+        boolean[] mask = new boolean[netlist.getSignalCount()];
+        int[] fanOut = netlist.getFanOut();
+        int[] queue = new int[mask.length];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < netlist.getKeyCount(); i++) {
+            mask[netlist.getKeySignal(i)] = true;
+            queue[tail++] = netlist.getKeySignal(i);
+        }
+        while (head < tail) {
+            int signal = queue[head++];
+            for (int f = netlist.getFanOutStart(signal); f < netlist.getFanOutEnd(signal); f++) {
+                int output = netlist.getGateSignal(fanOut[f]);
+                if (!mask[output]) {
+                    mask[output] = true;
+                    queue[tail++] = output;
+                }
+            }
+        }
+        return mask;
     }
 
     /**
@@ -149,23 +273,116 @@ public class CircuitUtilities {
      * two different assignments of circuit outputs.
      */
     public static Formula createDifferentOutputs(LogicCircuit circuit) {
+        return createDifferentOutputs(circuit, "_A", "_B");
+    }
+
+    /**
+     * Creates a formula which force the SAT solver to find different assignments of outputs
+     * of two circuit copies with specific suffixes.
+     */
+    public static Formula createDifferentOutputs(LogicCircuit circuit, String first, String second) {
+        return createDifferentOutputs(circuit, first, second, null);
+    }
+
+    /**
+     * Creates an activatable formula which force different assignments of outputs of two circuit copies
+     * (see createDifference()).
+     * @param guard the outputs have to differ only if the guard is true, null for unconditional constraint
+     */
+    public static Formula createDifferentOutputs(LogicCircuit circuit, String first, String second, Literal guard) {
+        return createDifference(circuit.getOutputNames(), first, second, guard, "SAT_ydiff");
+    }
+
+    /**
+     * Creates a CNF formula of the condition, that at least one signal differs in two circuit copies. Every
+     * signal gets an auxiliary literal d_i -> (s_first XOR s_second) and one clause (d_1 | ... | d_n) requires
+     * at least one difference, so the formula has 2n + 1 clauses instead of 2^n clauses of OR of XORs
+     * converted into CNF.
+     * @param prefix prefix of auxiliary variables
+     */
+    private static Formula createDifference(Collection<String> signals, String first, String second,
+                                            Literal guard, String prefix) {
         FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
 
-        // adding Y_1 != Y_2
-        // spravi sa xor z vystupnych premennych (napr. O22_A XOR O22_B)
-        Collection<Formula> outputElements = new ArrayList<>();
+        List<Formula> clauses = new ArrayList<>();
+        List<Literal> differences = new ArrayList<>();
+        int index = 0;
+        for (String signal : signals) {
+            // d_i -> (O22_A XOR O22_B)
+            Literal difference = ff.variable(prefix + first + second + "_" + index++);
+            clauses.add(ff.clause(difference.negate(), ff.variable(signal + first), ff.variable(signal + second)));
+            clauses.add(ff.clause(difference.negate(), ff.literal(signal + first, false), ff.literal(signal + second, false)));
+            differences.add(difference);
+        }
+
+        // aspon jeden signal sa musi lisit (cize O_A != O_B)
+        if (guard != null)
+            differences.add(guard.negate());
+        clauses.add(ff.clause(differences));
+        return ff.and(clauses);
+    }
+
+    /**
+     * Creates a CNF formula which force the outputs of two circuit copies with specific suffixes to be equal.
+     */
+    public static Formula createEqualOutputs(LogicCircuit circuit, String first, String second) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+
+        List<Formula> clauses = new ArrayList<>();
         for (String output : circuit.getOutputNames()) {
-            outputElements.add(Operators.xor(ff.variable(output + "_A"), ff.variable(output + "_B")));
+            clauses.add(ff.clause(ff.literal(output + first, false), ff.variable(output + second)));
+            clauses.add(ff.clause(ff.variable(output + first), ff.literal(output + second, false)));
         }
+        return ff.and(clauses);
+    }
+
+    /**
+     * Creates a formula which force the keys of two circuit copies with specific suffixes to be different.
+     */
+    public static Formula createDifferentKeys(LogicCircuit circuit, String first, String second) {
+        return createDifference(circuit.getKeyInputNames(), first, second, null, "SAT_kdiff");
+    }
+
+    /**
+     * Creates a formula which breaks the symmetry of two circuit copies by forcing the key with the first suffix
+     * to be lexicographically smaller than the key with the second suffix (K_first < K_second, keys in the order
+     * of sorted key names). Miter of two copies is symmetric under swapping their keys, so the constraint keeps
+     * one of every two symmetric solutions. Auxiliary variable e_i means, that the keys are equal on the first
+     * i bits, which gives 3 clauses per key bit:
+     * e_i -> (a_i <= b_i), e_i & (a_i == b_i) -> e_i+1 and the last e_n is false.
+     * @param guard literal e_0, the constraint is applied only if it is true, null for unconditional constraint
+     * @return boolean CNF formula
+     */
+    public static Formula createLexicographicOrder(LogicCircuit circuit, String first, String second, Literal guard) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+
+        List<Formula> clauses = new ArrayList<>();
+        Literal equal = guard;
+        List<String> keyNames = circuit.getSortedKeyInputNames();
+        for (int i = 0; i < keyNames.size(); i++) {
+            Literal a = ff.variable(keyNames.get(i) + first);
+            Literal b = ff.variable(keyNames.get(i) + second);
+            Literal nextEqual = ff.variable("SAT_lex" + first + second + "_" + i);
+            clauses.add(guardedClause(ff, equal, a.negate(), b));
+            clauses.add(guardedClause(ff, equal, a.negate(), nextEqual));
+            clauses.add(guardedClause(ff, equal, b, nextEqual));
+            equal = nextEqual;
+        }
+        clauses.add(guardedClause(ff, equal));
+        return ff.and(clauses);
+    }
 
-        // aspon jedna vystupna rovnica musi platit (cize O_A != O_B)
-        return ff.or(outputElements).cnf();
+    private static Formula guardedClause(FormulaFactory ff, Literal guard, Literal... literals) {
+        List<Literal> clause = new ArrayList<>(Arrays.asList(literals));
+        if (guard != null)
+            clause.add(guard.negate());
+        return ff.clause(clause);
     }
 
     /**
      * Returns a CNF formed Formula of 2 same-sized vectors whose Hamming weight is one.
      * Hamming weight of 1 means, that their variables have the same logical value,
-     * except for one bit at specific index.
+     * except for one bit at specific index. Incremental queries should use KeyRelationEncoder instead.
      */
     public static Formula differenceAtIndex(int index, List<Variable> first, List<Variable> second) {
 
@@ -181,16 +398,16 @@ public class CircuitUtilities {
         }
 
         FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
-        Formula hamming = ff.and();
+        List<Formula> hamming = new ArrayList<>();
 
         for (int i = 0; i < first.size(); i++) {
             if (i == index)
-                hamming = ff.and(hamming, Operators.xor(first.get(i), second.get(i)));
+                hamming.add(Operators.xor(first.get(i), second.get(i)));
             else
-                hamming = ff.and(hamming, Operators.xnor(first.get(i), second.get(i)));
+                hamming.add(Operators.xnor(first.get(i), second.get(i)));
         }
 
-        return hamming;
+        return ff.and(hamming);
     }
 
     /**
@@ -1,14 +1,15 @@
 package main.circuit.utilities;
 
 import main.circuit.LogicCircuit;
+import main.circuit.simulation.BatchResult;
+import main.circuit.simulation.BitMatrix;
 import main.helpers.utilities.Protocol;
 import org.logicng.datastructures.Assignment;
 import org.logicng.formulas.FormulaFactory;
 import org.logicng.formulas.Literal;
 import org.logicng.formulas.Variable;
 
-import java.util.Collection;
-import java.util.Random;
+import java.util.*;
 
 public class CircuitValidator {
 
@@ -44,15 +45,20 @@ public class CircuitValidator {
         }
 
         System.out.print("INFO: Testing file lock integrity in " + rounds + " rounds ..." + (debugMode ? "\n" : " "));
+
+        if (!debugMode && locked.getSimulator() != null && plain.getSimulator() != null) {
+            if (!checkLockedFileIntegrity(locked, plain, rounds))
+                return reportFailedValidation();
+
+            System.out.println("OK\n");
+            return true;
+        }
+
         for (int i = 0; i < rounds; i++) {
             if (debugMode)
                 Protocol.printSection("Iteration " + (i + 1));
-            if (!checkLockedFileIntegrity(locked, plain, debugMode)) {
-                System.out.println("FAILED");
-                Protocol.printSection("");
-                Protocol.printErrorMessage("Validation failed: Incorrect lock.");
-                return false;
-            }
+            if (!checkLockedFileIntegrity(locked, plain, debugMode))
+                return reportFailedValidation();
             if (debugMode)
                 Protocol.printSection("");
         }
@@ -61,6 +67,61 @@ public class CircuitValidator {
         return true;
     }
 
+    /**
+     * Prints the information about failed validation.
+     * @return always false
+     */
+    private static boolean reportFailedValidation() {
+        System.out.println("FAILED");
+        Protocol.printSection("");
+        Protocol.printErrorMessage("Validation failed: Incorrect lock.");
+        return false;
+    }
+
+    /**
+     * Unlocks the circuit with saved correct key and checks whether the outputs for a batch of randomly
+     * generated inputs match the required outputs from validation (plain) circuit. Outputs are paired
+     * in the order of their names, the same way as compareAssignments() pairs them.
+     * @param rounds the number of random input vectors
+     * @return true if the locked circuit behaves correctly after applying the correct key, false otherwise
+     */
+    private static boolean checkLockedFileIntegrity(LogicCircuit lockedCircuit, LogicCircuit plainCircuit, int rounds) {
+
+        if (lockedCircuit.getInputNames().size() != plainCircuit.getInputNames().size()) {
+            Protocol.printErrorMessage("Circuits have a different number of inputs.");
+            return false;
+        }
+
+        if (lockedCircuit.getOutputNames().size() != plainCircuit.getOutputNames().size())
+            return false;
+
+        BitMatrix inputs = BitMatrix.random(lockedCircuit.getInputNames().size(), rounds, new Random());
+
+        BatchResult lockedOutput;
+        BatchResult plainOutput;
+
+        try {
+            lockedOutput = lockedCircuit.evaluateBatch(inputs, lockedCircuit.getCorrectKey());
+            plainOutput = plainCircuit.evaluateBatch(inputs, (int[]) null);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Protocol.printErrorMessage("Evaluating circuit: " + e.getMessage());
+            return false;
+        }
+
+        List<String> lockedOutputNames = new ArrayList<>(lockedCircuit.getOutputNames());
+        List<String> plainOutputNames = new ArrayList<>(plainCircuit.getOutputNames());
+        Collections.sort(lockedOutputNames);
+        Collections.sort(plainOutputNames);
+
+        for (int i = 0; i < lockedOutputNames.size(); i++) {
+            if (!Arrays.equals(lockedOutput.getSignalRow(lockedOutputNames.get(i)),
+                    plainOutput.getSignalRow(plainOutputNames.get(i))))
+                return false;
+        }
+
+        return true;
+    }
+
     /**
      * Unlocks the circuit with saved correct key and checks whether the output for randomly
      * generated input match the required output from validation (plain) circuit.
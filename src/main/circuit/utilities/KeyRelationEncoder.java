@@ -0,0 +1,135 @@
+package main.circuit.utilities;
+
+import main.helpers.FormulaFactoryWrapper;
+import org.logicng.cardinalityconstraints.CCEncoder;
+import org.logicng.formulas.CType;
+import org.logicng.formulas.CardinalityConstraint;
+import org.logicng.formulas.FType;
+import org.logicng.formulas.Formula;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.util.*;
+
+/**
+ * Relations of two copies of key (e.g. K_A and K_B). Every pair of key bits gets a selector literal
+ * d_i <-> (a_i XOR b_i), which is encoded only once (see encode()). Queries about the keys are then expressed
+ * over the selectors - either as assumptions (keys differ exactly at given bits) or as cardinality constraints
+ * (Hamming distance of keys at most / exactly d) created by LogicNG cardinality encoders. Both can be added
+ * to the same incremental solver without rebuilding the circuit copies.
+ */
+public class KeyRelationEncoder {
+
+    private final FormulaFactory ff;
+    private final List<Variable> first;
+    private final List<Variable> second;
+    private final List<Variable> selectors;
+
+    /**
+     * @param first variables of the first key copy
+     * @param second variables of the second key copy, in the same order
+     * @param prefix prefix of selector variables, unique in the solver
+     */
+    public KeyRelationEncoder(List<Variable> first, List<Variable> second, String prefix) {
+        if (first.size() != second.size())
+            throw new IllegalArgumentException("Key copies must have same sizes.");
+
+        this.ff = FormulaFactoryWrapper.getFormulaFactory();
+        this.first = new ArrayList<>(first);
+        this.second = new ArrayList<>(second);
+        this.selectors = new ArrayList<>();
+        for (int i = 0; i < first.size(); i++)
+            this.selectors.add(this.ff.variable(prefix + i));
+    }
+
+    /**
+     * Creates the definitions of selectors d_i <-> (a_i XOR b_i), 4 clauses per key bit.
+     * @return boolean CNF formula
+     */
+    public Formula encode() {
+        List<Formula> clauses = new ArrayList<>();
+        for (int i = 0; i < this.selectors.size(); i++) {
+            Variable d = this.selectors.get(i);
+            Variable a = this.first.get(i);
+            Variable b = this.second.get(i);
+            clauses.add(this.ff.clause(d.negate(), a, b));
+            clauses.add(this.ff.clause(d.negate(), a.negate(), b.negate()));
+            clauses.add(this.ff.clause(d, a.negate(), b));
+            clauses.add(this.ff.clause(d, a, b.negate()));
+        }
+        return this.ff.and(clauses);
+    }
+
+    /**
+     * Creates the assumptions, which force the keys to differ exactly at the bits of given indices
+     * (e.g. Hamming distance 1 at index k for Sig attack).
+     */
+    public List<Literal> differenceAt(int... indices) {
+        Set<Integer> different = new HashSet<>();
+        for (int index : indices) {
+            if (index < 0 || index >= this.selectors.size())
+                throw new IllegalArgumentException("Index " + index + " overflowing key size (" + this.selectors.size() + ").");
+            different.add(index);
+        }
+
+        List<Literal> assumptions = new ArrayList<>();
+        for (int i = 0; i < this.selectors.size(); i++)
+            assumptions.add(this.ff.literal(this.selectors.get(i).name(), different.contains(i)));
+        return assumptions;
+    }
+
+    /**
+     * Creates a cardinality constraint Hamming distance of keys <= distance.
+     * @param guard the constraint is applied only if the guard is true, null for unconditional constraint
+     * @return boolean CNF formula
+     */
+    public Formula atMost(int distance, Literal guard) {
+        return distance(CType.LE, distance, guard);
+    }
+
+    /**
+     * Creates a cardinality constraint Hamming distance of keys = distance.
+     * @param guard the constraint is applied only if the guard is true, null for unconditional constraint
+     * @return boolean CNF formula
+     */
+    public Formula exactly(int distance, Literal guard) {
+        return distance(CType.EQ, distance, guard);
+    }
+
+    /**
+     * Encodes the cardinality constraint over selectors into clauses. Guard is added into every clause
+     * (including the clauses of auxiliary variables of encoding), so the constraint can be switched on
+     * by an assumption.
+     */
+    private Formula distance(CType comparator, int distance, Literal guard) {
+        if (distance < 0)
+            throw new IllegalArgumentException("Hamming distance cannot be negative.");
+
+        Formula cc = this.ff.cc(comparator, distance, this.selectors);
+        List<Formula> clauses = new ArrayList<>();
+        if (cc instanceof CardinalityConstraint) {
+            clauses.addAll(new CCEncoder(this.ff).encode((CardinalityConstraint) cc));
+        } else {
+            // trivial constraints are simplified by the factory (e.g. into a conjunction of literals)
+            Formula cnf = cc.cnf();
+            if (cnf.type() == FType.AND)
+                cnf.forEach(clauses::add);
+            else
+                clauses.add(cnf);
+        }
+        if (guard == null)
+            return this.ff.and(clauses);
+
+        List<Formula> guarded = new ArrayList<>();
+        for (Formula clause : clauses)
+            guarded.add(this.ff.or(clause, guard.negate()));
+        return this.ff.and(guarded);
+    }
+
+    /* Getters */
+
+    public List<Variable> getSelectors() {
+        return Collections.unmodifiableList(this.selectors);
+    }
+}
@@ -1,14 +1,20 @@
 package main.helpers;
 
 import main.attacker.CircuitAttacker;
+import main.attacker.sat.SATConfig;
+import main.attacker.sig.SigAttackWrapper;
 import main.circuit.AbstractLogicCircuit;
 import main.circuit.LogicCircuit;
+import main.circuit.aig.Aig;
+import main.circuit.aig.AigBalancer;
+import main.circuit.simulation.OracleCache;
 import main.circuit.utilities.CircuitLoader;
 import main.circuit.utilities.CircuitValidator;
 import main.helpers.utilities.Protocol;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -30,11 +36,28 @@ public class ArgumentProcessor {
     private int demoIndex;
     private int spsIteration;
     private int valIteration;
+    private int portfolioSize;
+    private int cubeKeys;
+    private int conflictLimit;
+    private int timeoutSeconds;
+    private List<String> solverCommand;
+    private int oracleCacheCapacity;
+    private File oracleStoreDirectory;
+    private File checkpointFile;
+    private File telemetryFile;
 
     private boolean save;
     private boolean realKey;
     private boolean debugMode;
     private boolean validation;
+    private boolean compiled;
+    private boolean preprocessing;
+    private boolean aig;
+    private boolean incrementalSat;
+    private boolean approximateSat;
+    private boolean doubleDip;
+    private boolean symmetryBreaking;
+    private boolean resume;
 
     public ArgumentProcessor(String[] args) {
         this.argList = Arrays.asList(args);
@@ -46,10 +69,27 @@ public class ArgumentProcessor {
         this.demoIndex = 0;
         this.spsIteration = 1000;
         this.valIteration = 10;
+        this.portfolioSize = 1;
+        this.cubeKeys = 0;
+        this.conflictLimit = 0;
+        this.timeoutSeconds = 0;
+        this.solverCommand = null;
+        this.oracleCacheCapacity = 0;
+        this.oracleStoreDirectory = null;
+        this.checkpointFile = null;
+        this.telemetryFile = null;
         this.save = false;
         this.realKey = false;
         this.debugMode = false;
         this.validation = true;
+        this.compiled = false;
+        this.preprocessing = false;
+        this.aig = false;
+        this.incrementalSat = false;
+        this.approximateSat = false;
+        this.doubleDip = false;
+        this.symmetryBreaking = false;
+        this.resume = false;
     }
 
     /**
@@ -69,12 +109,57 @@ public class ArgumentProcessor {
      * <p> -spsit, -it [INT] = set the count of iterations for SPS attack </p>
      * <p> -real, -realkey = use correct keys for SPS attack </p>
      * <p> -debug = enable statement messages (intended for development purposes) </p>
+     * <p> -compiled = evaluate single vectors (oracle queries of SAT and Sig attack) by evaluator compiled at runtime, batches of SPS attack stay interpreted </p>
+     * <p> -aig = convert circuits into balanced And-Inverter Graphs with structural hashing before the attack </p>
+     * <p> -preprocess = simplify the netlist of circuits (constants, BUF / NOT, duplicate and dead gates) before CNF encoding </p>
+     * <p> -incremental = keep one SAT solver for all iterations of SAT attack (required by -appsat, -ddip and -cubes) </p>
+     * <p> -appsat = end SAT attack when the error rate of candidate key on random inputs is low enough </p>
+     * <p> -ddip = search for inputs distinguishing two pairs of keys during SAT attack (Double-DIP) </p>
+     * <p> -symmetry = break the symmetry of key copies (K_A < K_B) in the miter of SAT and Sig attack </p>
+     * <p> -checkpoint [PATH] = log every distinguishing input of SAT attack into checkpoint file [PATH] </p>
+     * <p> -resume = continue SAT attack from the distinguishing inputs logged in checkpoint (requires -checkpoint) </p>
+     * <p> -telemetry [PATH] = append metrics of every attack iteration to [PATH] (JSON Lines, CSV for .csv file) </p>
+     * <p> -conflicts [INT] = stop SAT and Sig attack, when a single solver call exceeds [INT] conflicts </p>
+     * <p> -timeout [INT] = stop SAT and Sig attack after [INT] seconds and report the partial result </p>
+     * <p> -portfolio [INT] = race [INT] differently configured SAT solvers in parallel during SAT attack </p>
+     * <p> -cubes [INT] = split SAT attack into cubes over [INT] key inputs solved in parallel (cube-and-conquer) </p>
+     * <p> -solver [CMD] = use external SAT solver reading DIMACS from standard input in SAT attack (e.g. "kissat -q") </p>
+     * <p> -cache [INT] = memoize up to [INT] oracle responses of each circuit </p>
+     * <p> -cachedir [PATH] = store memoized oracle responses in directory [PATH] (requires -cache) </p>
      */
     public void processArguments() {
         Protocol.printSection("");
         loadArguments();
         loadLogicCircuits();
 
+        if (this.aig) {
+            if (this.lockedCircuit != null)
+                this.lockedCircuit = convertToAig(this.lockedCircuit);
+            if (this.plainCircuit != null)
+                this.plainCircuit = convertToAig(this.plainCircuit);
+        }
+
+        if (this.compiled) {
+            if (this.lockedCircuit != null)
+                this.lockedCircuit.setCompiledEvaluation(true);
+            if (this.plainCircuit != null)
+                this.plainCircuit.setCompiledEvaluation(true);
+        }
+
+        if (this.preprocessing) {
+            if (this.lockedCircuit != null)
+                this.lockedCircuit.setPreprocessing(true);
+            if (this.plainCircuit != null)
+                this.plainCircuit.setPreprocessing(true);
+        }
+
+        if (this.oracleCacheCapacity > 0) {
+            if (this.lockedCircuit != null)
+                this.lockedCircuit.enableOracleCache(this.oracleCacheCapacity, this.oracleStoreDirectory);
+            if (this.plainCircuit != null)
+                this.plainCircuit.enableOracleCache(this.oracleCacheCapacity, this.oracleStoreDirectory);
+        }
+
         if (validation) {
             if (!CircuitValidator.validateCircuitLock(
                     this.lockedCircuit, this.plainCircuit, this.valIteration, this.debugMode))
@@ -97,6 +182,9 @@ public class ArgumentProcessor {
                 launchSigAttack();
                 break;
         }
+
+        if (this.oracleCacheCapacity > 0)
+            printOracleCacheStats();
     }
 
     /**
@@ -137,6 +225,59 @@ public class ArgumentProcessor {
                 case "-debug":
                     this.debugMode = true;
                     break;
+                case "-compiled":
+                    this.compiled = true;
+                    break;
+                case "-aig":
+                    this.aig = true;
+                    break;
+                case "-preprocess":
+                    this.preprocessing = true;
+                    break;
+                case "-incremental":
+                    this.incrementalSat = true;
+                    break;
+                case "-appsat":
+                    this.approximateSat = true;
+                    break;
+                case "-ddip":
+                    this.doubleDip = true;
+                    break;
+                case "-symmetry":
+                    this.symmetryBreaking = true;
+                    break;
+                case "-checkpoint":
+                    this.checkpointFile = processFileArgument(index, arg);
+                    break;
+                case "-resume":
+                    this.resume = true;
+                    break;
+                case "-telemetry":
+                    this.telemetryFile = processFileArgument(index, arg);
+                    break;
+                case "-conflicts":
+                    this.conflictLimit = processIntegerArgument(index, arg, 0);
+                    break;
+                case "-timeout":
+                    this.timeoutSeconds = processIntegerArgument(index, arg, 0);
+                    break;
+                case "-portfolio":
+                    this.portfolioSize = processIntegerArgument(index, arg, 1);
+                    break;
+                case "-cubes":
+                    this.cubeKeys = processIntegerArgument(index, arg, 2);
+                    break;
+                case "-cache":
+                    this.oracleCacheCapacity = processIntegerArgument(index, arg, 0);
+                    break;
+                case "-cachedir":
+                    this.oracleStoreDirectory = processFileArgument(index, arg);
+                    break;
+                case "-solver":
+                    if (valueExists(index, arg)) {
+                        this.solverCommand = Arrays.asList(this.argList.get(index.get()).trim().split("\\s+"));
+                    }
+                    break;
                 case "-savefile":
                 case "-save":
                     this.save = true;
@@ -171,7 +312,29 @@ public class ArgumentProcessor {
             Protocol.printErrorMessage("Locked logic circuit is required for SAT attack.");
             return;
         }
-        CircuitAttacker.performSATAttack(this.lockedCircuit, true, this.debugMode);
+        // cubes are solved by the portfolio, or by one solver per processor
+        int solverCount = (this.cubeKeys > 0 && this.portfolioSize <= 1) ? Runtime.getRuntime().availableProcessors()
+                : this.portfolioSize;
+        SATConfig config;
+        try {
+            config = SATConfig.createSATConfig()
+                    .setIncremental(this.incrementalSat)
+                    .setApproximate(this.approximateSat)
+                    .setDoubleDIP(this.doubleDip)
+                    .setSymmetryBreaking(this.symmetryBreaking)
+                    .setCheckpoint(this.checkpointFile, this.resume)
+                    .setTelemetry(this.telemetryFile)
+                    .setConflictLimit(this.conflictLimit)
+                    .setTimeout(this.timeoutSeconds * 1000L)
+                    .setPortfolio(solverCount)
+                    .setCubeAndConquer(this.cubeKeys)
+                    .setExternalSolver(this.solverCommand)
+                    .setDebugMode(this.debugMode);
+        } catch (IllegalArgumentException e) {
+            Protocol.printErrorMessage(e.getMessage());
+            return;
+        }
+        CircuitAttacker.performSATAttack(this.lockedCircuit, config, true);
     }
 
     /**
@@ -220,7 +383,31 @@ public class ArgumentProcessor {
         if (this.save)
             this.plainCircuit.writeToFile(ANTISAT, "as_" + this.plainCircuitFile.getName(), "");
 
-        CircuitAttacker.performSigAttack(this.plainCircuit, true, this.debugMode);
+        SigAttackWrapper attacker = new SigAttackWrapper(this.plainCircuit)
+                .setTelemetry(this.telemetryFile)
+                .setSymmetryBreaking(this.symmetryBreaking)
+                .setSolverConfig(SATConfig.createSATConfig()
+                        .setConflictLimit(this.conflictLimit)
+                        .setTimeout(this.timeoutSeconds * 1000L)
+                        .setPortfolio(this.portfolioSize)
+                        .setExternalSolver(this.solverCommand));
+        CircuitAttacker.performSigAttack(attacker, true, this.debugMode);
+    }
+
+    /**
+     * Prints hit and miss counters of every oracle cache.
+     */
+    private void printOracleCacheStats() {
+        List<LogicCircuit> circuits = new ArrayList<>(Arrays.asList(this.lockedCircuit, this.plainCircuit));
+        if (this.plainCircuit != null)
+            circuits.add(this.plainCircuit.getEvaluationCircuit());
+        for (LogicCircuit circuit : circuits) {
+            OracleCache cache = circuit == null ? null : circuit.getOracleCache();
+            if (cache == null || cache.getHits() + cache.getMisses() == 0)
+                continue;
+            Protocol.printInfoMessage(String.format("Oracle cache of %s: %d hits, %d misses (%.1f %%), %d entries.",
+                    circuit.getName(), cache.getHits(), cache.getMisses(), cache.getHitRate() * 100, cache.getSize()));
+        }
     }
 
     /**
@@ -255,6 +442,28 @@ public class ArgumentProcessor {
         }
     }
 
+    /**
+     * Converts the circuit into a balanced AIG and back into a logic circuit with the same inputs, keys
+     * and outputs. If the circuit cannot be converted (e.g. it contains a cycle), the original circuit is used.
+     * @return converted circuit with the keys of original circuit
+     */
+    private LogicCircuit convertToAig(LogicCircuit circuit) {
+        try {
+            Aig aig = Aig.fromCircuit(circuit);
+            Aig balanced = AigBalancer.balance(aig);
+            LogicCircuit converted = balanced.toLogicCircuit(circuit.getName());
+            converted.setCorrectKey(circuit.getCorrectKey());
+            converted.setAntisatKey(circuit.getAntisatKey());
+            Protocol.printInfoMessage("AIG of circuit " + circuit.getName() + ": " + circuit.getNetlist().getGateCount() +
+                    " gates -> " + balanced.getAndCount() + " AND nodes, depth " + aig.getDepth() +
+                    " -> " + balanced.getDepth() + ".");
+            return converted;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Protocol.printWarningMessage(e.getMessage());
+            return circuit;
+        }
+    }
+
     /**
      * Parses the argument in the following position and creates a file path from it.
      * @param index the index of current argument (either -lf or -pf)
@@ -0,0 +1,120 @@
+package main.attacker.sat;
+
+import main.circuit.Fixtures;
+import main.circuit.LogicCircuit;
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.logicng.datastructures.Assignment;
+import org.logicng.datastructures.Tristate;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the residual clauses of DIOConstraintEncoder allow the same keys as the full circuit copy
+ * constrained by the same DIO pair. Small keys are enumerated, larger ones are sampled. A key is allowed
+ * exactly if the circuit with that key produces the output of DIO pair for its input.
+ */
+public class DIOConstraintEncoderTest {
+
+    private static final int DIPS = 6;
+    private static final int MAX_ENUMERATED_KEY_BITS = 12;
+    private static final int SAMPLED_KEYS = 1024;
+    private static final String SUFFIX = "_A";
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void residualAllowsSameKeysAsFullCopy() throws URISyntaxException {
+        for (String name : Fixtures.lockedNames()) {
+            LogicCircuit circuit = Fixtures.loadLocked(name);
+            FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+            Random random = new Random(DIPS);
+            for (int d = 0; d < DIPS; d++) {
+                Assignment input = new Assignment(circuit.getInputLiterals(ff, randomBits(circuit.getInputNames().size(), random)));
+                Assignment output = circuit.evaluate(input.literals(),
+                        circuit.getKeyLiterals(ff, circuit.getCorrectKey()), circuit.getOutputVariables(ff));
+                checkKeys(name + ", DIP " + d, circuit, input, output, random);
+
+                // response which no key produces for some inputs, the residue has to reject the keys as well
+                checkKeys(name + ", DIP " + d + " with flipped output", circuit, input, flipFirst(output), random);
+            }
+        }
+    }
+
+    private static void checkKeys(String dip, LogicCircuit circuit, Assignment input, Assignment output, Random random) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        List<String> keyNames = circuit.getSortedKeyInputNames();
+        Collection<Variable> outputs = circuit.getOutputVariables(ff);
+
+        SatSolverWrapper residual = SatSolverFactory.createLogicNGSolver();
+        int[] keyVariables = new int[keyNames.size()];
+        for (int k = 0; k < keyNames.size(); k++)
+            keyVariables[k] = residual.getOrAddVariable(keyNames.get(k) + SUFFIX);
+        new DIOConstraintEncoder(circuit.getNetlist()).emit(residual, keyVariables, input, output);
+
+        SatSolverWrapper full = SatSolverFactory.createLogicNGSolver();
+        ClauseTemplate template = new ClauseTemplate(circuit);
+        int[] copy = template.emitCopy(full, template.mapKeyVariables(full, SUFFIX));
+        for (Literal l : input.literals())
+            fixVariable(full, template, copy, l);
+        for (Literal l : output.literals())
+            fixVariable(full, template, copy, l);
+
+        boolean enumerate = keyNames.size() <= MAX_ENUMERATED_KEY_BITS;
+        int keys = enumerate ? 1 << keyNames.size() : SAMPLED_KEYS;
+        for (int n = 0; n < keys; n++) {
+            int[] key = enumerate ? keyBits(n, keyNames.size()) : randomBits(keyNames.size(), random);
+            List<Literal> assumptions = new ArrayList<>();
+            for (int k = 0; k < keyNames.size(); k++)
+                assumptions.add(ff.literal(keyNames.get(k) + SUFFIX, key[k] == 1));
+
+            boolean allowed = circuit.evaluate(input.literals(), circuit.getKeyLiterals(ff, key), outputs).equals(output);
+            String query = dip + ", key " + assumptions;
+            assertEquals("full copy, " + query, Tristate.fromBool(allowed), full.solve(assumptions));
+            assertEquals("residue, " + query, Tristate.fromBool(allowed), residual.solve(assumptions));
+        }
+    }
+
+    private static void fixVariable(SatSolverWrapper solver, ClauseTemplate template, int[] copy, Literal literal) {
+        int variable = template.getVariable(literal.name());
+        if (variable != -1)
+            solver.addUnitClause(copy[variable], literal.phase());
+    }
+
+    private static Assignment flipFirst(Assignment output) {
+        Assignment flipped = new Assignment();
+        boolean first = true;
+        for (Literal l : output.literals()) {
+            flipped.addLiteral(first ? l.negate() : l);
+            first = false;
+        }
+        return flipped;
+    }
+
+    private static int[] keyBits(int n, int size) {
+        int[] bits = new int[size];
+        for (int k = 0; k < size; k++)
+            bits[k] = (n >>> k) & 1;
+        return bits;
+    }
+
+    private static int[] randomBits(int size, Random random) {
+        int[] bits = new int[size];
+        for (int i = 0; i < size; i++)
+            bits[i] = random.nextInt(2);
+        return bits;
+    }
+}
@@ -0,0 +1,119 @@
+package main.attacker.sat;
+
+import main.circuit.Fixtures;
+import main.circuit.LogicCircuit;
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.logicng.datastructures.Assignment;
+import org.logicng.formulas.FormulaFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Round trips of distinguishing input-output pairs through a temporary checkpoint file.
+ */
+public class DIPCheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void pairsSurviveReload() throws URISyntaxException, IOException {
+        LogicCircuit circuit = Fixtures.loadLocked("c17_4.bench");
+        File file = this.folder.newFile("c17_4.dip");
+        List<Assignment[]> pairs = randomPairs(circuit, 6, new Random(1));
+
+        DIPCheckpoint checkpoint = new DIPCheckpoint(circuit, file);
+        assertEquals(0, checkpoint.load().size());
+        for (Assignment[] pair : pairs)
+            checkpoint.append(pair[0], pair[1]);
+
+        DIPCheckpoint loaded = new DIPCheckpoint(circuit, file);
+        assertPairs(pairs, loaded.load());
+        assertEquals("repeated load does not add the records again", pairs.size(), loaded.load().size());
+        assertEquals(pairs.size(), loaded.getSize());
+    }
+
+    @Test
+    public void truncatedRecordIsDropped() throws URISyntaxException, IOException {
+        LogicCircuit circuit = Fixtures.loadLocked("c17_4.bench");
+        File file = this.folder.newFile("c17_4.dip");
+        List<Assignment[]> pairs = randomPairs(circuit, 5, new Random(2));
+
+        DIPCheckpoint checkpoint = new DIPCheckpoint(circuit, file);
+        for (Assignment[] pair : pairs)
+            checkpoint.append(pair[0], pair[1]);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        pairs.remove(pairs.size() - 1);
+
+        DIPCheckpoint loaded = new DIPCheckpoint(circuit, file);
+        assertPairs(pairs, loaded.load());
+
+        // the next pair rewrites the checkpoint without the incomplete record
+        Assignment[] next = randomPairs(circuit, 1, new Random(3)).get(0);
+        loaded.append(next[0], next[1]);
+        pairs.add(next);
+        assertPairs(pairs, new DIPCheckpoint(circuit, file).load());
+    }
+
+    @Test
+    public void checkpointOfOtherCircuitIsOverwritten() throws URISyntaxException, IOException {
+        LogicCircuit circuit = Fixtures.loadLocked("c17_4.bench");
+        LogicCircuit other = Fixtures.loadLocked("chain16.bench");
+        File file = this.folder.newFile("shared.dip");
+
+        DIPCheckpoint checkpoint = new DIPCheckpoint(other, file);
+        for (Assignment[] pair : randomPairs(other, 3, new Random(4)))
+            checkpoint.append(pair[0], pair[1]);
+
+        DIPCheckpoint mismatched = new DIPCheckpoint(circuit, file);
+        assertEquals(0, mismatched.load().size());
+        List<Assignment[]> pairs = randomPairs(circuit, 2, new Random(5));
+        for (Assignment[] pair : pairs)
+            mismatched.append(pair[0], pair[1]);
+        assertPairs(pairs, new DIPCheckpoint(circuit, file).load());
+    }
+
+    private static List<Assignment[]> randomPairs(LogicCircuit circuit, int count, Random random) {
+        List<Assignment[]> pairs = new ArrayList<>();
+        for (int p = 0; p < count; p++)
+            pairs.add(new Assignment[]{ randomAssignment(circuit.getSortedInputNames(), random),
+                    randomAssignment(circuit.getOutputNames(), random) });
+        return pairs;
+    }
+
+    private static Assignment randomAssignment(Collection<String> names, Random random) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Assignment assignment = new Assignment();
+        for (String name : names)
+            assignment.addLiteral(ff.literal(name, random.nextBoolean()));
+        return assignment;
+    }
+
+    private static void assertPairs(List<Assignment[]> expected, List<Assignment[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int p = 0; p < expected.size(); p++) {
+            assertEquals("input " + p, expected.get(p)[0], actual.get(p)[0]);
+            assertEquals("output " + p, expected.get(p)[1], actual.get(p)[1]);
+        }
+    }
+}
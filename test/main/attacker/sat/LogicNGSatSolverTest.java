@@ -0,0 +1,69 @@
+package main.attacker.sat;
+
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.logicng.collections.LNGIntVector;
+import org.logicng.datastructures.Tristate;
+import org.logicng.formulas.FormulaFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that clauses added directly to the solver change the next result. MiniSat returns its previous result,
+ * if nothing was added through its own interface since the last call, so solve() has to bypass it.
+ */
+public class LogicNGSatSolverTest {
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void clausesAfterSatisfiableResult() {
+        checkSolver(SatSolverFactory.createLogicNGSolver());
+    }
+
+    @Test
+    public void clausesAfterSatisfiableResultOfPortfolio() {
+        checkSolver(new LogicNGSatSolver(Arrays.asList(SolverEngine.MINISAT, SolverEngine.GLUCOSE)));
+    }
+
+    private static void checkSolver(SatSolverWrapper solver) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        solver.addFormula(ff.or(ff.variable("a"), ff.variable("b")));
+        assertEquals(Tristate.TRUE, solver.solve());
+
+        int a = solver.getOrAddVariable("a");
+        int b = solver.getOrAddVariable("b");
+        solver.addClause(new LNGIntVector(new int[]{ SatSolverWrapper.literal(a, false) }));
+        assertEquals("after clause ~a", Tristate.TRUE, solver.solve());
+        assertTrue("model after clause ~a", solver.getModel().positiveVariables().contains(ff.variable("b")));
+
+        // the previous call was satisfiable, now the clauses have no model
+        solver.addUnitClause(b, false);
+        assertEquals("after clause ~b", Tristate.FALSE, solver.solve());
+
+        // solving under assumptions has to see the clauses as well
+        assertEquals("under assumptions", Tristate.FALSE, solver.solve(Collections.singletonList(ff.variable("a"))));
+    }
+
+    @Test
+    public void clausesAfterSolvingUnderAssumptions() {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        SatSolverWrapper solver = SatSolverFactory.createLogicNGSolver();
+        solver.addFormula(ff.or(ff.variable("a"), ff.variable("b")));
+        assertEquals(Tristate.TRUE, solver.solve());
+        assertEquals(Tristate.TRUE, solver.solve(Collections.singletonList(ff.literal("a", false))));
+
+        // the last call was satisfiable with assumptions, the next one without assumptions is not
+        solver.addUnitClause(solver.getOrAddVariable("a"), false);
+        solver.addUnitClause(solver.getOrAddVariable("b"), false);
+        assertEquals(Tristate.FALSE, solver.solve());
+    }
+}
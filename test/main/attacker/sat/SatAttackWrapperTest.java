@@ -0,0 +1,205 @@
+package main.attacker.sat;
+
+import main.circuit.Fixtures;
+import main.circuit.aig.Aig;
+import main.circuit.aig.AigBalancer;
+import main.circuit.LogicCircuit;
+import main.circuit.simulation.BatchResult;
+import main.circuit.simulation.BitMatrix;
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.logicng.datastructures.Assignment;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the modes of SAT attack on every locked fixture, the same configurations as the benchmarks of SAT attack
+ * compare. The estimated key does not have to be the correct key, but the circuit with estimated key has to produce
+ * the same outputs as with the correct key on random inputs.
+ */
+public class SatAttackWrapperTest {
+
+    private static final int CHECK_VECTORS = 1 << 12;
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void classicAttack() throws URISyntaxException {
+        attackAll(SATConfig.createSATConfig());
+    }
+
+    @Test
+    public void incrementalAttack() throws URISyntaxException {
+        attackAll(SATConfig.createSATConfig().setIncremental(true));
+    }
+
+    @Test
+    public void doubleDipAttack() throws URISyntaxException {
+        attackAll(SATConfig.createSATConfig().setIncremental(true).setDoubleDIP(true));
+    }
+
+    @Test
+    public void cubeAndConquerAttack() throws URISyntaxException {
+        attackAll(SATConfig.createSATConfig().setIncremental(true).setCubeAndConquer(2));
+    }
+
+    @Test
+    public void cubeAndConquerAttackWithPortfolio() throws URISyntaxException {
+        attackAll(SATConfig.createSATConfig().setIncremental(true).setCubeAndConquer(2).setPortfolio(2));
+    }
+
+    @Test
+    public void classicAttackWithSymmetryBreaking() throws URISyntaxException {
+        attackAll(SATConfig.createSATConfig().setSymmetryBreaking(true));
+    }
+
+    @Test
+    public void incrementalAttackWithSymmetryBreaking() throws URISyntaxException {
+        attackAll(SATConfig.createSATConfig().setIncremental(true).setSymmetryBreaking(true));
+    }
+
+    @Test
+    public void attackOnBalancedAig() throws URISyntaxException {
+        for (String name : Fixtures.lockedNames()) {
+            LogicCircuit circuit = Fixtures.loadLocked(name);
+            LogicCircuit converted = AigBalancer.balance(Aig.fromCircuit(circuit)).toLogicCircuit(circuit.getName());
+            converted.setCorrectKey(circuit.getCorrectKey());
+
+            SatAttackWrapper attacker = new SatAttackWrapper(converted, SATConfig.createSATConfig().setIncremental(true));
+            attacker.performSATAttack(false);
+            assertTrue(name, attacker.isComplete());
+            assertKeyCorrect(name, attacker);
+        }
+    }
+
+    @Test
+    public void approximateAttackIsReproducible() throws URISyntaxException {
+        // a few samples and a loose threshold, so the sampled inputs decide the round and the key
+        SATConfig config = SATConfig.createSATConfig().setIncremental(true).setApproximation(1, 4, 0.3).setApproximationSeed(7);
+        for (String name : Fixtures.lockedNames()) {
+            SatAttackWrapper first = new SatAttackWrapper(Fixtures.loadLocked(name), config);
+            first.performSATAttack(false);
+            SatAttackWrapper second = new SatAttackWrapper(Fixtures.loadLocked(name), config);
+            second.performSATAttack(false);
+
+            LogicCircuit circuit = Fixtures.loadLocked(name);
+            assertEquals(name, first.isApproximate(), second.isApproximate());
+            assertEquals(name, first.getIterationCount(), second.getIterationCount());
+            assertArrayEquals(name, estimatedKey(circuit, first), estimatedKey(circuit, second));
+        }
+    }
+
+    @Test
+    public void realKeyFollowsSortedKeyNames() throws URISyntaxException {
+        // keys k0 ... k11 are sorted as k0, k1, k10, k11, k2, ..., so their numbering is not the order of bits
+        LogicCircuit circuit = Fixtures.loadLocked("c17_12.bench");
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Assignment realKey = new SatAttackWrapper(circuit, SATConfig.createSATConfig()).getRealKey();
+        Collection<Variable> outputs = circuit.getOutputVariables(ff);
+
+        BitMatrix inputs = BitMatrix.random(circuit.getInputNames().size(), 64, new Random(64));
+        BatchResult correct = circuit.evaluateBatch(inputs, circuit.getCorrectKey());
+        for (int v = 0; v < inputs.getColumnCount(); v++) {
+            Assignment output = circuit.evaluate(circuit.getInputLiterals(ff, inputs.getColumn(v)),
+                    realKey.literals(), outputs);
+            assertEquals("vector " + v, correct.getAssignment(v, outputs), output);
+        }
+    }
+
+    @Test
+    public void classicAttackStoppedByConflictLimit() throws URISyntaxException {
+        assertStoppedByConflictLimit(false);
+    }
+
+    @Test
+    public void incrementalAttackStoppedByConflictLimit() throws URISyntaxException {
+        assertStoppedByConflictLimit(true);
+    }
+
+    @Test
+    public void cancelledAttackReportsNoKey() throws URISyntaxException {
+        CancelToken token = new CancelToken();
+        token.cancel();
+        for (boolean incremental : new boolean[]{ false, true }) {
+            SatAttackWrapper attacker = new SatAttackWrapper(Fixtures.loadLocked("chain16.bench"),
+                    SATConfig.createSATConfig().setIncremental(incremental).setCancelToken(token));
+            attacker.performSATAttack(false);
+            assertFalse("incremental " + incremental, attacker.isComplete());
+            assertEquals("incremental " + incremental, 0, attacker.getIterationCount());
+            assertTrue("incremental " + incremental, attacker.getEstimatedKey().literals().isEmpty());
+        }
+    }
+
+    /**
+     * Every search of distinguishing input on chain16 needs a conflict, so the attack with conflict limit 1
+     * stops before the last round and reports the partial key.
+     */
+    private static void assertStoppedByConflictLimit(boolean incremental) throws URISyntaxException {
+        String name = "chain16.bench";
+        SatAttackWrapper unlimited = new SatAttackWrapper(Fixtures.loadLocked(name),
+                SATConfig.createSATConfig().setIncremental(incremental));
+        unlimited.performSATAttack(false);
+
+        SatAttackWrapper attacker = new SatAttackWrapper(Fixtures.loadLocked(name),
+                SATConfig.createSATConfig().setIncremental(incremental).setConflictLimit(1));
+        attacker.performSATAttack(false);
+        assertFalse(attacker.isComplete());
+        assertTrue(attacker.getIterationCount() < unlimited.getIterationCount());
+        // the partial key is a model of key extraction, so it assigns every key bit
+        assertEquals(Fixtures.loadLocked(name).getKeyInputNames().size(), attacker.getEstimatedKey().literals().size());
+    }
+
+    private static void attackAll(SATConfig config) throws URISyntaxException {
+        for (String name : Fixtures.lockedNames()) {
+            // attack modifies the circuit, so the checked circuit is a new instance
+            SatAttackWrapper attacker = new SatAttackWrapper(Fixtures.loadLocked(name), config);
+            attacker.performSATAttack(false);
+            assertTrue(name, attacker.isComplete());
+            assertKeyCorrect(name, attacker);
+        }
+    }
+
+    /**
+     * Compares the outputs of circuit with estimated and correct key on random inputs.
+     */
+    static void assertKeyCorrect(String name, SatAttackWrapper attacker) throws URISyntaxException {
+        LogicCircuit circuit = Fixtures.loadLocked(name);
+        int[] key = estimatedKey(circuit, attacker);
+
+        BitMatrix inputs = BitMatrix.random(circuit.getInputNames().size(), CHECK_VECTORS, new Random(CHECK_VECTORS));
+        BatchResult estimated = circuit.evaluateBatch(inputs, key);
+        BatchResult correct = circuit.evaluateBatch(inputs, circuit.getCorrectKey());
+        for (String output : circuit.getOutputNames())
+            assertArrayEquals(name + ", output " + output, correct.getSignalRow(output), estimated.getSignalRow(output));
+    }
+
+    /**
+     * @return estimated key of attacker in the order of sorted key names of circuit
+     */
+    private static int[] estimatedKey(LogicCircuit circuit, SatAttackWrapper attacker) {
+        List<String> keyNames = circuit.getSortedKeyInputNames();
+        int[] key = new int[keyNames.size()];
+        for (Literal l : attacker.getEstimatedKey().literals()) {
+            // estimated key is assigned to the K_A copy of key variables
+            int index = keyNames.indexOf(l.name().substring(0, l.name().length() - 2));
+            if (index != -1)
+                key[index] = l.phase() ? 1 : 0;
+        }
+        return key;
+    }
+}
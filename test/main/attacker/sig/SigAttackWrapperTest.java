@@ -0,0 +1,77 @@
+package main.attacker.sig;
+
+import main.attacker.sat.CancelToken;
+import main.attacker.sat.SATConfig;
+import main.circuit.AbstractLogicCircuit;
+import main.circuit.Fixtures;
+import main.circuit.LogicCircuit;
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs Sig attack on a plain fixture locked with AntiSAT. The AntiSAT key is random, so the tests check only
+ * the pairs which were found, not their number.
+ */
+public class SigAttackWrapperTest {
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void attackReportsCorrectPairs() throws URISyntaxException {
+        LogicCircuit locked = lockWithAntiSat("c17.bench");
+        SigAttackWrapper attacker = new SigAttackWrapper(locked);
+        attacker.performSigAttack(false, false);
+        assertTrue(attacker.isComplete());
+        assertFalse(attacker.getRelatedInputs().isEmpty());
+        assertPairsCorrect(locked, attacker);
+    }
+
+    @Test
+    public void attackStoppedByConflictLimit() throws URISyntaxException {
+        LogicCircuit locked = lockWithAntiSat("c17.bench");
+        SigAttackWrapper attacker = new SigAttackWrapper(locked)
+                .setSolverConfig(SATConfig.createSATConfig().setConflictLimit(1));
+        attacker.performSigAttack(false, false);
+        assertFalse(attacker.isComplete());
+        assertPairsCorrect(locked, attacker);
+    }
+
+    @Test
+    public void cancelledAttackReportsNoPairs() throws URISyntaxException {
+        CancelToken token = new CancelToken();
+        token.cancel();
+        SigAttackWrapper attacker = new SigAttackWrapper(lockWithAntiSat("c17.bench"))
+                .setSolverConfig(SATConfig.createSATConfig().setCancelToken(token));
+        attacker.performSigAttack(false, false);
+        assertFalse(attacker.isComplete());
+        assertTrue(attacker.getRelatedInputs().isEmpty());
+    }
+
+    /**
+     * Checks that every reported input is the one compared with the reported AntiSAT key bit.
+     */
+    private static void assertPairsCorrect(LogicCircuit locked, SigAttackWrapper attacker) {
+        for (Map.Entry<String, String> pair : attacker.getRelatedInputs().entrySet())
+            assertEquals(pair.getValue(), locked.getInputKeyMapping().get(pair.getValue()).getKey(), pair.getKey());
+    }
+
+    private static LogicCircuit lockWithAntiSat(String name) throws URISyntaxException {
+        File plainFile = Fixtures.plainFile(name);
+        LogicCircuit circuit = AbstractLogicCircuit.getCircuitInstance(plainFile);
+        circuit.insertAntiSAT(0, circuit.getInputNames().size());
+        circuit.createEvaluationCircuit(plainFile);
+        return circuit;
+    }
+}
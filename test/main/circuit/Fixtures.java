@@ -0,0 +1,67 @@
+package main.circuit;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Loads the circuits of test resources. Every file in /locked is a small locked circuit in .bench format
+ * with its correct key in the comment line, so tests running over all locked circuits pick up new files
+ * without changes. Files in /plain are circuits without key, e.g. for the attacks on AntiSAT.
+ */
+public final class Fixtures {
+
+    private static final String LOCKED_DIRECTORY = "/locked/";
+    private static final String PLAIN_DIRECTORY = "/plain/";
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return names of all locked circuits, sorted
+     */
+    public static List<String> lockedNames() throws URISyntaxException {
+        File directory = new File(Fixtures.class.getResource(LOCKED_DIRECTORY).toURI());
+        List<String> names = new ArrayList<>();
+        for (String name : directory.list())
+            if (name.endsWith(".bench"))
+                names.add(name);
+        names.sort(null);
+        return names;
+    }
+
+    /**
+     * Loads a locked circuit and checks that its correct key is known.
+     * @param name file name of circuit in /locked
+     * @return an instance of LogicCircuit
+     */
+    public static LogicCircuit loadLocked(String name) throws URISyntaxException {
+        File benchFile = new File(Fixtures.class.getResource(LOCKED_DIRECTORY + name).toURI());
+        LogicCircuit circuit = AbstractLogicCircuit.getCircuitInstance(benchFile);
+        assertNotNull(name, circuit);
+        assertEquals(name, circuit.getKeyInputNames().size(), circuit.getCorrectKey().length);
+        return circuit;
+    }
+
+    /**
+     * @return all locked circuits, in the order of their names
+     */
+    public static List<LogicCircuit> loadAllLocked() throws URISyntaxException {
+        List<LogicCircuit> circuits = new ArrayList<>();
+        for (String name : lockedNames())
+            circuits.add(loadLocked(name));
+        return circuits;
+    }
+
+    /**
+     * @param name file name of circuit in /plain
+     * @return bench file of the plain circuit
+     */
+    public static File plainFile(String name) throws URISyntaxException {
+        return new File(Fixtures.class.getResource(PLAIN_DIRECTORY + name).toURI());
+    }
+}
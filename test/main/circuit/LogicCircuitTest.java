@@ -0,0 +1,42 @@
+package main.circuit;
+
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URISyntaxException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Writes every locked fixture into a .bench file and loads it again. Gates are written from the netlist,
+ * the loaded circuit has to have the same structure and the same correct key.
+ */
+public class LogicCircuitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void benchRoundTrip() throws URISyntaxException {
+        for (String name : Fixtures.lockedNames()) {
+            LogicCircuit circuit = Fixtures.loadLocked(name);
+            circuit.writeToFile(this.folder.getRoot().getPath(), name, "round trip");
+
+            LogicCircuit loaded = AbstractLogicCircuit.getCircuitInstance(new File(this.folder.getRoot(), name));
+            assertNotNull(name, loaded);
+            assertEquals(name, circuit.getStructureFingerprint(), loaded.getStructureFingerprint());
+            assertArrayEquals(name, circuit.getCorrectKey(), loaded.getCorrectKey());
+        }
+    }
+}
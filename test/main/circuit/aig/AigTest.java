@@ -0,0 +1,90 @@
+package main.circuit.aig;
+
+import main.attacker.sat.SatEvaluationSession;
+import main.circuit.Fixtures;
+import main.circuit.LogicCircuit;
+import main.circuit.simulation.BatchResult;
+import main.circuit.simulation.BitMatrix;
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.logicng.datastructures.Assignment;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Converts every locked fixture into an AIG, balances it and converts both graphs back into a logic circuit
+ * and into CNF. The round trips have to produce the same outputs as the original circuit on random input
+ * and key vectors, including constant outputs (emitted as XOR(x, x) or XNOR(x, x)) and outputs merged
+ * with another signal.
+ */
+public class AigTest {
+
+    private static final int VECTORS = 256;
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void roundTripKeepsOutputs() throws URISyntaxException {
+        for (String name : Fixtures.lockedNames()) {
+            LogicCircuit circuit = Fixtures.loadLocked(name);
+            Aig aig = Aig.fromCircuit(circuit);
+            Aig balanced = AigBalancer.balance(aig);
+            assertTrue(name, balanced.getDepth() <= aig.getDepth());
+            assertTrue(name, balanced.getAndCount() <= aig.getAndCount());
+
+            checkRoundTrip(name, circuit, aig);
+            checkRoundTrip(name + " (balanced)", circuit, balanced);
+        }
+    }
+
+    private static void checkRoundTrip(String name, LogicCircuit circuit, Aig aig) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Random random = new Random(VECTORS);
+        BitMatrix inputs = BitMatrix.random(circuit.getInputNames().size(), VECTORS, random);
+        BitMatrix keys = BitMatrix.random(circuit.getKeyInputNames().size(), VECTORS, random);
+        BatchResult expected = circuit.evaluateBatch(inputs, keys);
+
+        LogicCircuit converted = aig.toLogicCircuit(circuit.getName());
+        assertEquals(name, circuit.getSortedInputNames(), converted.getSortedInputNames());
+        assertEquals(name, circuit.getSortedKeyInputNames(), converted.getSortedKeyInputNames());
+        assertEquals(name, circuit.getOutputNames(), converted.getOutputNames());
+        BatchResult actual = converted.evaluateBatch(inputs, keys);
+        for (String output : circuit.getOutputNames())
+            assertArrayEquals(name + ", output " + output, expected.getSignalRow(output), actual.getSignalRow(output));
+
+        List<Variable> filter = new ArrayList<>(circuit.getInputVariables(ff));
+        for (String key : circuit.getKeyInputNames())
+            filter.add(ff.variable(key));
+        filter.addAll(circuit.getOutputVariables(ff));
+
+        try (SatEvaluationSession session = new SatEvaluationSession(aig.toCNF())) {
+            // inputs and keys driving no output have to stay in the model (checked before assumptions add them)
+            Assignment model = session.evaluate(circuit.getInputLiterals(ff, inputs.getColumn(0)), null);
+            for (Variable variable : filter) {
+                assertTrue(name + ", CNF model of " + variable, model.positiveVariables().contains(variable)
+                        || model.negativeVariables().contains(variable));
+            }
+
+            for (int v = 0; v < VECTORS; v++) {
+                Collection<Literal> assumptions = new ArrayList<>(circuit.getInputLiterals(ff, inputs.getColumn(v)));
+                assumptions.addAll(circuit.getKeyLiterals(ff, keys.getColumn(v)));
+                assertEquals(name + ", CNF vector " + v, expected.getAssignment(v, filter), session.evaluate(assumptions, filter));
+            }
+        }
+    }
+}
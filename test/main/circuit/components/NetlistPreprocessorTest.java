@@ -0,0 +1,96 @@
+package main.circuit.components;
+
+import main.attacker.sat.SatEvaluationSession;
+import main.circuit.Fixtures;
+import main.circuit.LogicCircuit;
+import main.circuit.simulation.BatchResult;
+import main.circuit.simulation.BitMatrix;
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.logicng.datastructures.Assignment;
+import org.logicng.formulas.Formula;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the CNF of preprocessed netlist produces the same outputs as the original CNF and the simulator
+ * on random input and key vectors. Inputs and keys removed together with the logic they drive have to stay
+ * in the models of solver with their assumed values.
+ */
+public class NetlistPreprocessorTest {
+
+    private static final int VECTORS = 128;
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void preprocessedCNFHasSameOutputs() throws URISyntaxException {
+        for (String name : Fixtures.lockedNames())
+            checkCircuit(name, Fixtures.loadLocked(name));
+    }
+
+    @Test
+    public void redundantLogicIsRemoved() throws URISyntaxException {
+        // constant outputs, duplicated gates, BUF / NOT chains and dead logic
+        LogicCircuit circuit = Fixtures.loadLocked("redundant_4.bench");
+        NetlistPreprocessor preprocessor = new NetlistPreprocessor(circuit.getNetlist());
+        assertTrue(preprocessor.getGateCount() + " of " + circuit.getNetlist().getGateCount() + " gates",
+                preprocessor.getGateCount() <= circuit.getNetlist().getGateCount() / 2);
+    }
+
+    private static void checkCircuit(String name, LogicCircuit circuit) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Formula original = circuit.getCNF();
+        Formula preprocessed = new NetlistPreprocessor(circuit.getNetlist()).createCNF();
+
+        List<Variable> filter = new ArrayList<>(circuit.getInputVariables(ff));
+        for (String key : circuit.getKeyInputNames())
+            filter.add(ff.variable(key));
+        filter.addAll(circuit.getOutputVariables(ff));
+
+        Random random = new Random(VECTORS);
+        BitMatrix inputs = BitMatrix.random(circuit.getInputNames().size(), VECTORS, random);
+        BitMatrix keys = BitMatrix.random(circuit.getKeyInputNames().size(), VECTORS, random);
+        BatchResult simulated = circuit.evaluateBatch(inputs, keys);
+
+        try (SatEvaluationSession originalSession = new SatEvaluationSession(original);
+             SatEvaluationSession preprocessedSession = new SatEvaluationSession(preprocessed)) {
+            // without assumptions on keys, the model still has to assign every input and key
+            // (checked first, assumptions would add the missing variables into the solver)
+            Collection<Literal> inputAssumptions = circuit.getInputLiterals(ff, inputs.getColumn(0));
+            assertAssigned(name + ", original", originalSession.evaluate(inputAssumptions, null), filter);
+            assertAssigned(name + ", preprocessed", preprocessedSession.evaluate(inputAssumptions, null), filter);
+
+            for (int v = 0; v < VECTORS; v++) {
+                Collection<Literal> assumptions = new ArrayList<>(circuit.getInputLiterals(ff, inputs.getColumn(v)));
+                assumptions.addAll(circuit.getKeyLiterals(ff, keys.getColumn(v)));
+
+                Assignment expected = simulated.getAssignment(v, filter);
+                String vector = name + ", vector " + v;
+                assertEquals("original, " + vector, expected, originalSession.evaluate(assumptions, filter));
+                assertEquals("preprocessed, " + vector, expected, preprocessedSession.evaluate(assumptions, filter));
+            }
+        }
+    }
+
+    private static void assertAssigned(String message, Assignment model, List<Variable> variables) {
+        for (Variable variable : variables) {
+            assertTrue(message + ", " + variable, model.positiveVariables().contains(variable)
+                    || model.negativeVariables().contains(variable));
+        }
+    }
+}
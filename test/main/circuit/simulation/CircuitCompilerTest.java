@@ -0,0 +1,75 @@
+package main.circuit.simulation;
+
+import main.circuit.Fixtures;
+import main.circuit.LogicCircuit;
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URISyntaxException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that the evaluator compiled at runtime computes the same value of every signal as the interpreted
+ * simulator on random words of inputs and keys. Skipped if the Java compiler is not available.
+ */
+public class CircuitCompilerTest {
+
+    private static final int WORDS = 16;
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void compiledEqualsInterpreted() throws URISyntaxException {
+        for (String name : Fixtures.lockedNames()) {
+            LogicCircuit circuit = Fixtures.loadLocked(name);
+            Random random = new Random(WORDS);
+            long[][] inputWords = new long[WORDS][circuit.getInputNames().size()];
+            long[][] keyWords = new long[WORDS][circuit.getKeyInputNames().size()];
+            for (int w = 0; w < WORDS; w++) {
+                fill(inputWords[w], random);
+                fill(keyWords[w], random);
+            }
+
+            circuit.setCompiledEvaluation(false);
+            long[][] expected = new long[WORDS][];
+            for (int w = 0; w < WORDS; w++)
+                expected[w] = circuit.getSimulator().simulate(inputWords[w], keyWords[w]);
+
+            circuit.setCompiledEvaluation(true);
+            assumeTrue("Java compiler is not available.", circuit.getSimulator().isCompiled());
+            for (int w = 0; w < WORDS; w++)
+                assertArrayEquals(name + ", word " + w, expected[w], circuit.getSimulator().simulate(inputWords[w], keyWords[w]));
+        }
+    }
+
+    @Test
+    public void kernelIsCachedByFingerprint() throws URISyntaxException {
+        // another instance of the same circuit gets the cached kernel, other circuits get their own
+        Set<Consumer<long[]>> kernels = new HashSet<>();
+        for (String name : Fixtures.lockedNames()) {
+            LogicCircuit circuit = Fixtures.loadLocked(name);
+            Consumer<long[]> kernel = CircuitCompiler.compile(circuit.getNetlist(), circuit.getStructureFingerprint());
+            assumeTrue("Java compiler is not available.", kernel != null);
+            LogicCircuit copy = Fixtures.loadLocked(name);
+            assertSame(name, kernel, CircuitCompiler.compile(copy.getNetlist(), copy.getStructureFingerprint()));
+            assertTrue(name, kernels.add(kernel));
+        }
+    }
+
+    private static void fill(long[] words, Random random) {
+        for (int i = 0; i < words.length; i++)
+            words[i] = random.nextLong();
+    }
+}
@@ -0,0 +1,113 @@
+package main.circuit.simulation;
+
+import main.attacker.sat.SatEvaluationSession;
+import main.circuit.Fixtures;
+import main.circuit.LogicCircuit;
+import main.circuit.components.Netlist;
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.logicng.datastructures.Assignment;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the three ways of evaluating a circuit agree on random input and key vectors - evaluate() of
+ * circuit, packed evaluateBatch() and the SAT evaluation session over the circuit CNF. Every signal is compared,
+ * the outputs as well as the internal nodes.
+ */
+public class CircuitSimulatorTest {
+
+    private static final int VECTORS = 200;
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void evaluatorsAgreeOnEverySignal() throws URISyntaxException {
+        for (String name : Fixtures.lockedNames())
+            checkCircuit(name, Fixtures.loadLocked(name));
+    }
+
+    @Test
+    public void keyIsRequiredForLockedCircuit() throws URISyntaxException {
+        LogicCircuit circuit = Fixtures.loadLocked("c17_4.bench");
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Collection<Literal> inputs = circuit.getInputLiterals(ff, null);
+
+        try {
+            circuit.evaluate(inputs, null, circuit.getOutputVariables(ff));
+            fail("Circuit with key inputs evaluated without key.");
+        } catch (IllegalArgumentException expected) {
+            // the simulator would use zero key, while the SAT session leaves the key free
+        }
+
+        // the zero key has to be explicit and it is the same as the zero key of batch evaluation
+        Assignment output = circuit.evaluate(inputs, circuit.getKeyLiterals(ff, null), null);
+        BatchResult batch = circuit.evaluateBatch(new BitMatrix(inputs.size(), 1), (int[]) null);
+        assertEquals(batch.getAssignment(0, signalVariables(ff, circuit.getNetlist())),
+                restrict(output, signalVariables(ff, circuit.getNetlist())));
+    }
+
+    private static void checkCircuit(String name, LogicCircuit circuit) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Netlist netlist = circuit.getNetlist();
+        List<Variable> signals = signalVariables(ff, netlist);
+
+        Random random = new Random(VECTORS);
+        BitMatrix inputs = BitMatrix.random(circuit.getInputNames().size(), VECTORS, random);
+        BitMatrix keys = BitMatrix.random(circuit.getKeyInputNames().size(), VECTORS, random);
+        BatchResult batch = circuit.evaluateBatch(inputs, keys);
+
+        try (SatEvaluationSession session = circuit.openEvaluationSession()) {
+            for (int v = 0; v < VECTORS; v++) {
+                Collection<Literal> inputLiterals = circuit.getInputLiterals(ff, inputs.getColumn(v));
+                Collection<Literal> keyLiterals = circuit.getKeyLiterals(ff, keys.getColumn(v));
+                List<Literal> assumptions = new ArrayList<>(inputLiterals);
+                assumptions.addAll(keyLiterals);
+
+                Assignment expected = batch.getAssignment(v, signals);
+                String vector = name + ", vector " + v;
+                assertEquals(vector, expected, restrict(circuit.evaluate(inputLiterals, keyLiterals, null), signals));
+                assertEquals(vector, expected, session.evaluate(assumptions, signals));
+            }
+        }
+
+        // a batch with the same key in every vector is the same as a batch of repeated keys
+        int[] key = keys.getColumn(0);
+        BitMatrix repeated = new BitMatrix(key.length, VECTORS);
+        for (int v = 0; v < VECTORS; v++)
+            repeated.setColumn(v, key);
+        BitMatrix expected = circuit.evaluateBatch(inputs, repeated).getValues();
+        BitMatrix actual = circuit.evaluateBatch(inputs, key).getValues();
+        for (int s = 0; s < netlist.getSignalCount(); s++)
+            assertArrayEquals(name + ", " + netlist.getSignalName(s), expected.getRow(s), actual.getRow(s));
+    }
+
+    private static List<Variable> signalVariables(FormulaFactory ff, Netlist netlist) {
+        List<Variable> signals = new ArrayList<>();
+        for (int s = 0; s < netlist.getSignalCount(); s++)
+            signals.add(ff.variable(netlist.getSignalName(s)));
+        return signals;
+    }
+
+    private static Assignment restrict(Assignment assignment, List<Variable> variables) {
+        Assignment restricted = new Assignment();
+        for (Variable variable : variables)
+            restricted.addLiteral(assignment.positiveVariables().contains(variable) ? variable : variable.negate());
+        return restricted;
+    }
+}
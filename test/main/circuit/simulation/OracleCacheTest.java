@@ -0,0 +1,176 @@
+package main.circuit.simulation;
+
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.logicng.datastructures.Assignment;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Round trips of the oracle store through temporary files. Repeated records (a vector evicted and stored again)
+ * and an incomplete last record (a run killed while writing) have to be compacted on the next load, so that
+ * the records appended afterwards stay aligned.
+ */
+public class OracleCacheTest {
+
+    // 70 inputs and 2 keys take two words per vector
+    private static final int INPUTS = 70;
+    private static final int KEYS = 2;
+    private static final int OUTPUTS = 3;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int RECORD_BYTES = (2 + 1) * Long.BYTES;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<String> inputNames;
+    private List<String> keyNames;
+    private List<String> outputNames;
+    private List<Variable> outputVariables;
+
+    @Before
+    public void createNames() {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        ff.clear();
+        this.inputNames = names("G", INPUTS);
+        this.keyNames = names("k", KEYS);
+        this.outputNames = names("y", OUTPUTS);
+        this.outputVariables = new ArrayList<>();
+        for (String name : this.outputNames)
+            this.outputVariables.add(ff.variable(name));
+    }
+
+    @Test
+    public void storeRoundTrip() throws IOException {
+        File store = new File(this.folder.getRoot(), "oracle.bin");
+        Random random = new Random(1);
+        List<long[]> vectors = new ArrayList<>();
+        List<Assignment> responses = new ArrayList<>();
+
+        OracleCache cache = createCache(100, store);
+        for (int v = 0; v < 20; v++)
+            put(cache, random, vectors, responses);
+        cache.closeStore();
+        assertEquals(HEADER_BYTES + 20 * RECORD_BYTES, store.length());
+
+        OracleCache loaded = createCache(100, store);
+        assertEquals(20, loaded.getSize());
+        assertResponses(loaded, vectors, responses);
+        loaded.closeStore();
+        assertEquals("store of consistent file is not rewritten", HEADER_BYTES + 20 * RECORD_BYTES, store.length());
+    }
+
+    @Test
+    public void repeatedRecordsAreCompacted() throws IOException {
+        File store = new File(this.folder.getRoot(), "oracle.bin");
+        Random random = new Random(2);
+        List<long[]> vectors = new ArrayList<>();
+        List<Assignment> responses = new ArrayList<>();
+
+        // capacity 2 evicts the first vector, so it is stored again when it comes back
+        OracleCache cache = createCache(2, store);
+        for (int v = 0; v < 3; v++)
+            put(cache, random, vectors, responses);
+        cache.put(vectors.get(0), responses.get(0), this.outputVariables);
+        cache.closeStore();
+        assertEquals(HEADER_BYTES + 4 * RECORD_BYTES, store.length());
+
+        OracleCache loaded = createCache(100, store);
+        assertEquals(3, loaded.getSize());
+        assertEquals(HEADER_BYTES + 3 * RECORD_BYTES, store.length());
+        assertResponses(loaded, vectors, responses);
+
+        // records appended to the compacted store are read by the next run
+        put(loaded, random, vectors, responses);
+        loaded.closeStore();
+        OracleCache reloaded = createCache(100, store);
+        assertEquals(4, reloaded.getSize());
+        assertEquals(HEADER_BYTES + 4 * RECORD_BYTES, store.length());
+        assertResponses(reloaded, vectors, responses);
+        reloaded.closeStore();
+    }
+
+    @Test
+    public void truncatedRecordIsDropped() throws IOException {
+        File store = new File(this.folder.getRoot(), "oracle.bin");
+        Random random = new Random(3);
+        List<long[]> vectors = new ArrayList<>();
+        List<Assignment> responses = new ArrayList<>();
+
+        OracleCache cache = createCache(100, store);
+        for (int v = 0; v < 5; v++)
+            put(cache, random, vectors, responses);
+        cache.closeStore();
+        truncate(store, 3);
+        vectors.remove(4);
+        responses.remove(4);
+
+        OracleCache loaded = createCache(100, store);
+        assertEquals(4, loaded.getSize());
+        assertEquals(HEADER_BYTES + 4 * RECORD_BYTES, store.length());
+        assertResponses(loaded, vectors, responses);
+
+        put(loaded, random, vectors, responses);
+        loaded.closeStore();
+        OracleCache reloaded = createCache(100, store);
+        assertEquals(5, reloaded.getSize());
+        assertResponses(reloaded, vectors, responses);
+        reloaded.closeStore();
+    }
+
+    private OracleCache createCache(int capacity, File store) {
+        return new OracleCache(this.inputNames, this.keyNames, this.outputNames, capacity, store);
+    }
+
+    /**
+     * Puts a random vector with random response into the cache and remembers both.
+     */
+    private void put(OracleCache cache, Random random, List<long[]> vectors, List<Assignment> responses) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        List<Literal> inputs = new ArrayList<>();
+        for (String name : this.inputNames)
+            inputs.add(ff.literal(name, random.nextBoolean()));
+        List<Literal> keys = new ArrayList<>();
+        for (String name : this.keyNames)
+            keys.add(ff.literal(name, random.nextBoolean()));
+        Assignment response = new Assignment();
+        for (Variable output : this.outputVariables)
+            response.addLiteral(random.nextBoolean() ? output : output.negate());
+
+        long[] vector = cache.packVector(inputs, keys);
+        cache.put(vector, response, this.outputVariables);
+        vectors.add(vector);
+        responses.add(response);
+    }
+
+    private void assertResponses(OracleCache cache, List<long[]> vectors, List<Assignment> responses) {
+        for (int v = 0; v < vectors.size(); v++)
+            assertEquals("vector " + v, responses.get(v), cache.get(vectors.get(v), this.outputVariables));
+    }
+
+    private static void truncate(File file, int bytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - bytes);
+        }
+    }
+
+    private static List<String> names(String prefix, int count) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            names.add(prefix + String.format("%02d", i));
+        return names;
+    }
+}
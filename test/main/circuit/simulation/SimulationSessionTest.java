@@ -0,0 +1,88 @@
+package main.circuit.simulation;
+
+import main.circuit.Fixtures;
+import main.circuit.LogicCircuit;
+import main.circuit.components.Netlist;
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URISyntaxException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the incremental simulation session on every locked fixture. Every flip has to give the same values
+ * of all signals as the full simulation of the flipped vector, and revert has to restore every signal
+ * of the base vector.
+ */
+public class SimulationSessionTest {
+
+    private static final int ROUNDS = 8;
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void flipMatchesSimulationAndRevertRestores() throws URISyntaxException {
+        for (String name : Fixtures.lockedNames()) {
+            LogicCircuit circuit = Fixtures.loadLocked(name);
+            Netlist netlist = circuit.getNetlist();
+            CircuitSimulator simulator = circuit.getSimulator();
+            Random random = new Random(ROUNDS);
+
+            for (int r = 0; r < ROUNDS; r++) {
+                long[] inputWords = randomWords(netlist.getInputCount(), random);
+                long[] keyWords = randomWords(netlist.getKeyCount(), random);
+                long[] base = simulator.simulate(inputWords, keyWords);
+                SimulationSession session = circuit.openSimulationSession(inputWords, keyWords);
+                assertValues(name + ", base " + r, base, session);
+
+                // single input flips
+                for (int i = 0; i < netlist.getInputCount(); i++) {
+                    session.flipInput(i);
+                    inputWords[i] = ~inputWords[i];
+                    assertValues(name + ", flip of input " + i, simulator.simulate(inputWords, keyWords), session);
+
+                    session.revert();
+                    inputWords[i] = ~inputWords[i];
+                    assertValues(name + ", revert of input " + i, base, session);
+                    assertEquals(0, session.getChangeCount());
+                }
+
+                // several partial flips of inputs and keys reverted at once
+                for (int f = 0; f < 4; f++) {
+                    long mask = random.nextLong();
+                    if (random.nextBoolean() || netlist.getKeyCount() == 0) {
+                        int i = random.nextInt(netlist.getInputCount());
+                        session.flipSignal(netlist.getInputSignal(i), mask);
+                        inputWords[i] ^= mask;
+                    } else {
+                        int k = random.nextInt(netlist.getKeyCount());
+                        session.flipSignal(netlist.getKeySignal(k), mask);
+                        keyWords[k] ^= mask;
+                    }
+                    assertValues(name + ", flip " + f, simulator.simulate(inputWords, keyWords), session);
+                }
+                session.revert();
+                assertValues(name + ", revert of flips", base, session);
+            }
+        }
+    }
+
+    private static void assertValues(String message, long[] expected, SimulationSession session) {
+        Netlist netlist = session.getNetlist();
+        for (int s = 0; s < netlist.getSignalCount(); s++)
+            assertEquals(message + ", signal " + netlist.getSignalName(s), expected[s], session.getValue(s));
+    }
+
+    private static long[] randomWords(int count, Random random) {
+        long[] words = new long[count];
+        for (int i = 0; i < count; i++)
+            words[i] = random.nextLong();
+        return words;
+    }
+}
@@ -0,0 +1,127 @@
+package main.circuit.utilities;
+
+import main.attacker.sat.SatSolverFactory;
+import main.attacker.sat.SatSolverWrapper;
+import main.circuit.Fixtures;
+import main.circuit.LogicCircuit;
+import main.circuit.simulation.BatchResult;
+import main.circuit.simulation.BitMatrix;
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.logicng.datastructures.Substitution;
+import org.logicng.datastructures.Tristate;
+import org.logicng.formulas.Formula;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the miter with shared key-independent logic (circuitCopiesWithSameInput()) with the miter of two
+ * complete copies of circuit, which share only the inputs. Both have to be satisfiable for the same key pairs,
+ * exactly when some input gives different outputs for the two keys.
+ */
+public class CircuitUtilitiesTest {
+
+    private static final int KEY_PAIRS = 48;
+
+    @Before
+    public void clearFormulaFactory() {
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void sharedMiterIsEquivalentToDuplicatedMiter() throws URISyntaxException {
+        for (String name : Fixtures.lockedNames())
+            checkCircuit(name, Fixtures.loadLocked(name));
+    }
+
+    private static void checkCircuit(String name, LogicCircuit circuit) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Formula difference = CircuitUtilities.createDifferentOutputs(circuit);
+
+        SatSolverWrapper shared = SatSolverFactory.createLogicNGSolver();
+        shared.addFormula(CircuitUtilities.distinctCircuitsWithSameInput(circuit));
+        shared.addFormula(difference);
+
+        SatSolverWrapper duplicated = SatSolverFactory.createLogicNGSolver();
+        duplicated.addFormula(duplicate(circuit, "_A"));
+        duplicated.addFormula(duplicate(circuit, "_B"));
+        duplicated.addFormula(difference);
+
+        int size = circuit.getKeyInputNames().size();
+        int[] correctKey = circuit.getCorrectKey();
+        Random random = new Random(KEY_PAIRS);
+        for (int p = 0; p < KEY_PAIRS; p++) {
+            // equal keys, the correct key against another key and two random keys
+            int[] first = p % 3 == 2 ? randomKey(size, random) : correctKey;
+            int[] second = p % 3 == 0 ? first : randomKey(size, random);
+
+            List<Literal> assumptions = new ArrayList<>();
+            keyLiterals(ff, circuit, first, "_A", assumptions);
+            keyLiterals(ff, circuit, second, "_B", assumptions);
+
+            Tristate expected = Tristate.fromBool(isDistinguishable(circuit, first, second));
+            String pair = name + ", keys " + Arrays.toString(first) + " and " + Arrays.toString(second);
+            assertEquals("duplicated, " + pair, expected, duplicated.solve(assumptions));
+            assertEquals("shared, " + pair, expected, shared.solve(assumptions));
+        }
+    }
+
+    /**
+     * Copies the CNF of circuit with every variable except inputs renamed, so the copies share only inputs.
+     */
+    private static Formula duplicate(LogicCircuit circuit, String suffix) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        Formula CNF = circuit.getCNF();
+        Substitution substitution = new Substitution();
+        for (Variable v : CNF.variables()) {
+            if (!circuit.isInputVariable(v))
+                substitution.addMapping(v, ff.variable(v.name() + suffix));
+        }
+        return CNF.substitute(substitution);
+    }
+
+    /**
+     * Simulates every input vector with both keys.
+     * @return true if some input gives different outputs
+     */
+    private static boolean isDistinguishable(LogicCircuit circuit, int[] first, int[] second) {
+        int inputs = circuit.getInputNames().size();
+        assertTrue("too many inputs to enumerate", inputs <= 16);
+        BitMatrix vectors = new BitMatrix(inputs, 1 << inputs);
+        for (int v = 0; v < 1 << inputs; v++)
+            for (int i = 0; i < inputs; i++)
+                vectors.set(i, v, ((v >>> i) & 1) != 0);
+
+        BatchResult firstResult = circuit.evaluateBatch(vectors, first);
+        BatchResult secondResult = circuit.evaluateBatch(vectors, second);
+        for (String output : circuit.getOutputNames()) {
+            if (!Arrays.equals(firstResult.getSignalRow(output), secondResult.getSignalRow(output)))
+                return true;
+        }
+        return false;
+    }
+
+    private static void keyLiterals(FormulaFactory ff, LogicCircuit circuit, int[] key, String suffix, List<Literal> literals) {
+        List<String> keyNames = circuit.getSortedKeyInputNames();
+        for (int k = 0; k < keyNames.size(); k++)
+            literals.add(ff.literal(keyNames.get(k) + suffix, key[k] == 1));
+    }
+
+    private static int[] randomKey(int size, Random random) {
+        int[] key = new int[size];
+        for (int k = 0; k < size; k++)
+            key[k] = random.nextInt(2);
+        return key;
+    }
+}
@@ -0,0 +1,121 @@
+package main.circuit.utilities;
+
+import main.attacker.sat.SatSolverFactory;
+import main.attacker.sat.SatSolverWrapper;
+import main.circuit.Fixtures;
+import main.circuit.LogicCircuit;
+import main.helpers.FormulaFactoryWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.logicng.datastructures.Tristate;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+
+import java.net.URISyntaxException;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the Hamming distance constraints of KeyRelationEncoder on pairs of known keys - the correct key
+ * of locked circuit and the same key with some bits flipped. Unguarded constraints are added to a new solver
+ * for every query, guarded constraints of all distances share one incremental solver and are switched on
+ * by their guards. Constraint exactly(d) has to be satisfiable only at the real distance of keys,
+ * atMost(d) only from the real distance up.
+ */
+public class KeyRelationEncoderTest {
+
+    private static final String SELECTOR_PREFIX = "check$d";
+    private static final String GUARD_PREFIX = "check$g";
+
+    @Before
+    public void clearFormulaFactory() {
+        // every circuit starts with an empty factory, formulas of previous circuits are not kept
+        FormulaFactoryWrapper.getFormulaFactory().clear();
+    }
+
+    @Test
+    public void smallKey() throws URISyntaxException {
+        checkCircuit(Fixtures.loadLocked("c17_4.bench"));
+    }
+
+    @Test
+    public void largerKey() throws URISyntaxException {
+        checkCircuit(Fixtures.loadLocked("chain16.bench"));
+    }
+
+    /**
+     * Compares the correct key with its copies flipped at 0, 1, half and all bits.
+     */
+    private static void checkCircuit(LogicCircuit circuit) {
+        FormulaFactory ff = FormulaFactoryWrapper.getFormulaFactory();
+        List<String> keyNames = circuit.getSortedKeyInputNames();
+        int[] correctKey = circuit.getCorrectKey();
+        int size = keyNames.size();
+        assertTrue(size > 1);
+
+        List<Variable> first = new ArrayList<>();
+        List<Variable> second = new ArrayList<>();
+        for (String name : keyNames) {
+            first.add(ff.variable(name + "_A"));
+            second.add(ff.variable(name + "_B"));
+        }
+        KeyRelationEncoder relation = new KeyRelationEncoder(first, second, SELECTOR_PREFIX);
+
+        // guarded constraints of all distances are added only once
+        SatSolverWrapper incremental = SatSolverFactory.createLogicNGSolver();
+        incremental.addFormula(relation.encode());
+        for (int d = 0; d <= size; d++) {
+            incremental.addFormula(relation.exactly(d, ff.variable(GUARD_PREFIX + "eq" + d)));
+            incremental.addFormula(relation.atMost(d, ff.variable(GUARD_PREFIX + "le" + d)));
+        }
+
+        Random random = new Random(size);
+        for (int distance : new TreeSet<>(Arrays.asList(0, 1, size / 2, size))) {
+            Set<Integer> flipped = flippedBits(size, distance, random);
+            List<Literal> keys = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                boolean value = correctKey[i] != 0;
+                keys.add(ff.literal(first.get(i).name(), value));
+                keys.add(ff.literal(second.get(i).name(), flipped.contains(i) != value));
+            }
+
+            for (int d = Math.max(0, distance - 1); d <= Math.min(size, distance + 1); d++) {
+                // unguarded constraint in a new solver
+                SatSolverWrapper solver = SatSolverFactory.createLogicNGSolver();
+                solver.addFormula(ff.and(relation.encode(), relation.exactly(d, null)));
+                check(solver.solve(keys), d == distance, "exactly(" + d + ")", distance);
+
+                solver = SatSolverFactory.createLogicNGSolver();
+                solver.addFormula(ff.and(relation.encode(), relation.atMost(d, null)));
+                check(solver.solve(keys), d >= distance, "atMost(" + d + ")", distance);
+
+                // guarded constraint switched on by assumption
+                List<Literal> assumptions = new ArrayList<>(keys);
+                assumptions.add(ff.variable(GUARD_PREFIX + "eq" + d));
+                check(incremental.solve(assumptions), d == distance, "guarded exactly(" + d + ")", distance);
+
+                assumptions = new ArrayList<>(keys);
+                assumptions.add(ff.variable(GUARD_PREFIX + "le" + d));
+                check(incremental.solve(assumptions), d >= distance, "guarded atMost(" + d + ")", distance);
+            }
+
+            // constraints without their guards must not restrict the keys
+            check(incremental.solve(keys), true, "no guard", distance);
+        }
+    }
+
+    private static Set<Integer> flippedBits(int size, int distance, Random random) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+            indices.add(i);
+        Collections.shuffle(indices, random);
+        return new HashSet<>(indices.subList(0, distance));
+    }
+
+    private static void check(Tristate result, boolean expected, String query, int distance) {
+        assertEquals(query + " at distance " + distance, expected ? Tristate.TRUE : Tristate.FALSE, result);
+    }
+}